@@ -0,0 +1,72 @@
+package com.velexio.jlegos.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import java.security.DrbgParameters;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/*
+Per thread instances of the JCE objects the per value code paths need. Cipher.getInstance and Mac.getInstance walk the
+provider list on every call, and a SecureRandom shared by every thread serializes them on its lock, so each thread
+keeps its own.
+
+The random is a DRBG (NIST SP 800-90A, HMAC/Hash/CTR as the provider prefers) asking for 256 bit strength without
+prediction resistance: it is seeded once per thread and never reads the entropy source again on the hot path, which is
+what getInstanceStrong() (/dev/random on Linux) cannot promise. If the provider has no DRBG the platform default
+SecureRandom is used.
+
+A pooled Cipher must be fully used (init to doFinal) before the same thread asks for it again. Code that keeps a
+cipher across calls, like the segments of a StreamingCryptor stream, must get its own.
+ */
+final class CryptoPool {
+
+    private static final String ENCRYPTION_ALGO = "AES/GCM/NoPadding";
+    private static final String HMAC_ALGO = "HmacSHA256";
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(CryptoPool::newRandom);
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+    private static final ThreadLocal<Mac> HMAC = new ThreadLocal<>();
+
+    private CryptoPool() {
+    }
+
+    static SecureRandom random() {
+        return RANDOM.get();
+    }
+
+    static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        RANDOM.get().nextBytes(bytes);
+        return bytes;
+    }
+
+    static Cipher aesGcm() throws GeneralSecurityException {
+        Cipher cipher = CIPHER.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(ENCRYPTION_ALGO);
+            CIPHER.set(cipher);
+        }
+        return cipher;
+    }
+
+    static Mac hmacSha256() throws GeneralSecurityException {
+        Mac mac = HMAC.get();
+        if (mac == null) {
+            mac = Mac.getInstance(HMAC_ALGO);
+            HMAC.set(mac);
+        }
+        return mac;
+    }
+
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+}
@@ -8,21 +8,32 @@ import org.apache.commons.logging.LogFactory;
 
 import javax.crypto.*;
 import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 @Getter
@@ -30,26 +41,31 @@ public class Cryptor {
     private static final Log log = LogFactory.getLog(Cryptor.class);
 
     private static final Charset UTF_8 = StandardCharsets.UTF_8;
-    private static final String ENCRYPTION_ALGO = "AES/GCM/NoPadding";
-    private static final String KEY_ALGO = "PBKDF2WithHmacSHA256";
-    private static final int KEY_SIZE = 256;
-    private static final int KEY_GEN_ITERATIONS = 128455;
     private static final int TAG_BIT_LENGTH = 128;
     private static final int IV_BYTE_LENGTH = 24;
     private static final int SALT_BYTE_LENGTH = 16;
+    private static final byte[] MAGIC = {'J', 'L', 'G'};
+    private static final int KEY_HANDLE_VERSION = 2;
+    private static final int SUBKEY_NONCE_LENGTH = 16;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int TAG_BYTE_LENGTH = TAG_BIT_LENGTH / 8;
+    private static final int LEGACY_OVERHEAD = IV_BYTE_LENGTH + SALT_BYTE_LENGTH + TAG_BYTE_LENGTH;
+    private static final int MIN_BATCH_SLICE = 256;
+    private static final byte[] SUBKEY_INFO = "jlegos-cryptor-v2".getBytes(StandardCharsets.US_ASCII);
 
-    @SneakyThrows
-    private static SecretKey getAESKey() {
-        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
-        keyGenerator.init(KEY_SIZE, SecureRandom.getInstanceStrong());
-        return keyGenerator.generateKey();
-    }
+    /**
+     * Size of the header in front of a value encrypted with a key handle (magic, version, key salt, subkey nonce, IV)
+     */
+    public static final int HEADER_LENGTH =
+            MAGIC.length + 1 + KeyHandle.SALT_BYTE_LENGTH + SUBKEY_NONCE_LENGTH + GCM_IV_LENGTH;
+    /**
+     * How much larger a value encrypted with a key handle is than its plaintext (header and GCM tag), before Base64
+     */
+    public static final int OVERHEAD = HEADER_LENGTH + TAG_BYTE_LENGTH;
 
     @SneakyThrows
     private static SecretKey getAESKey(String password, byte[] keySalt) throws InvalidKeySpecException {
-        SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(KEY_ALGO);
-        KeySpec keySpec = new PBEKeySpec(password.toCharArray(), keySalt, KEY_GEN_ITERATIONS, KEY_SIZE);
-        return new SecretKeySpec(keyFactory.generateSecret(keySpec).getEncoded(), "AES");
+        return KeyDerivation.pbkdf2(password, keySalt);
     }
 
     @SneakyThrows
@@ -70,31 +86,151 @@ public class Cryptor {
     }
 
     /**
-     * Will encrypt a plain text file. Keep in mind this is not designed for large files, rather text files that are
-     * relatively small (in the MB range).
+     * Will encrypt the value with a key handle, which derives the password key once instead of on every call. Every
+     * value still gets its own key (derived from the handle's key with HKDF and a random nonce) and a random IV.
+     * <p>
+     * Format, version 2 (Base64 encoded):
+     * "JLG" | 2 | key salt (16 bytes) | subkey nonce (16 bytes) | IV (12 bytes) | ciphertext and tag, the header is
+     * authenticated as associated data. The result can be decrypted with either decrypt method.
+     *
+     * @param message The value to encrypt
+     * @param key     The key handle, see {@link KeyHandle}
+     * @return The Base64 encoded encrypted value
+     */
+    @SneakyThrows
+    public String encrypt(String message, KeyHandle key) {
+        SaltKeyMemo keys = new SaltKeyMemo(key);
+        try {
+            return encrypt(message, keys);
+        } finally {
+            keys.wipe();
+        }
+    }
+
+    /**
+     * Will encrypt every value with the key handle, the same as calling encrypt(String, KeyHandle) for each of them,
+     * spread over one thread per processor. The threads are started for the call and stopped before it returns.
+     * <p>
+     * Each thread works through a contiguous slice of the values with its own cipher and asks the handle for the key
+     * only once per slice, what is left per value is the HKDF subkey, the AES-GCM pass and the Base64 encoding.
+     * Throughput target: at least 100,000 values of up to 100 bytes per second per core once the JIT has warmed up,
+     * so a million values take seconds rather than the hours the password methods need. The first call on a handle
+     * pays the PBKDF2 derivation, tens of milliseconds.
+     *
+     * @param messages The values to encrypt, a stream can be collected into a list first
+     * @param key      The key handle, see {@link KeyHandle}
+     * @return The Base64 encoded encrypted values, in the order of the collection's iterator
+     */
+    public List<String> encryptAll(Collection<String> messages, KeyHandle key) {
+        return runBatch(messages, key, null, this::encrypt);
+    }
+
+    /**
+     * Will encrypt every value with the key handle on the given executor, see encryptAll(Collection, KeyHandle)
+     *
+     * @param messages The values to encrypt
+     * @param key      The key handle, see {@link KeyHandle}
+     * @param executor Runs the slices of the batch, the calling thread waits for all of them
+     * @return The Base64 encoded encrypted values, in the order of the collection's iterator
+     */
+    public List<String> encryptAll(Collection<String> messages, KeyHandle key, Executor executor) {
+        return runBatch(messages, key, executor, this::encrypt);
+    }
+
+    /**
+     * Will encrypt the bytes remaining in the input into the output, in the version 2 format of
+     * encrypt(String, KeyHandle) but without the Base64 layer. Nothing is copied on the way: the header is written and
+     * the cipher reads the input and writes the output directly, either buffer may be direct.
+     * <p>
+     * The output needs getEncryptedLength(in.remaining()) bytes. To encrypt in place, put the plaintext
+     * HEADER_LENGTH bytes after the output's position in the same buffer, the ciphertext then overwrites it.
+     * Otherwise the two must not overlap.
+     *
+     * @param in  The plaintext, from its position to its limit. Its position is moved to the limit.
+     * @param out Where the encrypted value is written. Its position is moved past it.
+     * @param key The key handle, see {@link KeyHandle}
+     * @return The number of bytes written
+     * @throws ShortBufferException If the output has too little room, nothing is written then
+     */
+    @SneakyThrows
+    public int encrypt(ByteBuffer in, ByteBuffer out, KeyHandle key) throws ShortBufferException {
+        SaltKeyMemo keys = new SaltKeyMemo(key);
+        try {
+            return encrypt(in, out, keys);
+        } finally {
+            keys.wipe();
+        }
+    }
+
+    /**
+     * Will encrypt the bytes with the key handle, see encrypt(ByteBuffer, ByteBuffer, KeyHandle)
+     *
+     * @param message The plaintext
+     * @param key     The key handle, see {@link KeyHandle}
+     * @return The encrypted value, getEncryptedLength(message.length) bytes
+     */
+    @SneakyThrows
+    public byte[] encrypt(byte[] message, KeyHandle key) {
+        byte[] encrypted = new byte[getEncryptedLength(message.length)];
+        encrypt(ByteBuffer.wrap(message), ByteBuffer.wrap(encrypted), key);
+        return encrypted;
+    }
+
+    /**
+     * @param plaintextLength The number of bytes to encrypt
+     * @return The size of the value the binary encrypt methods write for them (the Base64 value is 4/3 of it)
+     */
+    public static int getEncryptedLength(int plaintextLength) {
+        return HEADER_LENGTH + plaintextLength + TAG_BYTE_LENGTH;
+    }
+
+    private String encrypt(String message, SaltKeyMemo keys) throws GeneralSecurityException {
+        byte[] plainBytes = message.getBytes(UTF_8);
+        byte[] encrypted = new byte[getEncryptedLength(plainBytes.length)];
+        encrypt(ByteBuffer.wrap(plainBytes), ByteBuffer.wrap(encrypted), keys);
+        return Base64.getEncoder().encodeToString(encrypted);
+    }
+
+    private int encrypt(ByteBuffer in, ByteBuffer out, SaltKeyMemo keys) throws GeneralSecurityException {
+        int length = getEncryptedLength(in.remaining());
+        if (out.remaining() < length) {
+            throw new ShortBufferException("The encrypted value needs " + length + " bytes, the output has "
+                    + out.remaining());
+        }
+        // random nonce and IV first, then the fixed part of the header over the front of it
+        byte[] header = new byte[HEADER_LENGTH];
+        CryptoPool.random().nextBytes(header);
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = KEY_HANDLE_VERSION;
+        byte[] keySalt = keys.getHandleSalt();
+        System.arraycopy(keySalt, 0, header, MAGIC.length + 1, keySalt.length);
+
+        Cipher cipher = getCipher();
+        initKeyHandleCipher(cipher, Cipher.ENCRYPT_MODE, keys, header);
+        out.put(header);
+        return HEADER_LENGTH + cipher.doFinal(in, out);
+    }
+
+    /**
+     * Will encrypt a file of any size in constant memory, using the binary segmented AES-GCM format of
+     * {@link StreamingCryptor} (no Base64). The file is replaced atomically, a crash leaves either the original or the
+     * encrypted file, never a mix.
      *
      * @param filePath           The full path to the file
      * @param encryptionPassword The password to be used for encryption
      * @throws URISyntaxException
-     * @throws IOException
+     * @throws IOException If the file cannot be read or replaced, the original is then left in place
      */
-    @SneakyThrows
     public void encryptFile(String filePath, String encryptionPassword) throws URISyntaxException, IOException {
-        byte[] initVector = getRandomBytes(IV_BYTE_LENGTH);
-        byte[] encryptSalt = getRandomBytes(SALT_BYTE_LENGTH);
-        SecretKey secretKey = getAESKey(encryptionPassword, encryptSalt);
-        Cipher cipher = getCipher();
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_BIT_LENGTH, initVector));
-        String fileContent = Files.readString(Paths.get(filePath), UTF_8);
-        String fileContentEncrypted = encrypt(fileContent, encryptionPassword);
-        FileUtils.rename(filePath, filePath + ".raw");
+        Path path = Paths.get(filePath);
         try {
-            FileUtils.touch(filePath);
-            FileUtils.write(filePath, fileContentEncrypted, false);
-            FileUtils.delete(filePath + ".raw");
+            FileUtils.writeAtomic(filePath, channel -> {
+                try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+                    StreamingCryptor.getDefault().encrypt(in, channel, encryptionPassword);
+                }
+            });
         } catch (IOException ioe) {
-            FileUtils.rename(filePath + ".raw", filePath);
-            log.error("IO exception occurred during file encryption...file reverted to original", ioe);
+            log.error("IO exception occurred during file encryption...original file left in place", ioe);
             throw ioe;
         }
     }
@@ -109,46 +245,302 @@ public class Cryptor {
      */
     @SneakyThrows
     public String decrypt(String encryptedValue, String encryptionPassword) throws InvalidKeyException {
+        try (KeyHandle key = new KeyHandle.Builder(encryptionPassword).withMaxKeys(1).build()) {
+            return decrypt(encryptedValue, key);
+        }
+    }
+
+    /**
+     * Will decrypt a value encrypted with the same password, by either encrypt method. Keys for the salts seen are
+     * cached in the handle, decrypting many values encrypted under the same salt derives the password key only once.
+     *
+     * @param encryptedValue The Base64 encoded encrypted value
+     * @param key            A key handle for the password the value was encrypted with
+     * @return The decrypted value
+     * @throws InvalidKeyException
+     */
+    @SneakyThrows
+    public String decrypt(String encryptedValue, KeyHandle key) throws InvalidKeyException {
+        SaltKeyMemo keys = new SaltKeyMemo(key);
+        try {
+            return decrypt(encryptedValue, keys);
+        } finally {
+            keys.wipe();
+        }
+    }
+
+    /**
+     * Will decrypt every value with the key handle, the same as calling decrypt(String, KeyHandle) for each of them,
+     * spread over one thread per processor. See encryptAll(Collection, KeyHandle) for how the work is split.
+     *
+     * @param encryptedValues The Base64 encoded encrypted values
+     * @param key             A key handle for the password the values were encrypted with
+     * @return The decrypted values, in the order of the collection's iterator
+     * @throws InvalidKeyException
+     */
+    public List<String> decryptAll(Collection<String> encryptedValues, KeyHandle key) throws InvalidKeyException {
+        return runBatch(encryptedValues, key, null, this::decrypt);
+    }
+
+    /**
+     * Will decrypt every value with the key handle on the given executor, see decryptAll(Collection, KeyHandle). If
+     * any value fails (wrong password, modified value) the whole batch fails with that exception.
+     *
+     * @param encryptedValues The Base64 encoded encrypted values
+     * @param key             A key handle for the password the values were encrypted with
+     * @param executor        Runs the slices of the batch, the calling thread waits for all of them
+     * @return The decrypted values, in the order of the collection's iterator
+     * @throws InvalidKeyException
+     */
+    public List<String> decryptAll(Collection<String> encryptedValues, KeyHandle key, Executor executor)
+            throws InvalidKeyException {
+        return runBatch(encryptedValues, key, executor, this::decrypt);
+    }
+
+    /**
+     * Will decrypt the encrypted value remaining in the input into the output, the reverse of
+     * encrypt(ByteBuffer, ByteBuffer, KeyHandle). Values of encrypt(String, String), once Base64 decoded, are read as
+     * well. Either buffer may be direct.
+     * <p>
+     * The output needs in.remaining() - OVERHEAD bytes (in.remaining() is always enough). It may be the same memory as
+     * the input at the same position, the plaintext then overwrites the value (in place).
+     *
+     * @param in  The encrypted value, from its position to its limit. Its position is moved to the limit.
+     * @param out Where the plaintext is written. Its position is moved past it.
+     * @param key A key handle for the password the value was encrypted with
+     * @return The number of bytes written
+     * @throws ShortBufferException If the output has too little room
+     */
+    @SneakyThrows
+    public int decrypt(ByteBuffer in, ByteBuffer out, KeyHandle key) throws ShortBufferException {
+        SaltKeyMemo keys = new SaltKeyMemo(key);
+        try {
+            return decrypt(in, out, keys);
+        } finally {
+            keys.wipe();
+        }
+    }
+
+    /**
+     * Will decrypt the value with the key handle, see decrypt(ByteBuffer, ByteBuffer, KeyHandle)
+     *
+     * @param encryptedValue The encrypted value
+     * @param key            A key handle for the password the value was encrypted with
+     * @return The plaintext
+     * @throws InvalidKeyException
+     */
+    @SneakyThrows
+    public byte[] decrypt(byte[] encryptedValue, KeyHandle key) throws InvalidKeyException {
+        ByteBuffer in = ByteBuffer.wrap(encryptedValue);
+        int overhead = isKeyHandleFormat(in) ? OVERHEAD : LEGACY_OVERHEAD;
+        byte[] plainBytes = new byte[Math.max(0, encryptedValue.length - overhead)];
+        decrypt(in, ByteBuffer.wrap(plainBytes), key);
+        return plainBytes;
+    }
+
+    private String decrypt(String encryptedValue, SaltKeyMemo keys) throws GeneralSecurityException {
         byte[] decodedBytes = Base64.getDecoder().decode(encryptedValue.getBytes(UTF_8));
-        ByteBuffer encryptedSet = ByteBuffer.wrap(decodedBytes);
-        byte[] initVector = new byte[IV_BYTE_LENGTH];
-        encryptedSet.get(initVector);
-        byte[] encryptSalt = new byte[SALT_BYTE_LENGTH];
-        encryptedSet.get(encryptSalt);
-        byte[] encryptedBytes = new byte[encryptedSet.remaining()];
-        encryptedSet.get(encryptedBytes);
+        byte[] plainBytes = new byte[Math.max(0, decodedBytes.length - LEGACY_OVERHEAD)];
+        int length = decrypt(ByteBuffer.wrap(decodedBytes), ByteBuffer.wrap(plainBytes), keys);
+        return new String(plainBytes, 0, length, UTF_8);
+    }
 
-        SecretKey secretKey = Cryptor.getAESKey(encryptionPassword, encryptSalt);
-        Cipher cipher = getCipher();
-        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_BIT_LENGTH, initVector));
-        return new String(cipher.doFinal(encryptedBytes), UTF_8);
+    /*
+    Both buffers are put back where they were if decryption fails, the output may hold garbage up to its limit then.
+     */
+    private int decrypt(ByteBuffer in, ByteBuffer out, SaltKeyMemo keys) throws GeneralSecurityException {
+        int inStart = in.position();
+        int outStart = out.position();
+        try {
+            if (!isKeyHandleFormat(in)) {
+                return decryptLegacy(in, out, keys, true);
+            }
+            try {
+                byte[] header = new byte[HEADER_LENGTH];
+                in.get(header);
+                checkRoom(out, in.remaining() - TAG_BYTE_LENGTH);
+                Cipher cipher = getCipher();
+                initKeyHandleCipher(cipher, Cipher.DECRYPT_MODE, keys, header);
+                return cipher.doFinal(in, out);
+            } catch (AEADBadTagException badTag) {
+                // one legacy value in 2^32 starts with the version 2 magic by chance (its IV is random), so give it a go,
+                // but keep its key out of the handle's cache: for a tampered value or a wrong handle it is junk
+                in.position(inStart);
+                out.position(outStart);
+                try {
+                    return decryptLegacy(in, out, keys, false);
+                } catch (GeneralSecurityException | RuntimeException legacyFailure) {
+                    throw badTag;
+                }
+            }
+        } catch (GeneralSecurityException | RuntimeException e) {
+            in.position(inStart);
+            out.position(outStart);
+            throw e;
+        }
     }
 
     /**
-     * Will decrypt a previously encrypted file.
+     * Will decrypt a previously encrypted file. Files in the binary format written by encryptFile are decrypted as a
+     * stream, files written by older versions (one Base64 value, as returned by encrypt) are still read. The file is
+     * replaced atomically, the same as encryptFile, so a wrong password or a modified file never replaces it.
      *
      * @param filePath
      * @param encryptionPassword
-     * @throws IOException
+     * @throws IOException If the file cannot be read or replaced, or the password is wrong or the file was modified
      * @throws InvalidKeyException
      */
     public void decryptFile(String filePath, String encryptionPassword) throws IOException, InvalidKeyException {
-        String fileContent = Files.readString(Paths.get(filePath), UTF_8);
-        String decryptedContent = decrypt(fileContent, encryptionPassword);
-        FileUtils.rename(filePath, filePath + ".enc");
+        Path path = Paths.get(filePath);
         try {
-            FileUtils.touch(filePath);
-            FileUtils.write(filePath, decryptedContent, false);
-            FileUtils.delete(filePath + ".enc");
+            if (isStreamingFormat(path)) {
+                FileUtils.writeAtomic(filePath, channel -> {
+                    try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+                        StreamingCryptor.getDefault().decrypt(in, channel, encryptionPassword);
+                    }
+                });
+            } else {
+                String fileContent = Files.readString(path, UTF_8);
+                FileUtils.writeAtomic(filePath, decrypt(fileContent.trim(), encryptionPassword), UTF_8);
+            }
         } catch (IOException ioe) {
-            FileUtils.rename(filePath + ".enc", filePath);
-            log.error("IO exception occurred during file decryption. File reverted to original", ioe);
+            log.error("IO exception occurred during file decryption. Encrypted file left in place", ioe);
             throw ioe;
         }
     }
 
-    private Cipher getCipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
-        return Cipher.getInstance(ENCRYPTION_ALGO);
+    private static boolean isStreamingFormat(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] prefix = in.readNBytes(StreamingCryptor.MAGIC.length + 1);
+            return StreamingCryptor.isStreamingFormat(prefix);
+        }
+    }
+
+    private int decryptLegacy(ByteBuffer in, ByteBuffer out, SaltKeyMemo keys, boolean cacheKey)
+            throws GeneralSecurityException {
+        if (in.remaining() < LEGACY_OVERHEAD) {
+            throw new AEADBadTagException("The encrypted value is too short");
+        }
+        byte[] header = new byte[IV_BYTE_LENGTH + SALT_BYTE_LENGTH];
+        in.get(header);
+        checkRoom(out, in.remaining() - TAG_BYTE_LENGTH);
+        byte[] keyBytes = cacheKey
+                ? keys.key(header, IV_BYTE_LENGTH, header.length)
+                : keys.uncachedKey(header, IV_BYTE_LENGTH, header.length);
+        Cipher cipher = getCipher();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, "AES"),
+                    new GCMParameterSpec(TAG_BIT_LENGTH, header, 0, IV_BYTE_LENGTH));
+        } finally {
+            if (!cacheKey) {
+                Arrays.fill(keyBytes, (byte) 0);
+            }
+        }
+        return cipher.doFinal(in, out);
+    }
+
+    // looks at the bytes from the position on without moving it
+    private static boolean isKeyHandleFormat(ByteBuffer data) {
+        int at = data.position();
+        return data.remaining() >= OVERHEAD
+                && data.get(at) == MAGIC[0] && data.get(at + 1) == MAGIC[1] && data.get(at + 2) == MAGIC[2]
+                && data.get(at + MAGIC.length) == KEY_HANDLE_VERSION;
+    }
+
+    private static void checkRoom(ByteBuffer out, int length) throws ShortBufferException {
+        if (out.remaining() < length) {
+            throw new ShortBufferException("The plaintext needs " + length + " bytes, the output has "
+                    + out.remaining());
+        }
+    }
+
+    /*
+    Derives the per value subkey from the handle's key for the salt in the header and the nonce next to it, and sets
+    the cipher up with the IV and the header as associated data. The subkey is wiped before returning.
+     */
+    private static void initKeyHandleCipher(Cipher cipher, int mode, SaltKeyMemo keys, byte[] data)
+            throws GeneralSecurityException {
+        int saltOffset = MAGIC.length + 1;
+        int nonceOffset = saltOffset + KeyHandle.SALT_BYTE_LENGTH;
+        int ivOffset = nonceOffset + SUBKEY_NONCE_LENGTH;
+        byte[] keyBytes = keys.key(data, saltOffset, nonceOffset);
+        byte[] subkey = KeyDerivation.hkdfSha256(keyBytes, data, nonceOffset, SUBKEY_NONCE_LENGTH, SUBKEY_INFO);
+        try {
+            cipher.init(mode, new SecretKeySpec(subkey, "AES"),
+                    new GCMParameterSpec(TAG_BIT_LENGTH, data, ivOffset, GCM_IV_LENGTH));
+        } finally {
+            Arrays.fill(subkey, (byte) 0);
+        }
+        cipher.updateAAD(data, 0, HEADER_LENGTH);
+    }
+
+    /*
+    Splits the values into contiguous slices, a few per thread so a slow slice does not hold the batch up, and runs
+    each slice with its own key memo. Small batches run on the calling thread. Without an executor one fixed pool of a
+    thread per processor is used and shut down before returning. The first failure is rethrown as it was thrown.
+     */
+    @SneakyThrows
+    private List<String> runBatch(Collection<String> values, KeyHandle key, Executor executor,
+                                  BatchOperation operation) {
+        String[] input = values.toArray(new String[0]);
+        String[] output = new String[input.length];
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int sliceSize = Math.max(MIN_BATCH_SLICE, (input.length + parallelism * 4 - 1) / (parallelism * 4));
+        if (input.length <= sliceSize) {
+            runSlice(input, output, 0, input.length, key, operation, new AtomicBoolean());
+            return Arrays.asList(output);
+        }
+        ExecutorService ownExecutor = null;
+        if (executor == null) {
+            int sliceCount = (input.length + sliceSize - 1) / sliceSize;
+            ownExecutor = Executors.newFixedThreadPool(Math.min(parallelism, sliceCount));
+            executor = ownExecutor;
+        }
+        try {
+            AtomicBoolean failed = new AtomicBoolean();
+            List<CompletableFuture<Void>> slices = new ArrayList<>();
+            for (int from = 0; from < input.length; from += sliceSize) {
+                int start = from;
+                int end = Math.min(input.length, from + sliceSize);
+                slices.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        runSlice(input, output, start, end, key, operation, failed);
+                    } catch (GeneralSecurityException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            try {
+                CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                throw e.getCause() == null ? e : e.getCause();
+            }
+            return Arrays.asList(output);
+        } finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+        }
+    }
+
+    private static void runSlice(String[] input, String[] output, int from, int to, KeyHandle key,
+                                 BatchOperation operation, AtomicBoolean failed) throws GeneralSecurityException {
+        SaltKeyMemo keys = new SaltKeyMemo(key);
+        try {
+            for (int i = from; i < to && !failed.get(); i++) {
+                output[i] = operation.apply(input[i], keys);
+            }
+        } catch (GeneralSecurityException | RuntimeException e) {
+            failed.set(true);
+            throw e;
+        } finally {
+            keys.wipe();
+        }
+    }
+
+    // the calling thread's cipher, see CryptoPool, every use below runs init to doFinal before returning
+    private Cipher getCipher() throws GeneralSecurityException {
+        return CryptoPool.aesGcm();
     }
 
     /**
@@ -158,10 +550,54 @@ public class Cryptor {
      * @return
      */
     private byte[] getRandomBytes(int size) {
-        byte[] iv = new byte[size];
-        new SecureRandom().nextBytes(iv);
-        return iv;
+        return CryptoPool.randomBytes(size);
+    }
+
+    private interface BatchOperation {
+        String apply(String value, SaltKeyMemo keys) throws GeneralSecurityException;
     }
 
+    /*
+    The raw key of the last salt used, so a run of values under the same salt (every value a handle encrypted) asks the
+    handle, which locks and copies, only once. Not thread safe, one per call or batch slice, wiped when it is done.
+     */
+    private static final class SaltKeyMemo {
+        private final KeyHandle handle;
+        private byte[] handleSalt;
+        private byte[] salt;
+        private byte[] key;
+
+        private SaltKeyMemo(KeyHandle handle) {
+            this.handle = handle;
+        }
+
+        private byte[] getHandleSalt() {
+            if (handleSalt == null) {
+                handleSalt = handle.getSalt();
+            }
+            return handleSalt;
+        }
+
+        private byte[] key(byte[] data, int saltFrom, int saltTo) throws GeneralSecurityException {
+            if (key == null || !Arrays.equals(salt, 0, salt.length, data, saltFrom, saltTo)) {
+                wipe();
+                salt = Arrays.copyOfRange(data, saltFrom, saltTo);
+                key = handle.key(salt);
+            }
+            return key;
+        }
+
+        // neither memoized nor cached by the handle, the caller wipes it
+        private byte[] uncachedKey(byte[] data, int saltFrom, int saltTo) throws GeneralSecurityException {
+            return handle.uncachedKey(Arrays.copyOfRange(data, saltFrom, saltTo));
+        }
+
+        private void wipe() {
+            if (key != null) {
+                Arrays.fill(key, (byte) 0);
+                key = null;
+            }
+        }
+    }
 
 }
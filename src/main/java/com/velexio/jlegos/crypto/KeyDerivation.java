@@ -0,0 +1,70 @@
+package com.velexio.jlegos.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/*
+The password based key derivation every Cryptor format shares: PBKDF2-HMAC-SHA256, 128455 iterations, 256 bit AES key.
+Changing any of these breaks every value and file encrypted so far.
+ */
+final class KeyDerivation {
+
+    static final String KEY_ALGO = "PBKDF2WithHmacSHA256";
+    static final int KEY_SIZE = 256;
+    static final int KEY_GEN_ITERATIONS = 128455;
+
+    private static final String HMAC_ALGO = "HmacSHA256";
+
+    private KeyDerivation() {
+    }
+
+    static SecretKey pbkdf2(String password, byte[] salt) throws GeneralSecurityException {
+        char[] chars = password.toCharArray();
+        byte[] key = pbkdf2(chars, salt);
+        try {
+            return new SecretKeySpec(key, "AES");
+        } finally {
+            Arrays.fill(chars, '\0');
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /*
+    The raw key bytes, for callers that keep the key and want to wipe it themselves (a SecretKeySpec cannot be destroyed).
+     */
+    static byte[] pbkdf2(char[] password, byte[] salt) throws GeneralSecurityException {
+        PBEKeySpec keySpec = new PBEKeySpec(password, salt, KEY_GEN_ITERATIONS, KEY_SIZE);
+        try {
+            SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(KEY_ALGO);
+            return keyFactory.generateSecret(keySpec).getEncoded();
+        } finally {
+            keySpec.clearPassword();
+        }
+    }
+
+    /*
+    HKDF-SHA256 (RFC 5869) producing a single 32 byte block, which is all an AES-256 key needs. The input key is already
+    uniformly random (it comes out of PBKDF2), the salt (a range of the given array) is what makes every derived key
+    different.
+     */
+    static byte[] hkdfSha256(byte[] inputKey, byte[] salt, int saltOffset, int saltLength, byte[] info)
+            throws GeneralSecurityException {
+        Mac mac = CryptoPool.hmacSha256();
+        mac.init(new SecretKeySpec(salt, saltOffset, saltLength, HMAC_ALGO));
+        byte[] pseudoRandomKey = mac.doFinal(inputKey);
+        try {
+            mac.init(new SecretKeySpec(pseudoRandomKey, HMAC_ALGO));
+            mac.update(info);
+            mac.update((byte) 1);
+            return mac.doFinal();
+        } finally {
+            Arrays.fill(pseudoRandomKey, (byte) 0);
+        }
+    }
+
+}
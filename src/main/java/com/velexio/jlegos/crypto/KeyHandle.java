@@ -0,0 +1,291 @@
+package com.velexio.jlegos.crypto;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * Holds a password and the AES keys derived from it, so the 128455 PBKDF2 iterations Cryptor needs are paid once per
+ * password and salt instead of once per value.
+ *
+ * Every handle picks a random salt when it is built and encrypts everything under the key derived from that salt.
+ * Values are not encrypted with that key directly: Cryptor derives a fresh subkey for every value with HKDF-SHA256 and
+ * a random per value nonce, and uses a random IV on top. Reusing the derived key across millions of values therefore
+ * never reuses a key and IV pair.
+ *
+ * Decrypting a value encrypted under another salt (by another handle, or by the password methods of Cryptor) derives
+ * and caches the key for that salt. The cache is bounded, the least recently used key is dropped first, and keys
+ * expire after the key TTL, after which they are derived again on the next use. Dropped keys are overwritten with
+ * zeros. The password itself is kept (as a char[]) for as long as the handle is open, close() wipes it and every key.
+ *
+ * Handles are safe to share between threads.
+ *
+ * Usage Example:
+ *
+ *     try (KeyHandle key = new KeyHandle.Builder(password).withKeyTtl(60000).build()) {
+ *         Cryptor cryptor = new Cryptor();
+ *         for (Row row : rows) {
+ *             row.setSsn(cryptor.encrypt(row.getSsn(), key));
+ *         }
+ *     }
+ * </pre>
+ */
+public class KeyHandle implements AutoCloseable {
+
+    static final int SALT_BYTE_LENGTH = 16;
+
+    private static final int DEFAULT_MAX_KEYS = 64;
+    private static final long DEFAULT_KEY_TTL_MILLIS = 600000;
+
+    private final char[] password;
+    private final byte[] salt;
+    private final long keyTtlMillis;
+    private final Map<String, CachedKey> keys;
+    private final Set<String> deriving = new HashSet<>();
+    private final AtomicLong derivationCount = new AtomicLong();
+    private boolean closed;
+
+    private KeyHandle(Builder builder) {
+        this.password = builder.password.toCharArray();
+        this.salt = new byte[SALT_BYTE_LENGTH];
+        CryptoPool.random().nextBytes(salt);
+        this.keyTtlMillis = builder.keyTtlMillis;
+        int maxKeys = builder.maxKeys;
+        this.keys = new LinkedHashMap<String, CachedKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+                if (size() > maxKeys) {
+                    eldest.getValue().wipe();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Wipes the password and every cached key. Using the handle afterwards throws an IllegalStateException.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Arrays.fill(password, '\0');
+        for (CachedKey key : keys.values()) {
+            key.wipe();
+        }
+        keys.clear();
+    }
+
+    /**
+     * @return True once close() was called
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return Number of times a key was derived from the password (first use of a salt, or after it expired or was
+     * dropped)
+     */
+    public long getDerivationCount() {
+        return derivationCount.get();
+    }
+
+    /**
+     * @return Number of derived keys currently cached, expired ones included until they are next looked at
+     */
+    public synchronized int getCachedKeyCount() {
+        return keys.size();
+    }
+
+    /*
+    The salt everything this handle encrypts is derived under. A copy, callers write it into the output.
+     */
+    byte[] getSalt() {
+        return salt.clone();
+    }
+
+    /*
+    The raw key for a salt, derived and cached if needed. The caller gets its own copy and should wipe it once the
+    subkey is derived: the cached array may be wiped at any time by eviction or close().
+     */
+    byte[] key(byte[] keySalt) throws GeneralSecurityException {
+        String id = toId(keySalt);
+        char[] passwordCopy;
+        synchronized (this) {
+            boolean interrupted = false;
+            try {
+                // a salt is derived by one thread at a time, the others wait for its result rather than repeat it
+                while (true) {
+                    ensureOpen();
+                    CachedKey cached = keys.get(id);
+                    long now = System.currentTimeMillis();
+                    if (cached != null && now < cached.expiresAt) {
+                        return cached.key.clone();
+                    }
+                    if (!deriving.contains(id)) {
+                        if (cached != null) {
+                            keys.remove(id);
+                            cached.wipe();
+                        }
+                        removeExpired(now);
+                        break;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            deriving.add(id);
+            passwordCopy = password.clone();
+        }
+        // derived outside the lock, keys for other salts are served meanwhile
+        byte[] derived = null;
+        byte[] result = null;
+        try {
+            derived = KeyDerivation.pbkdf2(passwordCopy, keySalt);
+            derivationCount.incrementAndGet();
+        } finally {
+            Arrays.fill(passwordCopy, '\0');
+            synchronized (this) {
+                deriving.remove(id);
+                notifyAll();
+                if (derived != null && closed) {
+                    Arrays.fill(derived, (byte) 0);
+                } else if (derived != null) {
+                    keys.put(id, new CachedKey(derived, System.currentTimeMillis() + keyTtlMillis));
+                    result = derived.clone();
+                }
+            }
+        }
+        if (result == null) {
+            throw new IllegalStateException("The key handle is closed");
+        }
+        return result;
+    }
+
+    /*
+    The key for a salt without caching it, for salts that are likely junk (the legacy fallback of a value that failed
+    authentication) and must not push real keys out of the cache. A cached key is still used if there is one. The
+    caller owns the result and should wipe it.
+     */
+    byte[] uncachedKey(byte[] keySalt) throws GeneralSecurityException {
+        String id = toId(keySalt);
+        char[] passwordCopy;
+        synchronized (this) {
+            ensureOpen();
+            CachedKey cached = keys.get(id);
+            if (cached != null && System.currentTimeMillis() < cached.expiresAt) {
+                return cached.key.clone();
+            }
+            passwordCopy = password.clone();
+        }
+        try {
+            byte[] derived = KeyDerivation.pbkdf2(passwordCopy, keySalt);
+            derivationCount.incrementAndGet();
+            return derived;
+        } finally {
+            Arrays.fill(passwordCopy, '\0');
+        }
+    }
+
+    private void removeExpired(long now) {
+        Iterator<CachedKey> iterator = keys.values().iterator();
+        while (iterator.hasNext()) {
+            CachedKey cached = iterator.next();
+            if (now >= cached.expiresAt) {
+                cached.wipe();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The key handle is closed");
+        }
+    }
+
+    private static String toId(byte[] keySalt) {
+        StringBuilder id = new StringBuilder(keySalt.length * 2);
+        for (byte b : keySalt) {
+            id.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return id.toString();
+    }
+
+    private static class CachedKey {
+        private final byte[] key;
+        private final long expiresAt;
+
+        private CachedKey(byte[] key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        private void wipe() {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    public static class Builder {
+        private final String password;
+        private int maxKeys = DEFAULT_MAX_KEYS;
+        private long keyTtlMillis = DEFAULT_KEY_TTL_MILLIS;
+
+        /**
+         * @param password The password keys are derived from
+         */
+        public Builder(String password) {
+            if (password == null) {
+                throw new IllegalArgumentException("A password is required");
+            }
+            this.password = password;
+        }
+
+        /**
+         * @param maxKeys How many derived keys (salts) are cached at most. Default is 64.
+         * @return The builder
+         */
+        public Builder withMaxKeys(int maxKeys) {
+            if (maxKeys < 1) {
+                throw new IllegalArgumentException("At least one key must be cached");
+            }
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * @param keyTtlMillis How long a derived key is kept before it is wiped and derived again. Default is 10
+         *                     minutes.
+         * @return The builder
+         */
+        public Builder withKeyTtl(long keyTtlMillis) {
+            if (keyTtlMillis < 1) {
+                throw new IllegalArgumentException("The key TTL must be positive");
+            }
+            this.keyTtlMillis = keyTtlMillis;
+            return this;
+        }
+
+        public KeyHandle build() {
+            return new KeyHandle(this);
+        }
+    }
+
+}
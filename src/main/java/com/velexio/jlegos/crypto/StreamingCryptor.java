@@ -0,0 +1,494 @@
+package com.velexio.jlegos.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * Encrypts data of any size in constant memory with AES-GCM, one segment at a time (the STREAM construction, the same
+ * idea as Tink's streaming AEAD). Nothing is Base64 encoded, the output is raw binary.
+ *
+ * Format, version 1:
+ *
+ *     header    "JLGS" | version (1 byte) | segment size (4 bytes) | PBKDF2 salt (16 bytes) | nonce prefix (7 bytes)
+ *     segments  AES-GCM ciphertext of up to segment size bytes, each followed by its 16 byte tag
+ *
+ * The key is derived from the password and salt the same way Cryptor does it. The 12 byte nonce of a segment is the
+ * random prefix, a 4 byte segment counter and a flag that is 1 only for the last segment, and the header is the
+ * associated data of every segment. Reordering, dropping or duplicating segments, truncating the stream (even on a
+ * segment boundary) or touching the header all make decryption fail. An empty input still has one (empty) last segment.
+ *
+ * Decryption verifies each segment before its plaintext is released, but a stream that fails part way through has
+ * already released the segments before the failure. Callers that must not act on partial data should decrypt to a
+ * temporary file first, as Cryptor.decryptFile does.
+ *
+ * Usage Example:
+ *
+ *     StreamingCryptor cryptor = new StreamingCryptor.Builder().withSegmentSize(4 * 1024 * 1024).build();
+ *     cryptor.encryptFile(Paths.get("/backup/db.dump"), Paths.get("/backup/db.dump.enc"), password);
+ *
+ *     try (InputStream in = cryptor.newDecryptingStream(Files.newInputStream(encrypted), password)) {
+ *         restore(in);
+ *     }
+ * </pre>
+ */
+public class StreamingCryptor {
+
+    /**
+     * The version byte written by this class
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    static final byte[] MAGIC = {'J', 'L', 'G', 'S'};
+    static final int HEADER_LENGTH = 32;
+
+    private static final String ENCRYPTION_ALGO = "AES/GCM/NoPadding";
+    private static final int TAG_BYTE_LENGTH = 16;
+    private static final int SALT_BYTE_LENGTH = 16;
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    private static final int NONCE_LENGTH = 12;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    private static final int MAX_SEGMENT_SIZE = 67108864;
+    private static final StreamingCryptor DEFAULT_CRYPTOR = new Builder().build();
+
+    private final int segmentSize;
+
+    private StreamingCryptor(Builder builder) {
+        this.segmentSize = builder.segmentSize;
+    }
+
+    /**
+     * @return The shared cryptor with the default (1MB) segment size
+     */
+    public static StreamingCryptor getDefault() {
+        return DEFAULT_CRYPTOR;
+    }
+
+    /**
+     * Checks whether the data starts with the header of this format
+     *
+     * @param prefix The first bytes of the data, at least 5 are needed
+     * @return True if the magic and version match
+     */
+    public static boolean isStreamingFormat(byte[] prefix) {
+        return prefix.length > MAGIC.length && Arrays.equals(Arrays.copyOf(prefix, MAGIC.length), MAGIC)
+                && prefix[MAGIC.length] == FORMAT_VERSION;
+    }
+
+    /**
+     * Encrypts a file into another file
+     *
+     * @param source   The file to encrypt
+     * @param target   The file the encrypted data is written to, replaced if it exists
+     * @param password The password the key is derived from
+     * @throws IOException If either file cannot be accessed
+     */
+    public void encryptFile(Path source, Path target, String password) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            encrypt(in, out, password);
+        }
+    }
+
+    /**
+     * Decrypts a file into another file
+     *
+     * @param source   The encrypted file
+     * @param target   The file the plaintext is written to, replaced if it exists
+     * @param password The password the data was encrypted with
+     * @throws IOException If either file cannot be accessed, the password is wrong or the data was modified. The
+     *                     target may then hold part of the plaintext.
+     */
+    public void decryptFile(Path source, Path target, String password) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            decrypt(in, out, password);
+        }
+    }
+
+    /**
+     * Encrypts everything the input channel returns into the output channel. Neither channel is closed.
+     *
+     * @param in       The plaintext
+     * @param out      Where the header and segments are written
+     * @param password The password the key is derived from
+     * @return The number of plaintext bytes encrypted
+     * @throws IOException If either channel fails
+     */
+    public long encrypt(ReadableByteChannel in, WritableByteChannel out, String password) throws IOException {
+        SegmentEncrypter encrypter = new SegmentEncrypter(password, segmentSize);
+        writeFully(out, ByteBuffer.wrap(encrypter.header));
+        // one byte more than a segment, if it fills up there is more to come and this segment is not the last
+        ByteBuffer plain = ByteBuffer.allocate(segmentSize + 1);
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + TAG_BYTE_LENGTH);
+        long total = 0;
+        while (true) {
+            boolean last = !fill(in, plain);
+            plain.flip();
+            int length = last ? plain.remaining() : segmentSize;
+            sealed.clear();
+            encrypter.seal(plain.array(), 0, length, sealed.array(), last);
+            sealed.limit(length + TAG_BYTE_LENGTH);
+            writeFully(out, sealed);
+            total += length;
+            if (last) {
+                return total;
+            }
+            plain.position(length);
+            plain.compact();
+        }
+    }
+
+    /**
+     * Decrypts everything the input channel returns into the output channel. Neither channel is closed.
+     *
+     * @param in       The header and segments
+     * @param out      Where the plaintext is written
+     * @param password The password the data was encrypted with
+     * @return The number of plaintext bytes written
+     * @throws IOException If either channel fails, the password is wrong or the data was modified
+     */
+    public long decrypt(ReadableByteChannel in, WritableByteChannel out, String password) throws IOException {
+        SegmentDecrypter decrypter = new SegmentDecrypter(readHeader(in), password);
+        int sealedSize = decrypter.segmentSize + TAG_BYTE_LENGTH;
+        ByteBuffer sealed = ByteBuffer.allocate(sealedSize + 1);
+        ByteBuffer plain = ByteBuffer.allocate(decrypter.segmentSize);
+        long total = 0;
+        while (true) {
+            boolean last = !fill(in, sealed);
+            sealed.flip();
+            int length = last ? sealed.remaining() : sealedSize;
+            int plainLength = decrypter.open(sealed.array(), 0, length, plain.array(), last);
+            plain.position(0).limit(plainLength);
+            writeFully(out, plain);
+            total += plainLength;
+            if (last) {
+                return total;
+            }
+            sealed.position(length);
+            sealed.compact();
+        }
+    }
+
+    /**
+     * Wraps a stream so everything written to it is encrypted. The header is written straight away, the last segment
+     * when the returned stream is closed (which also closes the wrapped stream).
+     *
+     * @param out      Where the encrypted data goes
+     * @param password The password the key is derived from
+     * @return The encrypting stream
+     * @throws IOException If the header cannot be written
+     */
+    public OutputStream newEncryptingStream(OutputStream out, String password) throws IOException {
+        return new EncryptingOutputStream(out, new SegmentEncrypter(password, segmentSize));
+    }
+
+    /**
+     * Wraps a stream of encrypted data so reading from it returns the plaintext. A segment is only returned once its
+     * tag has been verified. Closing the returned stream closes the wrapped one.
+     *
+     * @param in       The encrypted data
+     * @param password The password the data was encrypted with
+     * @return The decrypting stream
+     * @throws IOException If the header cannot be read or is not this format
+     */
+    public InputStream newDecryptingStream(InputStream in, String password) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(in);
+        return new DecryptingInputStream(channel, new SegmentDecrypter(readHeader(channel), password));
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    private static byte[] readHeader(ReadableByteChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (fill(in, header)) {
+            if (isStreamingFormat(header.array())) {
+                return header.array();
+            }
+        }
+        throw new IOException("Data is not in the jlegos streaming encryption format (version " + FORMAT_VERSION + ")");
+    }
+
+    /*
+    Reads until the buffer is full or the channel ends, returns false when it ended
+     */
+    private static boolean fill(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static byte[] nonce(byte[] noncePrefix, long counter, boolean last) {
+        if (counter > 0xffffffffL) {
+            throw new IllegalStateException("Too many segments for one stream");
+        }
+        byte[] nonce = Arrays.copyOf(noncePrefix, NONCE_LENGTH);
+        nonce[7] = (byte) (counter >>> 24);
+        nonce[8] = (byte) (counter >>> 16);
+        nonce[9] = (byte) (counter >>> 8);
+        nonce[10] = (byte) counter;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    private static class SegmentEncrypter {
+        private final byte[] header = new byte[HEADER_LENGTH];
+        private final byte[] noncePrefix;
+        private final SecretKey key;
+        private final Cipher cipher;
+        private long counter;
+
+        private SegmentEncrypter(String password, int segmentSize) throws IOException {
+            byte[] salt = new byte[SALT_BYTE_LENGTH];
+            CryptoPool.random().nextBytes(salt);
+            noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+            CryptoPool.random().nextBytes(noncePrefix);
+            ByteBuffer.wrap(header).put(MAGIC).put((byte) FORMAT_VERSION).putInt(segmentSize).put(salt).put(noncePrefix);
+            try {
+                key = KeyDerivation.pbkdf2(password, salt);
+                cipher = Cipher.getInstance(ENCRYPTION_ALGO);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to set up encryption", e);
+            }
+        }
+
+        private void seal(byte[] plain, int offset, int length, byte[] out, boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BYTE_LENGTH * 8, nonce(noncePrefix, counter++, last)));
+                cipher.updateAAD(header);
+                cipher.doFinal(plain, offset, length, out, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to encrypt segment " + (counter - 1), e);
+            }
+        }
+    }
+
+    private static class SegmentDecrypter {
+        private final byte[] header;
+        private final byte[] noncePrefix;
+        private final int segmentSize;
+        private final SecretKey key;
+        private final Cipher cipher;
+        private long counter;
+
+        private SegmentDecrypter(byte[] header, String password) throws IOException {
+            this.header = header;
+            ByteBuffer fields = ByteBuffer.wrap(header, MAGIC.length + 1, HEADER_LENGTH - MAGIC.length - 1);
+            segmentSize = fields.getInt();
+            if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+                throw new IOException("Invalid segment size " + segmentSize + " in header");
+            }
+            byte[] salt = new byte[SALT_BYTE_LENGTH];
+            fields.get(salt);
+            noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+            fields.get(noncePrefix);
+            try {
+                key = KeyDerivation.pbkdf2(password, salt);
+                cipher = Cipher.getInstance(ENCRYPTION_ALGO);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to set up decryption", e);
+            }
+        }
+
+        private int open(byte[] sealed, int offset, int length, byte[] out, boolean last) throws IOException {
+            if (length < TAG_BYTE_LENGTH) {
+                throw new EOFException("Encrypted data is truncated");
+            }
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BYTE_LENGTH * 8, nonce(noncePrefix, counter++, last)));
+                cipher.updateAAD(header);
+                return cipher.doFinal(sealed, offset, length, out, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Segment " + (counter - 1) + " failed authentication, the password is wrong or the data was modified or truncated", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to decrypt segment " + (counter - 1), e);
+            }
+        }
+    }
+
+    private static class EncryptingOutputStream extends FilterOutputStream {
+        private final SegmentEncrypter encrypter;
+        private final byte[] plain;
+        private final byte[] sealed;
+        private int buffered;
+        private boolean closed;
+
+        private EncryptingOutputStream(OutputStream out, SegmentEncrypter encrypter) throws IOException {
+            super(out);
+            this.encrypter = encrypter;
+            this.plain = new byte[ByteBuffer.wrap(encrypter.header, MAGIC.length + 1, 4).getInt()];
+            this.sealed = new byte[plain.length + TAG_BYTE_LENGTH];
+            out.write(encrypter.header);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            while (len > 0) {
+                // a full segment is only sealed once more data arrives, it might be the last one
+                if (buffered == plain.length) {
+                    encrypter.seal(plain, 0, buffered, sealed, false);
+                    out.write(sealed, 0, buffered + TAG_BYTE_LENGTH);
+                    buffered = 0;
+                }
+                int count = Math.min(len, plain.length - buffered);
+                System.arraycopy(b, off, plain, buffered, count);
+                buffered += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        /**
+         * Flushes the wrapped stream. Buffered plaintext stays buffered, a segment is only written once it is full or
+         * the stream is closed.
+         */
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                encrypter.seal(plain, 0, buffered, sealed, true);
+                out.write(sealed, 0, buffered + TAG_BYTE_LENGTH);
+                out.flush();
+            } finally {
+                Arrays.fill(plain, (byte) 0);
+                out.close();
+            }
+        }
+    }
+
+    private static class DecryptingInputStream extends InputStream {
+        private final ReadableByteChannel in;
+        private final SegmentDecrypter decrypter;
+        private final ByteBuffer sealed;
+        private final byte[] plain;
+        private int plainPosition;
+        private int plainLimit;
+        private boolean done;
+
+        private DecryptingInputStream(ReadableByteChannel in, SegmentDecrypter decrypter) {
+            this.in = in;
+            this.decrypter = decrypter;
+            this.sealed = ByteBuffer.allocate(decrypter.segmentSize + TAG_BYTE_LENGTH + 1);
+            this.plain = new byte[decrypter.segmentSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (plainPosition == plainLimit) {
+                if (done) {
+                    return -1;
+                }
+                nextSegment();
+            }
+            int count = Math.min(len, plainLimit - plainPosition);
+            System.arraycopy(plain, plainPosition, b, off, count);
+            plainPosition += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return plainLimit - plainPosition;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(plain, (byte) 0);
+            in.close();
+        }
+
+        private void nextSegment() throws IOException {
+            int sealedSize = decrypter.segmentSize + TAG_BYTE_LENGTH;
+            boolean last = !fill(in, sealed);
+            sealed.flip();
+            int length = last ? sealed.remaining() : sealedSize;
+            plainLimit = decrypter.open(sealed.array(), 0, length, plain, last);
+            plainPosition = 0;
+            sealed.position(length);
+            sealed.compact();
+            done = last;
+        }
+    }
+
+    public static class Builder {
+        private int segmentSize;
+
+        public Builder() {
+            this.segmentSize = 1048576;
+        }
+
+        /**
+         * Default: 1MB. Only used when encrypting, decryption takes the size from the header.
+         *
+         * @param segmentSize Plaintext bytes per segment, between 4k and 64MB. Each segment adds a 16 byte tag and is
+         *                    held in memory twice (plaintext and ciphertext).
+         * @return The builder
+         */
+        public Builder withSegmentSize(int segmentSize) {
+            if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+                throw new IllegalArgumentException("Segment size must be between " + MIN_SEGMENT_SIZE + " and " + MAX_SEGMENT_SIZE);
+            }
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public StreamingCryptor build() {
+            return new StreamingCryptor(this);
+        }
+    }
+
+}
@@ -7,4 +7,14 @@ public class ChecksumGenerationException extends Exception {
     public ChecksumGenerationException() {
         super("Unable to generate checksum. See log for details");
     }
+
+    /**
+     * Provides override of default message, along with the underlying cause
+     *
+     * @param message The error message
+     * @param cause   The exception that caused the failure
+     */
+    public ChecksumGenerationException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,229 @@
+package com.velexio.jlegos.util;
+
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * <pre>
+ * Options for the FileUtils zip* methods and the {@link ParallelZipWriter}.
+ *
+ * The defaults compress with one worker per available processor at the default deflate level. Data is split into
+ * blocks that are compressed concurrently and written back in order, so the result is a standard archive.
+ *
+ * Data that is already compressed (jars, images, .gz ...) gains nothing from deflate, use Method.STORED to skip
+ * compression entirely or Method.AUTO to store only the entries that look already compressed, judged by their
+ * extension and MIME type.
+ *
+ * Usage Example:
+ *
+ *     ArchiveOptions options = new ArchiveOptions.Builder()
+ *             .withWorkers(4)
+ *             .withCompressionLevel(Deflater.BEST_SPEED)
+ *             .withMethod(ArchiveOptions.Method.AUTO)
+ *             .build();
+ *     FileUtils.zipDirectory("/var/log/app", options);
+ * </pre>
+ */
+public class ArchiveOptions {
+
+    /**
+     * The default size of the blocks handed to the compression workers (128k)
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 131072;
+
+    /**
+     * Extensions that Method.AUTO stores without compression unless others are configured
+     */
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "zip", "jar", "war", "ear", "apk", "gz", "tgz", "bz2", "xz", "zst", "lz4", "7z", "rar",
+            "png", "jpg", "jpeg", "gif", "webp", "heic", "mp3", "aac", "ogg", "flac", "mp4", "m4a", "m4v", "mkv",
+            "mov", "avi", "webm", "docx", "xlsx", "pptx", "odt", "ods", "epub")));
+
+    private static final int MIN_BLOCK_SIZE = 32768;
+
+    /**
+     * How entries are written
+     */
+    public enum Method {
+        /**
+         * Every entry is deflated at the compression level
+         */
+        DEFLATED,
+        /**
+         * No entry is compressed
+         */
+        STORED,
+        /**
+         * Entries that look already compressed are stored, everything else is deflated
+         */
+        AUTO
+    }
+
+    private final int workers;
+    private final int compressionLevel;
+    private final int blockSize;
+    private final Method method;
+    private final Set<String> storedExtensions;
+
+    private ArchiveOptions(Builder builder) {
+        this.workers = builder.workers;
+        this.compressionLevel = builder.compressionLevel;
+        this.blockSize = builder.blockSize;
+        this.method = builder.method;
+        this.storedExtensions = builder.storedExtensions;
+    }
+
+    /**
+     * @return Options with all default values
+     */
+    public static ArchiveOptions defaults() {
+        return new Builder().build();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Set<String> getStoredExtensions() {
+        return storedExtensions;
+    }
+
+    /**
+     * Decides whether an entry is written without compression under these options
+     *
+     * @param entryName The name of the entry
+     * @return True if the entry should be STORED
+     */
+    public boolean isStored(String entryName) {
+        if (method != Method.AUTO) {
+            return method == Method.STORED;
+        }
+        String fileName = entryName.substring(entryName.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        int dot = fileName.lastIndexOf('.');
+        if (dot > -1 && storedExtensions.contains(fileName.substring(dot + 1))) {
+            return true;
+        }
+        String mimeType = URLConnection.getFileNameMap().getContentTypeFor(fileName);
+        if (mimeType == null) {
+            return false;
+        }
+        return mimeType.startsWith("video/") || mimeType.equals("image/jpeg") || mimeType.equals("image/png")
+                || mimeType.equals("image/gif") || mimeType.equals("application/zip") || mimeType.equals("application/java-archive")
+                || (mimeType.startsWith("audio/") && !mimeType.contains("wav") && !mimeType.contains("aiff"));
+    }
+
+    public static class Builder {
+        private int workers;
+        private int compressionLevel;
+        private int blockSize;
+        private Method method;
+        private Set<String> storedExtensions;
+
+        public Builder() {
+            this.workers = Runtime.getRuntime().availableProcessors();
+            this.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+            this.blockSize = DEFAULT_BLOCK_SIZE;
+            this.method = Method.DEFLATED;
+            this.storedExtensions = DEFAULT_STORED_EXTENSIONS;
+        }
+
+        /**
+         * Number of threads compressing in parallel. With 1 everything is compressed on the calling thread.
+         * Default: number of available processors
+         *
+         * @param workers The number of compression threads
+         * @return The builder
+         */
+        public Builder withWorkers(int workers) {
+            if (workers <= 0) {
+                throw new IllegalArgumentException("Workers must be greater than zero");
+            }
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Deflate level from 0 (no compression) to 9 (best compression), or -1 for the zlib default.
+         * Default: Deflater.DEFAULT_COMPRESSION
+         *
+         * @param compressionLevel The deflate level
+         * @return The builder
+         */
+        public Builder withCompressionLevel(int compressionLevel) {
+            if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("Compression level must be between -1 and 9");
+            }
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Size of the blocks handed to the workers. Smaller blocks spread small files better, bigger blocks compress
+         * slightly better. Minimum 32k.
+         * Default: 128k
+         *
+         * @param blockSize The block size in bytes
+         * @return The builder
+         */
+        public Builder withBlockSize(int blockSize) {
+            if (blockSize < MIN_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Block size must be at least " + MIN_BLOCK_SIZE);
+            }
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * STORED entries from files are written as true stored entries (the file is read twice, once for the CRC).
+         * Entries added from a stream cannot be read twice, so those are written as deflate level 0, which costs
+         * practically no CPU and a few bytes per 64k.
+         * Default: Method.DEFLATED
+         *
+         * @param method How entries are written
+         * @return The builder
+         */
+        public Builder withMethod(Method method) {
+            this.method = method;
+            return this;
+        }
+
+        /**
+         * The extensions (without the dot, case insensitive) that Method.AUTO stores.
+         * Default: DEFAULT_STORED_EXTENSIONS
+         *
+         * @param storedExtensions The extensions of already compressed formats
+         * @return The builder
+         */
+        public Builder withStoredExtensions(Collection<String> storedExtensions) {
+            Set<String> extensions = new HashSet<>();
+            for (String extension : storedExtensions) {
+                extensions.add(extension.toLowerCase(Locale.ROOT));
+            }
+            this.storedExtensions = Collections.unmodifiableSet(extensions);
+            return this;
+        }
+
+        public ArchiveOptions build() {
+            return new ArchiveOptions(this);
+        }
+    }
+
+}
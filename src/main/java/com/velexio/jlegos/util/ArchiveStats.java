@@ -0,0 +1,85 @@
+package com.velexio.jlegos.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * What a single archive operation did: how many entries were written, how many bytes went in and came out, and how
+ * long it took. Use it to decide whether an archive is worth compressing (ratio) and whether the options are keeping
+ * up (throughput).
+ *
+ * Usage Example:
+ *
+ *     ArchiveStats stats = FileUtils.zipDirectory("/var/log/app", options);
+ *     System.out.println(stats.getRatio() + " " + stats.getThroughputMBPerSecond() + " MB/s");
+ * </pre>
+ */
+public class ArchiveStats {
+
+    private final long entryCount;
+    private final long uncompressedBytes;
+    private final long compressedBytes;
+    private final long elapsedNanos;
+
+    ArchiveStats(long entryCount, long uncompressedBytes, long compressedBytes, long elapsedNanos) {
+        this.entryCount = entryCount;
+        this.uncompressedBytes = uncompressedBytes;
+        this.compressedBytes = compressedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return Number of entries (files and directories) written
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return Total size of the entry contents before compression
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return Total size of the entry contents as stored in the archive, not counting headers
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * @return Compressed size divided by uncompressed size, i.e. 0.25 when the data shrank to a quarter. 1.0 when there
+     * was nothing to compress.
+     */
+    public double getRatio() {
+        return uncompressedBytes == 0 ? 1.0 : (double) compressedBytes / uncompressedBytes;
+    }
+
+    /**
+     * @return Uncompressed bytes processed per second
+     */
+    public double getThroughputBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : uncompressedBytes / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    public double getThroughputMBPerSecond() {
+        return getThroughputBytesPerSecond() / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entries, %d -> %d bytes (ratio %.3f) in %d ms, %.1f MB/s",
+                entryCount, uncompressedBytes, compressedBytes, getRatio(), getElapsedMillis(), getThroughputMBPerSecond());
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Produces the new contents of a file for {@link FileUtils#writeAtomic(String, AtomicContentWriter)}, for content that is
+ * too large to hold in memory.
+ */
+@FunctionalInterface
+public interface AtomicContentWriter {
+
+    /**
+     * Writes the complete new contents
+     *
+     * @param channel The channel of the temporary file, positioned at the start. It is forced and closed afterwards.
+     * @throws IOException If the content cannot be written, the original file is then left untouched
+     */
+    void write(FileChannel channel) throws IOException;
+
+}
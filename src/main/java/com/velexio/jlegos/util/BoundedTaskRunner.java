@@ -0,0 +1,97 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+Fans IO tasks out to an executor while keeping no more than maxInFlight of them queued or running. Failures do not
+stop the other tasks, they are collected by label (usually the path) so the caller can report them all at once the
+same way the delete methods report their delinquent list.
+ */
+final class BoundedTaskRunner {
+
+    @FunctionalInterface
+    interface IOTask {
+        void run() throws IOException;
+    }
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Exception> firstFailure = new AtomicReference<>();
+
+    BoundedTaskRunner(Executor executor, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("The number of in-flight tasks must be greater than zero");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /*
+    Blocks while maxInFlight tasks are outstanding, then hands the task to the executor
+     */
+    void submit(String label, IOTask task) throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to submit [ " + label + "]");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    recordFailure(label, e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            permits.release();
+            recordFailure(label, ree);
+        }
+    }
+
+    /*
+    Waits for every submitted task to finish
+     */
+    void awaitCompletion() throws InterruptedIOException {
+        try {
+            permits.acquire(maxInFlight);
+            permits.release(maxInFlight);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for tasks to complete");
+        }
+    }
+
+    void recordFailure(String label, Exception cause) {
+        failures.add(label);
+        firstFailure.compareAndSet(null, cause);
+    }
+
+    boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    List<String> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    Exception getFirstFailure() {
+        return firstFailure.get();
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.velexio.jlegos.util;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A thread-safe pool of reusable byte[] buffers. Every caller borrows its own buffer for the length of an operation and
+ * gives it back when done, so concurrent operations never share the same array.
+ * </p>
+ * <p>
+ * The pool only retains released buffers up to a configured number of bytes. Anything released past that limit is
+ * left for the garbage collector, which keeps the footprint bounded no matter how many threads are working.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre>
+ *     byte[] buffer = pool.borrow();
+ *     try {
+ *         ...
+ *     } finally {
+ *         pool.release(buffer);
+ *     }
+ * </pre>
+ */
+public class BufferPool {
+
+    private final Deque<byte[]> buffers = new ConcurrentLinkedDeque<>();
+    private final long maxRetainedBytes;
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong bytesHeld = new AtomicLong();
+
+    private volatile int bufferSize;
+
+    /**
+     * Creates a new pool
+     *
+     * @param bufferSize       The size (in bytes) of the buffers handed out by the pool
+     * @param maxRetainedBytes The maximum number of bytes the pool will hold on to while buffers are not in use
+     */
+    public BufferPool(int bufferSize, long maxRetainedBytes) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than zero");
+        }
+        this.bufferSize = bufferSize;
+        this.maxRetainedBytes = Math.max(maxRetainedBytes, 0);
+    }
+
+    /**
+     * Borrows a buffer from the pool. If no idle buffer is available a new one is allocated (counted as a miss).
+     *
+     * @return A byte[] of the current buffer size that is owned by the caller until released
+     */
+    public byte[] borrow() {
+        borrowCount.incrementAndGet();
+        int size = bufferSize;
+        byte[] buffer;
+        while ((buffer = buffers.pollFirst()) != null) {
+            bytesHeld.addAndGet(-buffer.length);
+            if (buffer.length == size) {
+                return buffer;
+            }
+        }
+        missCount.incrementAndGet();
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that no longer match the current buffer size, or that would push the pool
+     * past its retained byte limit, are discarded.
+     *
+     * @param buffer The buffer previously obtained from {@link #borrow()}
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize) {
+            return;
+        }
+        if (bytesHeld.addAndGet(buffer.length) > maxRetainedBytes) {
+            bytesHeld.addAndGet(-buffer.length);
+            return;
+        }
+        buffers.offerFirst(buffer);
+    }
+
+    /**
+     * Changes the size of buffers handed out from now on. Buffers already borrowed are unaffected and are simply
+     * dropped when released, so the change is safe while operations are running.
+     *
+     * @param newSize The new buffer size in bytes
+     */
+    public void setBufferSize(int newSize) {
+        if (newSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than zero");
+        }
+        bufferSize = newSize;
+        byte[] buffer;
+        while ((buffer = buffers.pollFirst()) != null) {
+            bytesHeld.addAndGet(-buffer.length);
+        }
+    }
+
+    /**
+     * @return The size (in bytes) of the buffers currently handed out by the pool
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The maximum number of bytes the pool will retain while buffers are idle
+     */
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * @return Total number of borrow calls made against the pool
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return Number of borrow calls that could not be served from an idle buffer and required an allocation
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return Number of bytes currently held by idle buffers in the pool
+     */
+    public long getBytesHeld() {
+        return bytesHeld.get();
+    }
+
+}
@@ -0,0 +1,339 @@
+package com.velexio.jlegos.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Writes text to a file through a FileChannel. Characters are encoded with an explicit CharsetEncoder straight into a
+ * direct buffer that is reused for the life of the writer, and the buffer goes to the channel only when it fills up or
+ * a batch is committed, so writing many small strings costs few system calls. A direct buffer is only freed by the
+ * garbage collector, so writers that are opened for one write can use a heap buffer instead (withDirectBuffer(false)),
+ * the channel then copies through its own per thread direct buffer.
+ *
+ * Durability is controlled with an FsyncPolicy: NONE leaves it to the OS, PER_BATCH forces after every writeLines
+ * batch (or commit), INTERVAL forces at most once per interval as batches are committed (group commit), and ON_CLOSE
+ * forces once at the end. Characters that cannot be encoded are replaced, the same as java.io.FileWriter.
+ *
+ * This class is not thread safe.
+ *
+ * Usage Example:
+ *
+ *     try (ChannelFileWriter writer = new ChannelFileWriter.Builder(Paths.get("/var/log/app/events.log"))
+ *             .withCharset(StandardCharsets.UTF_8)
+ *             .withFsyncPolicy(FsyncPolicy.INTERVAL)
+ *             .withFsyncInterval(200)
+ *             .build()) {
+ *         writer.writeLines(batch);
+ *     }
+ * </pre>
+ */
+public class ChannelFileWriter implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+    private static final int MIN_BUFFER_SIZE = 64;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long openedNanos = System.nanoTime();
+    private long lastForceNanos = openedNanos;
+    private long bytesWritten;
+    private long forceCount;
+    private char pendingHighSurrogate;
+    private boolean closed;
+
+    private ChannelFileWriter(Builder builder) throws IOException {
+        this.path = builder.path;
+        this.fsyncPolicy = builder.fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.fsyncIntervalMillis);
+        this.encoder = builder.charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int bufferSize = Math.max(builder.bufferSize, (int) Math.ceil(encoder.maxBytesPerChar()) * 2);
+        this.buffer = builder.directBuffer ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        this.channel = builder.append
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Encodes the text into the buffer, writing the buffer to the file whenever it fills up
+     *
+     * @param text The text to write, no line separator is added
+     * @throws IOException If the file cannot be written
+     */
+    public void write(CharSequence text) throws IOException {
+        ensureOpen();
+        if (text.length() == 0) {
+            return;
+        }
+        CharBuffer input;
+        if (pendingHighSurrogate != 0) {
+            input = CharBuffer.wrap(pendingHighSurrogate + text.toString());
+            pendingHighSurrogate = 0;
+        } else {
+            input = CharBuffer.wrap(text);
+        }
+        encode(input, false);
+        if (input.hasRemaining()) {
+            // a high surrogate at the very end, its pair arrives with the next write
+            pendingHighSurrogate = input.get();
+        }
+    }
+
+    /**
+     * Writes every line as one batch and commits it (see commit()). As with FileUtils.writeLines, no line separator is
+     * added.
+     *
+     * @param lines The lines to write
+     * @throws IOException If the file cannot be written
+     */
+    public void writeLines(Collection<? extends CharSequence> lines) throws IOException {
+        for (CharSequence line : lines) {
+            write(line);
+        }
+        commit();
+    }
+
+    /**
+     * Ends a batch: writes the buffer to the file and forces it to disk when the FsyncPolicy asks for it
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void commit() throws IOException {
+        flush();
+        if (fsyncPolicy == FsyncPolicy.PER_BATCH
+                || (fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - lastForceNanos >= fsyncIntervalNanos)) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes the buffer to the file, without forcing it to disk
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    /**
+     * Writes the buffer and forces the file to disk now, regardless of the FsyncPolicy
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+        lastForceNanos = System.nanoTime();
+        forceCount++;
+    }
+
+    /**
+     * Flushes everything, forces the file to disk unless the policy is NONE, and closes the channel
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            CharBuffer input = pendingHighSurrogate != 0 ? CharBuffer.wrap(String.valueOf(pendingHighSurrogate)) : CharBuffer.allocate(0);
+            pendingHighSurrogate = 0;
+            encode(input, true);
+            CoderResult result;
+            while ((result = encoder.flush(buffer)).isOverflow()) {
+                drain();
+            }
+            throwIfError(result);
+            drain();
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                channel.force(false);
+                forceCount++;
+            }
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * @return Bytes written to the file so far (buffered bytes are not counted until they are written)
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return Number of times the file has been forced to disk
+     */
+    public long getForceCount() {
+        return forceCount;
+    }
+
+    /**
+     * @return Bytes written per second since the writer was opened
+     */
+    public double getBytesPerSecond() {
+        long elapsed = System.nanoTime() - openedNanos;
+        return elapsed == 0 ? 0 : bytesWritten / (elapsed / 1_000_000_000.0);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    private void encode(CharBuffer input, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(input, buffer, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+                continue;
+            }
+            throwIfError(result);
+            return;
+        }
+    }
+
+    private static void throwIfError(CoderResult result) throws CharacterCodingException {
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer for [ " + path + "] is closed");
+        }
+    }
+
+    public static class Builder {
+        private final Path path;
+        private Charset charset;
+        private boolean append;
+        private int bufferSize;
+        private FsyncPolicy fsyncPolicy;
+        private long fsyncIntervalMillis;
+        private boolean directBuffer;
+
+        public Builder(Path path) {
+            this.path = path;
+            this.charset = Charset.defaultCharset();
+            this.append = true;
+            this.bufferSize = DEFAULT_BUFFER_SIZE;
+            this.fsyncPolicy = FsyncPolicy.NONE;
+            this.fsyncIntervalMillis = 1000;
+            this.directBuffer = true;
+        }
+
+        /**
+         * Default: the platform default charset, the same as java.io.FileWriter
+         *
+         * @param charset The charset the text is encoded with
+         * @return The builder
+         */
+        public Builder withCharset(Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Default: true
+         *
+         * @param append True to add to the end of an existing file, false to truncate it
+         * @return The builder
+         */
+        public Builder withAppend(boolean append) {
+            this.append = append;
+            return this;
+        }
+
+        /**
+         * Default: 64k
+         *
+         * @param bufferSize Size of the buffer the text is encoded into
+         * @return The builder
+         */
+        public Builder withBufferSize(int bufferSize) {
+            this.bufferSize = Math.max(bufferSize, MIN_BUFFER_SIZE);
+            return this;
+        }
+
+        /**
+         * Default: true. A direct buffer saves a copy on every write but costs native memory until the writer is
+         * garbage collected, use a heap buffer for writers that only live for a write or two.
+         *
+         * @param directBuffer True to encode into a direct buffer, false for a heap buffer
+         * @return The builder
+         */
+        public Builder withDirectBuffer(boolean directBuffer) {
+            this.directBuffer = directBuffer;
+            return this;
+        }
+
+        /**
+         * Default: FsyncPolicy.NONE
+         *
+         * @param fsyncPolicy When written data is forced to disk
+         * @return The builder
+         */
+        public Builder withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        /**
+         * Only used with FsyncPolicy.INTERVAL. Default: 1000
+         *
+         * @param fsyncIntervalMillis The minimum time between two forces
+         * @return The builder
+         */
+        public Builder withFsyncInterval(long fsyncIntervalMillis) {
+            if (fsyncIntervalMillis < 0) {
+                throw new IllegalArgumentException("Fsync interval cannot be negative");
+            }
+            this.fsyncIntervalMillis = fsyncIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @return The writer, with the file opened (and created if needed)
+         * @throws IOException If the file cannot be opened for writing
+         */
+        public ChannelFileWriter build() throws IOException {
+            return new ChannelFileWriter(this);
+        }
+    }
+
+}
@@ -0,0 +1,306 @@
+package com.velexio.jlegos.util;
+
+import com.velexio.jlegos.exceptions.ChecksumGenerationException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * A cache that sits in front of checksum generation so files that have not changed are not hashed again.
+ *
+ * Entries are keyed by the canonical path and algorithm, and are only used while the file's size and last modified
+ * time still match what they were when it was hashed. The least recently used entries are evicted once the cache
+ * holds maxEntries. Optionally the entries can be saved to (and loaded from) a compact index file so they survive a
+ * restart.
+ *
+ * Files modified within the last couple of seconds are hashed but not cached, because a second change in the same
+ * timestamp tick with the same size would otherwise go unnoticed.
+ *
+ * Usage Example:
+ *
+ *     ChecksumCache cache = new ChecksumCache.Builder()
+ *             .withMaxEntries(50000)
+ *             .withIndexFile(Paths.get("/var/cache/app/checksums.idx"))
+ *             .build();
+ *     String checksum = cache.checksum("/opt/app/lib/app.jar", "SHA-256");
+ *     ...
+ *     cache.save();
+ * </pre>
+ */
+public class ChecksumCache {
+
+    private static final String INDEX_HEADER = "jlegos-checksum-index 1";
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private final ChecksumEngine engine;
+    private final int maxEntries;
+    private final Path indexFile;
+    private final Map<String, CacheEntry> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private ChecksumCache(Builder builder) throws IOException {
+        this.engine = builder.engine;
+        this.maxEntries = builder.maxEntries;
+        this.indexFile = builder.indexFile;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > ChecksumCache.this.maxEntries;
+            }
+        };
+        if (indexFile != null && Files.isRegularFile(indexFile)) {
+            load();
+        }
+    }
+
+    /**
+     * Gets the SHA-512 checksum of the file, from the cache when the file has not changed
+     *
+     * @param filePath The path to the file
+     * @return The hex encoded checksum
+     * @throws ChecksumGenerationException If there is an IO issue
+     */
+    public String checksum(String filePath) throws ChecksumGenerationException {
+        return checksum(filePath, ChecksumEngine.DEFAULT_ALGORITHM);
+    }
+
+    /**
+     * Gets the checksum of the file, from the cache when the file has not changed
+     *
+     * @param filePath        The path to the file
+     * @param digestAlgorithm Needs to be a valid algorithm that the standard java.security.MessageDigest class will accept
+     * @return The hex encoded checksum
+     * @throws ChecksumGenerationException If there is either IO issues or passed an invalid MessageDigest algorithm
+     */
+    public String checksum(String filePath, String digestAlgorithm) throws ChecksumGenerationException {
+        Path canonicalPath;
+        BasicFileAttributes attrs;
+        try {
+            canonicalPath = Paths.get(filePath).toRealPath();
+            attrs = Files.readAttributes(canonicalPath, BasicFileAttributes.class);
+        } catch (IOException ioe) {
+            throw new ChecksumGenerationException("Unable to read attributes of [ " + filePath + "]", ioe);
+        }
+        String key = toKey(digestAlgorithm, canonicalPath.toString());
+        long modifiedNanos = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.size == attrs.size() && entry.modifiedNanos == modifiedNanos) {
+                hitCount.incrementAndGet();
+                return entry.checksum;
+            }
+        }
+
+        missCount.incrementAndGet();
+        String checksum = engine.checksum(canonicalPath, digestAlgorithm);
+        if (isCacheable(canonicalPath, attrs, modifiedNanos)) {
+            synchronized (entries) {
+                entries.put(key, new CacheEntry(attrs.size(), modifiedNanos, checksum));
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Writes the current entries to the index file. The file is written to a temp file first and moved into place, so a
+     * crash never leaves a half written index behind.
+     *
+     * @throws IOException If the index cannot be written
+     * @throws IllegalStateException If the cache was built without an index file
+     */
+    public void save() throws IOException {
+        if (indexFile == null) {
+            throw new IllegalStateException("No index file was configured for the checksum cache");
+        }
+        List<String> lines = new ArrayList<>();
+        synchronized (entries) {
+            for (Map.Entry<String, CacheEntry> mapEntry : entries.entrySet()) {
+                if (mapEntry.getKey().indexOf('\t') > -1 || mapEntry.getKey().indexOf('\n') > -1 || mapEntry.getKey().indexOf('\r') > -1) {
+                    continue;
+                }
+                CacheEntry entry = mapEntry.getValue();
+                lines.add(mapEntry.getKey() + "\t" + entry.size + "\t" + entry.modifiedNanos + "\t" + entry.checksum);
+            }
+        }
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(INDEX_HEADER);
+                writer.newLine();
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Removes all entries from the in memory cache. The index file is left untouched until the next save.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return The number of entries currently held
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return Number of checksum calls answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Number of checksum calls that required the file to be hashed
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    /*
+    Lines are: algorithm \0 canonical path \t size \t modified nanos \t checksum. Anything that does not parse is skipped,
+    a corrupt index only costs a rehash.
+     */
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            if (!INDEX_HEADER.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    entries.put(fields[0], new CacheEntry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+                } catch (NumberFormatException nfe) {
+                    // skip the malformed entry
+                }
+            }
+        }
+    }
+
+    private static boolean isCacheable(Path path, BasicFileAttributes before, long modifiedNanos) {
+        if (System.currentTimeMillis() - before.lastModifiedTime().toMillis() < RACY_WINDOW_MILLIS) {
+            return false;
+        }
+        try {
+            BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class);
+            return after.size() == before.size() && after.lastModifiedTime().to(TimeUnit.NANOSECONDS) == modifiedNanos;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    private static String toKey(String digestAlgorithm, String canonicalPath) {
+        return digestAlgorithm + '\0' + canonicalPath;
+    }
+
+    private static final class CacheEntry {
+        private final long size;
+        private final long modifiedNanos;
+        private final String checksum;
+
+        private CacheEntry(long size, long modifiedNanos, String checksum) {
+            this.size = size;
+            this.modifiedNanos = modifiedNanos;
+            this.checksum = checksum;
+        }
+    }
+
+    public static class Builder {
+        private ChecksumEngine engine;
+        private int maxEntries;
+        private Path indexFile;
+
+        public Builder() {
+            this.engine = ChecksumEngine.getDefault();
+            this.maxEntries = 10000;
+        }
+
+        /**
+         * Default: ChecksumEngine.getDefault()
+         *
+         * @param engine The engine used to hash files on a cache miss
+         * @return The builder
+         */
+        public Builder withEngine(ChecksumEngine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * Default: 10000
+         *
+         * @param maxEntries The number of entries kept before the least recently used are evicted
+         * @return The builder
+         */
+        public Builder withMaxEntries(int maxEntries) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("Max entries must be greater than zero");
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * If the file exists its entries are loaded when the cache is built. Call save() to write the entries back.
+         *
+         * @param indexFile The path of the on disk index
+         * @return The builder
+         */
+        public Builder withIndexFile(Path indexFile) {
+            this.indexFile = indexFile;
+            return this;
+        }
+
+        /**
+         * @return The checksum cache
+         * @throws IOException If the index file exists but cannot be read
+         */
+        public ChecksumCache build() throws IOException {
+            return new ChecksumCache(this);
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.velexio.jlegos.util;
+
+import com.velexio.jlegos.exceptions.ChecksumGenerationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <pre>
+ * Generates file checksums. This is what backs FileUtils.checksum, use it directly when you need to tune the read
+ * buffer or hash many files at once.
+ *
+ * Files are read through a FileChannel into a direct buffer owned by the calling thread, and the MessageDigest
+ * instances are kept per thread and per algorithm, so repeated calls do not allocate either of them again.
+ *
+ * Files at or above the memory map threshold are instead mapped with FileChannel.map one window at a time and fed to
+ * the digest straight from the mapping, which saves the read syscalls and the copy into the buffer. If a file cannot
+ * be mapped (i.e. some network or special file systems) it falls back to the buffered read.
+ *
+ * Usage Example:
+ *
+ *     ChecksumEngine engine = new ChecksumEngine.Builder()
+ *             .withBufferSize(1024 * 1024)
+ *             .withParallelism(8)
+ *             .build();
+ *     Map&lt;Path, String&gt; checksums = engine.checksumAll(paths, "SHA-256");
+ * </pre>
+ */
+public class ChecksumEngine {
+
+    /**
+     * The algorithm used when none is specified
+     */
+    public static final String DEFAULT_ALGORITHM = "SHA-512";
+
+    private static final int DEFAULT_BUFFER_SIZE = 262144;
+    private static final long DEFAULT_MEMORY_MAP_THRESHOLD = 1073741824L;
+    private static final long DEFAULT_MEMORY_MAP_WINDOW_SIZE = 67108864L;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<ByteBuffer> READ_BUFFERS = new ThreadLocal<>();
+    private static final ChecksumEngine DEFAULT_ENGINE = new Builder().build();
+
+    private final int bufferSize;
+    private final int parallelism;
+    private final long memoryMapThreshold;
+    private final long memoryMapWindowSize;
+
+    private ChecksumEngine(Builder builder) {
+        this.bufferSize = builder.bufferSize;
+        this.parallelism = builder.parallelism;
+        this.memoryMapThreshold = builder.memoryMapThreshold;
+        this.memoryMapWindowSize = builder.memoryMapWindowSize;
+    }
+
+    /**
+     * @return The shared engine with default settings, used by FileUtils.checksum
+     */
+    public static ChecksumEngine getDefault() {
+        return DEFAULT_ENGINE;
+    }
+
+    /**
+     * Generates the checksum of a file as a lower case hex string
+     *
+     * @param file            The file to checksum
+     * @param digestAlgorithm Needs to be a valid algorithm that the standard java.security.MessageDigest class will accept
+     * @return The hex encoded checksum
+     * @throws ChecksumGenerationException If there is either IO issues or passed an invalid MessageDigest algorithm
+     */
+    public String checksum(Path file, String digestAlgorithm) throws ChecksumGenerationException {
+        try {
+            return toHex(digest(file, digestAlgorithm));
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new ChecksumGenerationException("Unable to generate " + digestAlgorithm + " checksum for [ " + file + "]", e);
+        }
+    }
+
+    /**
+     * Generates the raw digest bytes of a file
+     *
+     * @param file            The file to digest
+     * @param digestAlgorithm Needs to be a valid algorithm that the standard java.security.MessageDigest class will accept
+     * @return The digest bytes
+     * @throws IOException              If the file cannot be read
+     * @throws NoSuchAlgorithmException If the algorithm is not supported
+     */
+    public byte[] digest(Path file, String digestAlgorithm) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = getDigest(digestAlgorithm);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= memoryMapThreshold) {
+                try {
+                    for (long position = 0; position < size; position += memoryMapWindowSize) {
+                        digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(memoryMapWindowSize, size - position)));
+                    }
+                    return digest.digest();
+                } catch (IOException | UnsupportedOperationException e) {
+                    digest.reset();
+                    channel.position(0);
+                }
+            }
+            ByteBuffer buffer = getReadBuffer();
+            while (channel.read(buffer) > -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return digest.digest();
+        } finally {
+            digest.reset();
+        }
+    }
+
+    /**
+     * Generates the checksums of many files concurrently, on a pool sized by the parallelism setting that only lives for
+     * the duration of the call.
+     *
+     * @param files           The files to checksum
+     * @param digestAlgorithm Needs to be a valid algorithm that the standard java.security.MessageDigest class will accept
+     * @return A map of each file to its hex checksum, in the same order as the files were provided
+     * @throws ChecksumGenerationException If any of the files could not be hashed. The message lists every failure.
+     */
+    public Map<Path, String> checksumAll(Collection<Path> files, String digestAlgorithm) throws ChecksumGenerationException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            return checksumAll(files, digestAlgorithm, executor, parallelism * 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Generates the checksums of many files concurrently on the provided executor
+     *
+     * @param files           The files to checksum
+     * @param digestAlgorithm Needs to be a valid algorithm that the standard java.security.MessageDigest class will accept
+     * @param executor        The executor the checksums run on
+     * @param maxInFlight     The maximum number of files queued or being hashed at one time
+     * @return A map of each file to its hex checksum, in the same order as the files were provided
+     * @throws ChecksumGenerationException If any of the files could not be hashed. The message lists every failure.
+     */
+    public Map<Path, String> checksumAll(Collection<Path> files, String digestAlgorithm, Executor executor, int maxInFlight)
+            throws ChecksumGenerationException {
+        Map<Path, String> results = new ConcurrentHashMap<>();
+        BoundedTaskRunner runner = new BoundedTaskRunner(executor, maxInFlight);
+        try {
+            for (Path file : files) {
+                runner.submit(file.toString(), () -> {
+                    try {
+                        results.put(file, toHex(digest(file, digestAlgorithm)));
+                    } catch (NoSuchAlgorithmException nsae) {
+                        throw new IOException(nsae);
+                    }
+                });
+            }
+            runner.awaitCompletion();
+        } catch (IOException ioe) {
+            throw new ChecksumGenerationException("Interrupted while generating checksums", ioe);
+        }
+        if (runner.hasFailures()) {
+            StringBuilder message = new StringBuilder("Unable to generate checksums for the following files:");
+            for (String failure : runner.getFailures()) {
+                message.append(System.lineSeparator()).append(failure);
+            }
+            throw new ChecksumGenerationException(message.toString(), runner.getFirstFailure());
+        }
+        Map<Path, String> ordered = new LinkedHashMap<>();
+        for (Path file : files) {
+            ordered.put(file, results.get(file));
+        }
+        return ordered;
+    }
+
+    /**
+     * Encodes bytes as a lower case hex string
+     *
+     * @param bytes The bytes to encode
+     * @return The hex string
+     */
+    public static String toHex(byte[] bytes) {
+        byte[] hex = new byte[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(hex, StandardCharsets.ISO_8859_1);
+    }
+
+    private static MessageDigest getDigest(String digestAlgorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get(digestAlgorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(digestAlgorithm);
+            digests.put(digestAlgorithm, digest);
+        }
+        return digest;
+    }
+
+    private ByteBuffer getReadBuffer() {
+        ByteBuffer buffer = READ_BUFFERS.get();
+        if (buffer == null || buffer.capacity() != bufferSize) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            READ_BUFFERS.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getMemoryMapThreshold() {
+        return memoryMapThreshold;
+    }
+
+    public long getMemoryMapWindowSize() {
+        return memoryMapWindowSize;
+    }
+
+    public static class Builder {
+        private int bufferSize;
+        private int parallelism;
+        private long memoryMapThreshold;
+        private long memoryMapWindowSize;
+
+        public Builder() {
+            this.bufferSize = DEFAULT_BUFFER_SIZE;
+            this.parallelism = Runtime.getRuntime().availableProcessors();
+            this.memoryMapThreshold = DEFAULT_MEMORY_MAP_THRESHOLD;
+            this.memoryMapWindowSize = DEFAULT_MEMORY_MAP_WINDOW_SIZE;
+        }
+
+        /**
+         * Size of the direct buffer each thread reads files into.
+         * Default: 256k
+         *
+         * @param bufferSize The buffer size in bytes
+         * @return The builder
+         */
+        public Builder withBufferSize(int bufferSize) {
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("Buffer size must be greater than zero");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Number of threads used by {@link ChecksumEngine#checksumAll(Collection, String)}.
+         * Default: number of available processors
+         *
+         * @param parallelism The number of threads
+         * @return The builder
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Parallelism must be greater than zero");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Files of this size or bigger are hashed through memory mapped windows instead of the read buffer. Use
+         * Long.MAX_VALUE to never map.
+         * Default: 1GB
+         *
+         * @param memoryMapThreshold The file size (in bytes) at which memory mapping is used
+         * @return The builder
+         */
+        public Builder withMemoryMapThreshold(long memoryMapThreshold) {
+            this.memoryMapThreshold = Math.max(memoryMapThreshold, 0);
+            return this;
+        }
+
+        /**
+         * How much of the file is mapped at one time. Each window is released once it is no longer referenced.
+         * Default: 64MB, max: Integer.MAX_VALUE
+         *
+         * @param memoryMapWindowSize The window size in bytes
+         * @return The builder
+         */
+        public Builder withMemoryMapWindowSize(long memoryMapWindowSize) {
+            if (memoryMapWindowSize <= 0 || memoryMapWindowSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Memory map window size must be between 1 and " + Integer.MAX_VALUE);
+            }
+            this.memoryMapWindowSize = memoryMapWindowSize;
+            return this;
+        }
+
+        public ChecksumEngine build() {
+            return new ChecksumEngine(this);
+        }
+    }
+
+}
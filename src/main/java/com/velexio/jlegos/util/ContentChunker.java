@@ -0,0 +1,88 @@
+package com.velexio.jlegos.util;
+
+import java.util.SplittableRandom;
+
+/*
+FastCDC style content defined chunking. A gear rolling hash is run over the data and a chunk ends where the top bits
+of the hash are all zero, so the cut points depend on the content around them rather than on offsets: inserting a few
+bytes into a file only changes the chunks next to the insert, the rest still line up and deduplicate.
+
+Nothing is hashed in the first minSize bytes of a chunk. Up to avgSize a stricter mask (more bits) is used and after it
+a looser one, which pulls the chunk sizes towards the average (normalized chunking). A chunk never exceeds maxSize.
+
+The gear table comes from a fixed seed, the cut points (and so the chunk digests) are stable across runs and JVMs.
+ */
+final class ContentChunker {
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x6a4c65676f73L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    ContentChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize < 64 || minSize >= avgSize || avgSize >= maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 64 <= min < avg < max");
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.strictMask = topBits(bits + 1);
+        this.looseMask = topBits(bits - 1);
+    }
+
+    /*
+    Finds where the chunk starting at offset ends. Length is how many bytes are available, the last chunk of a file is
+    simply whatever is left. Returns the chunk length.
+     */
+    int cut(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int limit = Math.min(length, maxSize);
+        int normal = Math.min(limit, avgSize);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    int getMinSize() {
+        return minSize;
+    }
+
+    int getAvgSize() {
+        return avgSize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    // the high bits of a left shifting gear hash depend on the most bytes, so the mask is taken from the top
+    private static long topBits(int count) {
+        return count <= 0 ? 0 : -1L << (64 - count);
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.velexio.jlegos.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <pre>
+ * Copies files with FileChannel.transferTo, which lets the operating system move the data without it passing through
+ * the java heap (sendfile / copy_file_range on Linux).
+ *
+ * The data is transferred in chunks. After each chunk the optional ProgressListener is called and, depending on the
+ * FsyncPolicy, the destination is forced to disk. A copy can be resumed from an offset, so a large copy that was
+ * interrupted does not have to start over.
+ *
+ * Usage Example:
+ *
+ *     CopyEngine engine = new CopyEngine.Builder()
+ *             .withChunkSize(64 * 1024 * 1024)
+ *             .withFsyncPolicy(FsyncPolicy.ON_CLOSE)
+ *             .withProgressListener((path, done, total) -&gt; log.info(done + "/" + total))
+ *             .withResume(true)
+ *             .build();
+ *     engine.copy(Path.of("/data/big.img"), Path.of("/backup/big.img"));
+ * </pre>
+ */
+public class CopyEngine {
+
+    /**
+     * The default number of bytes moved per transferTo call (8MB)
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 8388608;
+
+    private final long chunkSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final ProgressListener progressListener;
+    private final boolean resume;
+    private final boolean replaceExisting;
+    private final boolean copyAttributes;
+
+    private CopyEngine(Builder builder) {
+        this.chunkSize = builder.chunkSize;
+        this.fsyncPolicy = builder.fsyncPolicy;
+        this.progressListener = builder.progressListener;
+        this.resume = builder.resume;
+        this.replaceExisting = builder.replaceExisting;
+        this.copyAttributes = builder.copyAttributes;
+    }
+
+    /**
+     * Creates an engine that honors the same options as {@link FileUtils#copyFile(String, String, FileCopyOption...)}.
+     * As with copyFile, no options means the attributes are copied.
+     *
+     * @param options The copy options
+     * @return A CopyEngine configured with the options
+     */
+    public static CopyEngine forOptions(FileCopyOption... options) {
+        List<FileCopyOption> optionList = Arrays.asList(options);
+        boolean defaults = optionList.isEmpty() || (optionList.size() == 1 && optionList.contains(FileCopyOption.CHANNEL_TRANSFER));
+        return new Builder()
+                .withReplaceExisting(optionList.contains(FileCopyOption.REPLACE_EXISTING))
+                .withCopyAttributes(defaults || optionList.contains(FileCopyOption.INCLUDE_ATTRIBUTES))
+                .build();
+    }
+
+    /**
+     * Copies the source file to the destination. If resume is enabled and the destination already exists, the copy
+     * continues from the end of the existing destination file.
+     *
+     * @param source The file to copy
+     * @param dest   The destination file
+     * @return The number of bytes transferred by this call
+     * @throws IOException If the source is not a regular file, the destination exists (without replace/resume) or an
+     *                     IO error occurs
+     */
+    public long copy(Path source, Path dest) throws IOException {
+        long offset = 0;
+        if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+            if (resume) {
+                offset = Files.exists(dest) ? Math.min(Files.size(dest), Files.size(source)) : 0;
+            } else if (!replaceExisting) {
+                throw new FileAlreadyExistsException(dest.toString());
+            }
+        }
+        return copy(source, dest, offset);
+    }
+
+    /**
+     * Copies the source file to the destination starting at the offset. Anything in the destination past the offset
+     * is discarded, anything before it is assumed to already match the source. Copying a file onto itself does
+     * nothing. A destination that is a symbolic link is replaced by the copy when replace is enabled and the copy
+     * starts at 0, otherwise the file it points to is written.
+     *
+     * @param source      The file to copy
+     * @param dest        The destination file
+     * @param startOffset The byte position to start copying from
+     * @return The number of bytes transferred by this call
+     * @throws IOException If the source is not a regular file or an IO error occurs
+     */
+    public long copy(Path source, Path dest, long startOffset) throws IOException {
+        BasicFileAttributes sourceAttrs;
+        try {
+            sourceAttrs = Files.readAttributes(source, BasicFileAttributes.class);
+        } catch (IOException ioe) {
+            throw new FileNotFoundException("The file [ " + source + "] does not exist.  Copy terminated");
+        }
+        if (!sourceAttrs.isRegularFile()) {
+            throw new FileNotFoundException("The file [ " + source + "] does not exist.  Copy terminated");
+        }
+        if (startOffset < 0 || startOffset > sourceAttrs.size()) {
+            throw new IllegalArgumentException("Start offset [ " + startOffset + "] is outside of the source file");
+        }
+        if (Files.exists(dest, LinkOption.NOFOLLOW_LINKS)) {
+            // opening the destination truncates it, which for the source itself would lose its data
+            if (Files.exists(dest) && Files.isSameFile(source, dest)) {
+                return 0;
+            }
+            // replaced like Files.copy does it: the link itself, not the file it points to
+            if (replaceExisting && startOffset == 0 && Files.isSymbolicLink(dest)) {
+                Files.delete(dest);
+            }
+        }
+
+        long position = startOffset;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(startOffset);
+            out.position(startOffset);
+            long total = in.size();
+            while (position < total) {
+                long transferred = in.transferTo(position, Math.min(chunkSize, total - position), out);
+                if (transferred <= 0) {
+                    throw new IOException("Source file [ " + source + "] was truncated during copy at byte " + position);
+                }
+                position += transferred;
+                if (fsyncPolicy == FsyncPolicy.PER_BATCH) {
+                    out.force(false);
+                }
+                if (progressListener != null) {
+                    progressListener.onProgress(source, position, total);
+                }
+            }
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                out.force(true);
+            }
+        }
+        if (copyAttributes) {
+            copyAttributes(source, dest, sourceAttrs);
+        }
+        return position - startOffset;
+    }
+
+    private static void copyAttributes(Path source, Path dest, BasicFileAttributes sourceAttrs) throws IOException {
+        PosixFileAttributeView posixView = Files.getFileAttributeView(dest, PosixFileAttributeView.class);
+        if (posixView != null) {
+            PosixFileAttributes posixAttrs = Files.readAttributes(source, PosixFileAttributes.class);
+            posixView.setPermissions(posixAttrs.permissions());
+        }
+        Files.getFileAttributeView(dest, BasicFileAttributeView.class)
+                .setTimes(sourceAttrs.lastModifiedTime(), sourceAttrs.lastAccessTime(), sourceAttrs.creationTime());
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public boolean isReplaceExisting() {
+        return replaceExisting;
+    }
+
+    public boolean isCopyAttributes() {
+        return copyAttributes;
+    }
+
+    public static class Builder {
+        private long chunkSize;
+        private FsyncPolicy fsyncPolicy;
+        private ProgressListener progressListener;
+        private boolean resume;
+        private boolean replaceExisting;
+        private boolean copyAttributes;
+
+        public Builder() {
+            this.chunkSize = DEFAULT_CHUNK_SIZE;
+            this.fsyncPolicy = FsyncPolicy.NONE;
+            this.resume = false;
+            this.replaceExisting = false;
+            this.copyAttributes = true;
+        }
+
+        /**
+         * Number of bytes transferred per chunk. Progress and PER_BATCH fsync happen at chunk boundaries.
+         * Default: 8MB
+         *
+         * @param chunkSize The chunk size in bytes
+         * @return The builder
+         */
+        public Builder withChunkSize(long chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be greater than zero");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Default: FsyncPolicy.NONE
+         *
+         * @param fsyncPolicy When the destination should be forced to disk
+         * @return The builder
+         */
+        public Builder withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        /**
+         * @param progressListener Listener called after every chunk with the bytes copied so far
+         * @return The builder
+         */
+        public Builder withProgressListener(ProgressListener progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        /**
+         * When true, an existing destination is treated as a partial copy and the copy continues from its end.
+         * Default: false
+         *
+         * @param resume Whether to resume partial copies
+         * @return The builder
+         */
+        public Builder withResume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param replaceExisting Whether an existing destination should be overwritten
+         * @return The builder
+         */
+        public Builder withReplaceExisting(boolean replaceExisting) {
+            this.replaceExisting = replaceExisting;
+            return this;
+        }
+
+        /**
+         * Copies the permissions and timestamps of the source to the destination.
+         * Default: true
+         *
+         * @param copyAttributes Whether to copy the file attributes
+         * @return The builder
+         */
+        public Builder withCopyAttributes(boolean copyAttributes) {
+            this.copyAttributes = copyAttributes;
+            return this;
+        }
+
+        public CopyEngine build() {
+            return new CopyEngine(this);
+        }
+    }
+
+}
@@ -0,0 +1,479 @@
+package com.velexio.jlegos.util;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * <pre>
+ * A deduplicating blob store. Files are split into content defined chunks (FastCDC style, see ContentChunker) and
+ * every chunk is stored once under its digest, so storing many near identical files (builds, backups, artifacts) only
+ * costs the space of the chunks that actually differ. Any algorithm MessageDigest (and FileUtils.checksum) accepts can
+ * be used for the keys.
+ *
+ * Layout under the root directory:
+ *
+ *     chunks/ab/abcdef...   one file per chunk, named by its hex digest and fanned out by the first two characters
+ *     manifests/name        the ordered list of chunks (digest and length) that make up the stored file
+ *
+ * Chunks and manifests are written to a temporary file, forced to disk and renamed into place, and the chunk
+ * directories are synced before the manifest that refers to them is written, so a crash never leaves a partial chunk
+ * under a digest name or a manifest pointing at chunks that did not make it to disk. A chunk that is already stored is
+ * only reused if its size matches, and reading a file back checks every chunk against its digest before writing it.
+ * Reading maps each chunk into memory and writes it straight to the target channel. Storing and reading can run
+ * concurrently; gc() must not run while files are being stored.
+ *
+ * Usage Example:
+ *
+ *     DedupStore store = new DedupStore.Builder(Paths.get("/var/lib/artifacts"))
+ *             .withDigestAlgorithm("SHA-256")
+ *             .build();
+ *     DedupStore.PutResult result = store.put("app-1.2.3.jar", Paths.get("target/app.jar"));
+ *     System.out.println(result.getNewBytes() + " of " + result.getBytes() + " bytes were new");
+ *     store.get("app-1.2.3.jar", Paths.get("/opt/app/app.jar"));
+ * </pre>
+ */
+public class DedupStore {
+
+    private static final String MANIFEST_MAGIC = "jlegos-dedup";
+    private static final int MANIFEST_VERSION = 1;
+
+    private final Path chunkDir;
+    private final Path manifestDir;
+    private final String digestAlgorithm;
+    private final ContentChunker chunker;
+    private final int keyLength;
+
+    private DedupStore(Builder builder) throws IOException {
+        this.chunkDir = builder.root.resolve("chunks");
+        this.manifestDir = builder.root.resolve("manifests");
+        this.digestAlgorithm = builder.digestAlgorithm;
+        this.chunker = new ContentChunker(builder.minChunkSize, builder.avgChunkSize, builder.maxChunkSize);
+        try {
+            this.keyLength = MessageDigest.getInstance(digestAlgorithm).getDigestLength() * 2;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Digest algorithm [ " + digestAlgorithm + "] is not available", e);
+        }
+        Files.createDirectories(chunkDir);
+        Files.createDirectories(manifestDir);
+    }
+
+    /**
+     * Stores a file under a name, replacing whatever was stored under that name before
+     *
+     * @param name The name the file is stored under, a plain file name (no separators)
+     * @param file The file to store
+     * @return How many chunks and bytes the file took and how many of them were new
+     * @throws IOException If the file cannot be read or the store cannot be written
+     */
+    public PutResult put(String name, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return put(name, in);
+        }
+    }
+
+    /**
+     * Stores everything the stream returns under a name, replacing whatever was stored under that name before. The
+     * stream is not closed.
+     *
+     * @param name The name the content is stored under, a plain file name (no separators)
+     * @param in   The content to store
+     * @return How many chunks and bytes the content took and how many of them were new
+     * @throws IOException If the stream cannot be read or the store cannot be written
+     */
+    public PutResult put(String name, InputStream in) throws IOException {
+        Path manifest = manifestPath(name);
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[chunker.getMaxSize()];
+        StringBuilder entries = new StringBuilder();
+        long chunks = 0;
+        long newChunks = 0;
+        long bytes = 0;
+        long newBytes = 0;
+        Set<Path> writtenDirs = new HashSet<>();
+        int filled = 0;
+        boolean eof = false;
+        while (true) {
+            while (!eof && filled < buffer.length) {
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    filled += read;
+                }
+            }
+            if (filled == 0) {
+                break;
+            }
+            int length = eof ? chunker.cut(buffer, 0, filled) : chunker.cut(buffer, 0, buffer.length);
+            digest.update(buffer, 0, length);
+            String key = ChecksumEngine.toHex(digest.digest());
+            if (writeChunk(key, buffer, length, writtenDirs)) {
+                newChunks++;
+                newBytes += length;
+            }
+            entries.append(key).append(' ').append(length).append('\n');
+            chunks++;
+            bytes += length;
+            filled -= length;
+            System.arraycopy(buffer, length, buffer, 0, filled);
+        }
+        for (Path dir : writtenDirs) {
+            FileUtils.forceDirectory(dir);
+        }
+        String header = MANIFEST_MAGIC + " " + MANIFEST_VERSION + " " + digestAlgorithm + " " + bytes + "\n";
+        FileUtils.writeAtomic(manifest.toString(), header + entries, StandardCharsets.UTF_8);
+        return new PutResult(chunks, newChunks, bytes, newBytes);
+    }
+
+    /**
+     * Reassembles a stored file, replacing the target if it exists
+     *
+     * @param name   The name the file was stored under
+     * @param target The file to write
+     * @throws IOException If nothing is stored under the name, a chunk is missing or the target cannot be written
+     */
+    public void get(String name, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            get(name, out);
+        }
+    }
+
+    /**
+     * Reassembles a stored file into a channel, which is not closed
+     *
+     * @param name The name the file was stored under
+     * @param out  Where the content is written
+     * @return The number of bytes written
+     * @throws IOException If nothing is stored under the name, a chunk is missing or the channel cannot be written
+     */
+    public long get(String name, WritableByteChannel out) throws IOException {
+        long written = 0;
+        MessageDigest digest = newDigest();
+        for (ChunkRef chunk : readManifest(name)) {
+            Path chunkFile = chunkPath(chunk.key);
+            try (FileChannel in = FileChannel.open(chunkFile, StandardOpenOption.READ)) {
+                if (in.size() != chunk.length) {
+                    throw new IOException("Chunk [ " + chunk.key + "] of [ " + name + "] is corrupt");
+                }
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, chunk.length);
+                digest.update(mapped.duplicate());
+                if (!chunk.key.equals(ChecksumEngine.toHex(digest.digest()))) {
+                    throw new IOException("Chunk [ " + chunk.key + "] of [ " + name + "] is corrupt");
+                }
+                while (mapped.hasRemaining()) {
+                    written += out.write(mapped);
+                }
+            } catch (NoSuchFileException e) {
+                throw new FileNotFoundException("Chunk [ " + chunk.key + "] of [ " + name + "] is missing");
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @param name The name to look for
+     * @return True if a file is stored under the name
+     */
+    public boolean contains(String name) {
+        return Files.isRegularFile(manifestPath(name));
+    }
+
+    /**
+     * Removes the name from the store. The chunks stay until gc() finds nothing uses them.
+     *
+     * @param name The name to remove
+     * @return True if something was stored under the name
+     * @throws IOException If the manifest cannot be removed
+     */
+    public boolean delete(String name) throws IOException {
+        return Files.deleteIfExists(manifestPath(name));
+    }
+
+    /**
+     * @return The names of every stored file, sorted
+     * @throws IOException If the store cannot be listed
+     */
+    public List<String> list() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> manifests = Files.newDirectoryStream(manifestDir)) {
+            for (Path manifest : manifests) {
+                String name = manifest.getFileName().toString();
+                if (!name.startsWith(".")) {
+                    names.add(name);
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Removes every chunk no stored file refers to. Must not run while files are being stored, a chunk written for a
+     * manifest that is not in place yet would be removed.
+     *
+     * @return The number of chunks removed
+     * @throws IOException If the store cannot be read or a chunk cannot be removed
+     */
+    public long gc() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        for (String name : list()) {
+            for (ChunkRef chunk : readManifest(name)) {
+                referenced.add(chunk.key);
+            }
+        }
+        long removed = 0;
+        List<Path> unreferenced = new ArrayList<>();
+        try (Stream<Path> chunks = new DirectoryListing.Builder(chunkDir).withRecursive(true)
+                .withType(DirectoryListing.EntryType.FILES).build().stream()) {
+            chunks.filter(chunk -> !referenced.contains(chunk.getFileName().toString())).forEach(unreferenced::add);
+        }
+        for (Path chunk : unreferenced) {
+            if (Files.deleteIfExists(chunk)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /*
+    Returns false when a chunk with the same digest is already stored. A stored chunk of the wrong size (left by a crash
+    of an older version, or damaged) is written again. The directories renamed into are added to writtenDirs, the
+    caller syncs them before the manifest is written.
+     */
+    private boolean writeChunk(String key, byte[] data, int length, Set<Path> writtenDirs) throws IOException {
+        Path chunk = chunkPath(key);
+        if (Files.exists(chunk) && Files.size(chunk) == length) {
+            return false;
+        }
+        Path dir = chunk.getParent();
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir);
+            writtenDirs.add(chunkDir);
+        }
+        Path temp = Files.createTempFile(dir, ".chunk", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer source = ByteBuffer.wrap(data, 0, length);
+                while (source.hasRemaining()) {
+                    out.write(source);
+                }
+                out.force(true);
+            }
+            try {
+                Files.move(temp, chunk, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // stored by another thread in the meantime, the content is the same
+                return false;
+            }
+            writtenDirs.add(dir);
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private List<ChunkRef> readManifest(String name) throws IOException {
+        Path manifest = manifestPath(name);
+        if (!Files.isRegularFile(manifest)) {
+            throw new FileNotFoundException("Nothing is stored under [ " + name + "]");
+        }
+        List<ChunkRef> chunks = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String[] header = String.valueOf(reader.readLine()).split(" ");
+            if (header.length != 4 || !MANIFEST_MAGIC.equals(header[0]) || !String.valueOf(MANIFEST_VERSION).equals(header[1])) {
+                throw new IOException("Manifest for [ " + name + "] is not a jlegos dedup manifest");
+            }
+            if (!digestAlgorithm.equals(header[2])) {
+                throw new IOException("Manifest for [ " + name + "] uses " + header[2] + ", the store uses " + digestAlgorithm);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("Manifest for [ " + name + "] is corrupt");
+                }
+                String key = line.substring(0, space);
+                int length;
+                try {
+                    length = Integer.parseInt(line.substring(space + 1));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Manifest for [ " + name + "] is corrupt", e);
+                }
+                if (length < 0 || !isKey(key)) {
+                    throw new IOException("Manifest for [ " + name + "] is corrupt");
+                }
+                chunks.add(new ChunkRef(key, length));
+            }
+        }
+        return chunks;
+    }
+
+    private Path manifestPath(String name) {
+        if (name == null || name.isEmpty() || name.startsWith(".") || name.contains("/") || name.contains("\\")) {
+            throw new IllegalArgumentException("Invalid name [ " + name + "], it must be a plain file name");
+        }
+        return manifestDir.resolve(name);
+    }
+
+    // a lower case hex digest of the store's algorithm, nothing else may be resolved under the chunk directory
+    private boolean isKey(String key) {
+        if (key.length() != keyLength) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Path chunkPath(String key) {
+        return chunkDir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class ChunkRef {
+        private final String key;
+        private final int length;
+
+        private ChunkRef(String key, int length) {
+            this.key = key;
+            this.length = length;
+        }
+    }
+
+    /**
+     * What storing one file took
+     */
+    public static class PutResult {
+        private final long chunkCount;
+        private final long newChunkCount;
+        private final long bytes;
+        private final long newBytes;
+
+        PutResult(long chunkCount, long newChunkCount, long bytes, long newBytes) {
+            this.chunkCount = chunkCount;
+            this.newChunkCount = newChunkCount;
+            this.bytes = bytes;
+            this.newBytes = newBytes;
+        }
+
+        public long getChunkCount() {
+            return chunkCount;
+        }
+
+        /**
+         * @return Number of chunks that were not in the store yet
+         */
+        public long getNewChunkCount() {
+            return newChunkCount;
+        }
+
+        /**
+         * @return Size of the stored file
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return Bytes actually written to the store, the rest was already there
+         */
+        public long getNewBytes() {
+            return newBytes;
+        }
+
+        @Override
+        public String toString() {
+            return newChunkCount + "/" + chunkCount + " new chunks, " + newBytes + "/" + bytes + " new bytes";
+        }
+    }
+
+    public static class Builder {
+        private final Path root;
+        private String digestAlgorithm;
+        private int minChunkSize;
+        private int avgChunkSize;
+        private int maxChunkSize;
+
+        public Builder(Path root) {
+            this.root = root;
+            this.digestAlgorithm = "SHA-256";
+            this.minChunkSize = 16384;
+            this.avgChunkSize = 65536;
+            this.maxChunkSize = 262144;
+        }
+
+        /**
+         * Default: SHA-256. A store has to keep using the algorithm it was created with.
+         *
+         * @param digestAlgorithm Any algorithm java.security.MessageDigest accepts
+         * @return The builder
+         */
+        public Builder withDigestAlgorithm(String digestAlgorithm) {
+            this.digestAlgorithm = digestAlgorithm;
+            return this;
+        }
+
+        /**
+         * Default: 16k / 64k / 256k. Smaller chunks find more duplication but mean more files and a longer manifest.
+         * Changing the sizes changes the cut points, content stored with other sizes will not deduplicate against it.
+         *
+         * @param minChunkSize The smallest chunk (except the last one of a file), at least 64
+         * @param avgChunkSize The size chunks are normalized towards
+         * @param maxChunkSize The largest chunk
+         * @return The builder
+         */
+        public Builder withChunkSizes(int minChunkSize, int avgChunkSize, int maxChunkSize) {
+            this.minChunkSize = minChunkSize;
+            this.avgChunkSize = avgChunkSize;
+            this.maxChunkSize = maxChunkSize;
+            return this;
+        }
+
+        /**
+         * @return The store, with its directories created
+         * @throws IOException If the directories cannot be created
+         */
+        public DedupStore build() throws IOException {
+            return new DedupStore(this);
+        }
+    }
+
+}
@@ -0,0 +1,433 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+Writes raw DEFLATE streams (no zlib/gzip wrapper) to an output stream, compressing with several threads the way pigz
+does. The input is cut into blocks and each block is compressed on its own, primed with the last 32k of the block
+before it as a dictionary and ended with a sync flush, so the compressed blocks simply concatenate into one valid
+deflate stream.
+
+Compressed blocks and the ordered actions of the container format (headers, descriptors) sit in one queue and are
+written strictly in submission order by the calling thread. Reading blocks for the next entry carries on while earlier
+blocks are still being compressed, which is what lets lots of small files use every worker. The number of blocks in
+flight is bounded, so memory use is bounded no matter how large the input is.
+
+With a single worker no threads are used and each stream is deflated inline as one continuous stream.
+
+Deflaters are kept per thread and per level, so entries can use different levels without paying for a new Deflater.
+ */
+final class DeflatePipeline implements AutoCloseable {
+
+    @FunctionalInterface
+    interface IOAction {
+        void run() throws IOException;
+    }
+
+    /*
+    CRC and uncompressed size are known as soon as deflate() returns, the compressed size is only complete once all of
+    its blocks have been written, i.e. inside any action enqueued after deflate() returned.
+     */
+    static final class DeflateResult {
+        private final CRC32 crc = new CRC32();
+        private long uncompressedSize;
+        private long compressedSize;
+
+        long getCrc() {
+            return crc.getValue();
+        }
+
+        long getUncompressedSize() {
+            return uncompressedSize;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+    }
+
+    private static final int DICTIONARY_SIZE = 32768;
+    private static final int LEVELS = Deflater.BEST_COMPRESSION + 2;
+
+    private final OutputStream out;
+    private final int compressionLevel;
+    private final int maxInFlightBlocks;
+    private final BufferPool blockPool;
+    private final ExecutorService executor;
+    private final Deflater[] inlineDeflaters;
+    private final ThreadLocal<Deflater[]> workerDeflaters;
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private int pendingBlocks;
+    private long bytesWritten;
+
+    DeflatePipeline(OutputStream out, ArchiveOptions options) {
+        this.out = out;
+        this.compressionLevel = options.getCompressionLevel();
+        this.maxInFlightBlocks = options.getWorkers() * 4;
+        this.blockPool = new BufferPool(options.getBlockSize(), (long) options.getBlockSize() * (maxInFlightBlocks + 2));
+        if (options.getWorkers() > 1) {
+            this.executor = Executors.newFixedThreadPool(options.getWorkers(), runnable -> {
+                Thread thread = new Thread(runnable, "jlegos-deflate");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.inlineDeflaters = null;
+            this.workerDeflaters = ThreadLocal.withInitial(() -> new Deflater[LEVELS]);
+        } else {
+            this.executor = null;
+            this.inlineDeflaters = new Deflater[LEVELS];
+            this.workerDeflaters = null;
+        }
+    }
+
+    /*
+    Runs the action once everything queued before it has been written
+     */
+    void enqueue(IOAction action) throws IOException {
+        if (pending.isEmpty()) {
+            action.run();
+        } else {
+            pending.add(new Pending(null, null, action));
+            drainReady();
+        }
+    }
+
+    /*
+    Writes bytes straight to the output. Only safe from inside an enqueued action or once the pipeline is flushed.
+     */
+    void writeRaw(byte[] bytes) throws IOException {
+        writeRaw(bytes, 0, bytes.length);
+    }
+
+    void writeRaw(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        bytesWritten += length;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /*
+    Reads the stream to the end and queues it as one deflate stream at the pipeline's compression level
+     */
+    DeflateResult deflate(InputStream in) throws IOException {
+        return deflate(in, compressionLevel);
+    }
+
+    DeflateResult deflate(InputStream in, int level) throws IOException {
+        DeflateResult result = new DeflateResult();
+        if (executor == null) {
+            deflateInline(in, deflaterFor(inlineDeflaters, level), result);
+            return result;
+        }
+        byte[] dictionary = null;
+        byte[] block = blockPool.borrow();
+        int length = readFully(in, block);
+        while (true) {
+            byte[] next = null;
+            int nextLength = 0;
+            if (length == block.length) {
+                next = blockPool.borrow();
+                nextLength = readFully(in, next);
+            }
+            boolean last = nextLength == 0;
+            result.crc.update(block, 0, length);
+            result.uncompressedSize += length;
+            byte[] nextDictionary = last ? null : Arrays.copyOfRange(block, Math.max(0, length - DICTIONARY_SIZE), length);
+            submitBlock(block, length, dictionary, last, level, result);
+            if (last) {
+                if (next != null) {
+                    blockPool.release(next);
+                }
+                return result;
+            }
+            dictionary = nextDictionary;
+            block = next;
+            length = nextLength;
+        }
+    }
+
+    /*
+    Opens a deflate stream that is fed by writes instead of an InputStream, for formats like tar where the data is
+    produced piece by piece. finishStream() must be called to end it, close() does not.
+     */
+    DeflateStream openStream(int level) {
+        return new DeflateStream(level);
+    }
+
+    /*
+    Writes out everything that is queued
+     */
+    void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            drainOne();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (inlineDeflaters != null) {
+            for (Deflater deflater : inlineDeflaters) {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+        }
+    }
+
+    private void submitBlock(byte[] block, int length, byte[] dictionary, boolean last, int level, DeflateResult result)
+            throws IOException {
+        Future<byte[]> compressed = executor.submit(() -> {
+            try {
+                return deflateBlock(deflaterFor(workerDeflaters.get(), level), block, length, dictionary, last);
+            } finally {
+                blockPool.release(block);
+            }
+        });
+        pending.add(new Pending(compressed, result, null));
+        pendingBlocks++;
+        while (pendingBlocks > maxInFlightBlocks) {
+            drainOne();
+        }
+        drainReady();
+    }
+
+    private void deflateInline(InputStream in, Deflater inlineDeflater, DeflateResult result) throws IOException {
+        byte[] input = blockPool.borrow();
+        byte[] output = blockPool.borrow();
+        try {
+            inlineDeflater.reset();
+            int length;
+            while ((length = in.read(input)) > -1) {
+                result.crc.update(input, 0, length);
+                result.uncompressedSize += length;
+                inlineDeflater.setInput(input, 0, length);
+                while (!inlineDeflater.needsInput()) {
+                    writeCompressed(output, inlineDeflater.deflate(output), result);
+                }
+            }
+            inlineDeflater.finish();
+            while (!inlineDeflater.finished()) {
+                writeCompressed(output, inlineDeflater.deflate(output), result);
+            }
+        } finally {
+            blockPool.release(input);
+            blockPool.release(output);
+        }
+    }
+
+    private void writeCompressed(byte[] output, int length, DeflateResult result) throws IOException {
+        out.write(output, 0, length);
+        bytesWritten += length;
+        result.compressedSize += length;
+    }
+
+    private void drainReady() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isReady()) {
+            drainOne();
+        }
+    }
+
+    private void drainOne() throws IOException {
+        Pending next = pending.poll();
+        if (next == null) {
+            return;
+        }
+        if (next.action != null) {
+            next.action.run();
+            return;
+        }
+        pendingBlocks--;
+        byte[] compressed;
+        try {
+            compressed = next.block.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compressed data");
+        } catch (ExecutionException ee) {
+            throw new IOException("Unable to compress block", ee.getCause());
+        }
+        out.write(compressed);
+        bytesWritten += compressed.length;
+        next.result.compressedSize += compressed.length;
+    }
+
+    private static Deflater deflaterFor(Deflater[] deflaters, int level) {
+        Deflater deflater = deflaters[level + 1];
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            deflaters[level + 1] = deflater;
+        }
+        return deflater;
+    }
+
+    static byte[] deflateBlock(Deflater deflater, byte[] data, int length, byte[] dictionary, boolean last) {
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(data, 0, length);
+        if (last) {
+            deflater.finish();
+        }
+        int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+        byte[] output = new byte[length + (length >> 3) + 64];
+        int written = 0;
+        while (true) {
+            written += deflater.deflate(output, written, output.length - written, flush);
+            if (last ? deflater.finished() : written < output.length) {
+                break;
+            }
+            if (written == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+        }
+        return Arrays.copyOf(output, written);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    /*
+    Collects written bytes into blocks and submits each full block as soon as it fills up. The last block is only
+    known once finishStream() is called, it may be empty, which just adds the 2 byte final block marker.
+     */
+    final class DeflateStream extends OutputStream {
+        private final int level;
+        private final DeflateResult result = new DeflateResult();
+        private final Deflater deflater;
+        private byte[] block;
+        private int length;
+        private byte[] dictionary;
+        private boolean finished;
+
+        private DeflateStream(int level) {
+            this.level = level;
+            this.deflater = executor == null ? deflaterFor(inlineDeflaters, level) : null;
+            if (deflater != null) {
+                deflater.reset();
+            }
+            this.block = blockPool.borrow();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            if (finished) {
+                throw new IOException("The deflate stream has already been finished");
+            }
+            result.crc.update(bytes, offset, count);
+            result.uncompressedSize += count;
+            if (deflater != null) {
+                deflater.setInput(bytes, offset, count);
+                while (!deflater.needsInput()) {
+                    writeCompressed(block, deflater.deflate(block), result);
+                }
+                return;
+            }
+            while (count > 0) {
+                int copied = Math.min(count, block.length - length);
+                System.arraycopy(bytes, offset, block, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+                if (length == block.length) {
+                    submitCurrent(false);
+                }
+            }
+        }
+
+        /*
+        Pushes everything written so far through to the output with a sync flush, so a reader can decompress it
+         */
+        @Override
+        public void flush() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (deflater != null) {
+                int written;
+                do {
+                    written = deflater.deflate(block, 0, block.length, Deflater.SYNC_FLUSH);
+                    writeCompressed(block, written, result);
+                } while (written == block.length);
+            } else if (length > 0) {
+                submitCurrent(false);
+            }
+            DeflatePipeline.this.flush();
+        }
+
+        /*
+        Ends the deflate stream. The compressed size is complete in any action enqueued after this returns.
+         */
+        DeflateResult finishStream() throws IOException {
+            if (finished) {
+                return result;
+            }
+            finished = true;
+            if (deflater != null) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    writeCompressed(block, deflater.deflate(block), result);
+                }
+                blockPool.release(block);
+            } else {
+                submitBlock(block, length, dictionary, true, level, result);
+            }
+            block = null;
+            return result;
+        }
+
+        private void submitCurrent(boolean last) throws IOException {
+            byte[] nextDictionary = Arrays.copyOfRange(block, Math.max(0, length - DICTIONARY_SIZE), length);
+            submitBlock(block, length, dictionary, last, level, result);
+            dictionary = nextDictionary;
+            block = blockPool.borrow();
+            length = 0;
+        }
+    }
+
+    private static final class Pending {
+        private final Future<byte[]> block;
+        private final DeflateResult result;
+        private final IOAction action;
+
+        private Pending(Future<byte[]> block, DeflateResult result, IOAction action) {
+            this.block = block;
+            this.result = result;
+            this.action = action;
+        }
+
+        private boolean isReady() {
+            return action != null || block.isDone();
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * Keeps an in-memory index of the entry names of the directories it is queried for, so a directory that is asked about
+ * many times with different patterns is only listed again when it actually changes.
+ *
+ * Every query costs one stat of the directory itself. Adding, removing or renaming an entry changes the directory's
+ * modification time, and only then are the names listed again (names only, the entries are not stat'ed). A listing
+ * taken within the racy window of the modification time (file systems with coarse timestamps can change a directory
+ * twice within the same tick) is not trusted and is refreshed on the next query. Changes to the content of existing
+ * files do not touch the directory, and the index is not meant to notice them.
+ *
+ * The number of directories kept is bounded, the least recently queried one is dropped first. Instances are safe to
+ * share between threads.
+ *
+ * Usage Example:
+ *
+ *     DirectoryIndex index = new DirectoryIndex.Builder().withMaxDirectories(64).build();
+ *     FileMatcher csv = FileMatcher.glob("*.csv");
+ *     List&lt;Path&gt; incoming = index.find(Paths.get("/data/incoming"), csv);
+ * </pre>
+ */
+public class DirectoryIndex {
+
+    private static final int DEFAULT_MAX_DIRECTORIES = 256;
+    private static final long DEFAULT_RACY_WINDOW_MILLIS = 2000;
+
+    private final long racyWindowMillis;
+    private final Map<Path, Snapshot> snapshots;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private DirectoryIndex(Builder builder) {
+        this.racyWindowMillis = builder.racyWindowMillis;
+        int maxDirectories = builder.maxDirectories;
+        this.snapshots = Collections.synchronizedMap(new LinkedHashMap<Path, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Snapshot> eldest) {
+                return size() > maxDirectories;
+            }
+        });
+    }
+
+    /**
+     * Finds the first level entries (files and subdirectories) of the directory whose name matches
+     *
+     * @param directory The directory to search
+     * @param matcher   The compiled pattern the entry names are matched against
+     * @return The matching paths, sorted by name. Empty if the path is not a directory.
+     * @throws IOException If the directory cannot be listed
+     */
+    public List<Path> find(Path directory, FileMatcher matcher) throws IOException {
+        String[] names = names(directory);
+        List<Path> matches = new ArrayList<>();
+        for (String name : names) {
+            if (matcher.matches(name)) {
+                matches.add(directory.resolve(name));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param directory The directory to list
+     * @return The names of every first level entry, sorted. Empty if the path is not a directory.
+     * @throws IOException If the directory cannot be listed
+     */
+    public List<String> list(Path directory) throws IOException {
+        return Collections.unmodifiableList(Arrays.asList(names(directory)));
+    }
+
+    /**
+     * Drops the cached names of a directory, the next query lists it again
+     *
+     * @param directory The directory to forget
+     */
+    public void invalidate(Path directory) {
+        snapshots.remove(directory.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Drops every cached directory
+     */
+    public void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * @return Number of queries answered from the index without listing the directory
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Number of times a directory was listed (first query, changed or racy)
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * @return Number of directories currently indexed
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    private String[] names(Path directory) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        if (!Files.isDirectory(key)) {
+            snapshots.remove(key);
+            return new String[0];
+        }
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.modified == modified && !snapshot.racy) {
+            hitCount.incrementAndGet();
+            return snapshot.names;
+        }
+        // the listing happens outside the lock, two threads may refresh the same directory at once and the last wins
+        long listedAt = System.currentTimeMillis();
+        String[] names = listNames(key);
+        refreshCount.incrementAndGet();
+        snapshots.put(key, new Snapshot(modified, names, listedAt - modified < racyWindowMillis));
+        return names;
+    }
+
+    private static String[] listNames(Path directory) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static class Snapshot {
+        private final long modified;
+        private final String[] names;
+        private final boolean racy;
+
+        private Snapshot(long modified, String[] names, boolean racy) {
+            this.modified = modified;
+            this.names = names;
+            this.racy = racy;
+        }
+    }
+
+    public static class Builder {
+        private int maxDirectories;
+        private long racyWindowMillis;
+
+        public Builder() {
+            this.maxDirectories = DEFAULT_MAX_DIRECTORIES;
+            this.racyWindowMillis = DEFAULT_RACY_WINDOW_MILLIS;
+        }
+
+        /**
+         * Default: 256
+         *
+         * @param maxDirectories The most directories kept in the index
+         * @return The builder
+         */
+        public Builder withMaxDirectories(int maxDirectories) {
+            if (maxDirectories < 1) {
+                throw new IllegalArgumentException("Max directories must be at least 1");
+            }
+            this.maxDirectories = maxDirectories;
+            return this;
+        }
+
+        /**
+         * Default: 2000. A listing taken less than this long after the directory's modification time is refreshed on
+         * the next query, since a change within the same timestamp tick would not move the modification time.
+         *
+         * @param racyWindowMillis The racy window in milliseconds, 0 to always trust the modification time
+         * @return The builder
+         */
+        public Builder withRacyWindow(long racyWindowMillis) {
+            if (racyWindowMillis < 0) {
+                throw new IllegalArgumentException("Racy window cannot be negative");
+            }
+            this.racyWindowMillis = racyWindowMillis;
+            return this;
+        }
+
+        public DirectoryIndex build() {
+            return new DirectoryIndex(this);
+        }
+    }
+
+}
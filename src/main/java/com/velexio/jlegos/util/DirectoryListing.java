@@ -0,0 +1,363 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <pre>
+ * Lists the contents of a directory lazily. Entries are read from the file system as the stream is consumed, so a
+ * directory with millions of entries never has to fit in memory. A flat listing is backed by a DirectoryStream, a
+ * recursive one by a file tree walk.
+ *
+ * Glob and regex filters are matched against the path of the entry relative to the listed directory (for a flat listing
+ * that is just the file name), so "*.log" matches the top level and "**&#47;*.log" matches at any depth. Name filters
+ * never touch the file system. The attributes of an entry are only read when a type filter or a count needs them, and
+ * then only once.
+ *
+ * Symbolic links are not followed unless asked for. With links followed a link is reported as what it points to, and a
+ * recursive listing walks into linked directories (cycles are skipped).
+ *
+ * The returned streams hold an open directory handle and must be closed.
+ *
+ * Usage Example:
+ *
+ *     DirectoryListing listing = new DirectoryListing.Builder(Paths.get("/var/log/app"))
+ *             .withGlob("**&#47;*.log")
+ *             .withRecursive(true)
+ *             .withMaxDepth(3)
+ *             .withType(DirectoryListing.EntryType.FILES)
+ *             .build();
+ *     try (Stream&lt;Path&gt; logs = listing.stream()) {
+ *         logs.forEach(System.out::println);
+ *     }
+ *     long directories = new DirectoryListing.Builder(Paths.get("/var/log/app")).build().countDirectories();
+ * </pre>
+ */
+public class DirectoryListing {
+
+    public enum EntryType {
+        ALL, FILES, DIRECTORIES
+    }
+
+    private final Path directory;
+    private final PathMatcher globMatcher;
+    private final Pattern regex;
+    private final boolean recursive;
+    private final int maxDepth;
+    private final EntryType type;
+    private final boolean followLinks;
+
+    private DirectoryListing(Builder builder) {
+        this.directory = builder.directory;
+        this.globMatcher = builder.glob == null ? null : FileSystems.getDefault().getPathMatcher("glob:" + builder.glob);
+        this.regex = builder.regex;
+        this.recursive = builder.recursive;
+        this.maxDepth = builder.recursive ? builder.maxDepth : 1;
+        this.type = builder.type;
+        this.followLinks = builder.followLinks;
+    }
+
+    /**
+     * Opens a lazy stream over the matching entries. I/O errors hit while the stream is consumed are thrown as
+     * UncheckedIOException.
+     *
+     * @return The stream of matching paths, which must be closed (try-with-resources)
+     * @throws IOException If the directory cannot be opened
+     */
+    public Stream<Path> stream() throws IOException {
+        if (recursive) {
+            return walk();
+        }
+        DirectoryStream<Path> entries = Files.newDirectoryStream(directory, entry -> matchesName(entry.getFileName()));
+        Iterator<Path> iterator = entries.iterator();
+        Iterator<Path> unchecked = new Iterator<Path>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return iterator.hasNext();
+                } catch (DirectoryIteratorException e) {
+                    throw new UncheckedIOException(e.getCause());
+                }
+            }
+
+            @Override
+            public Path next() {
+                try {
+                    return iterator.next();
+                } catch (DirectoryIteratorException e) {
+                    throw new UncheckedIOException(e.getCause());
+                }
+            }
+        };
+        Stream<Path> stream = StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(unchecked, Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        entries.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        if (type != EntryType.ALL) {
+            stream = stream.filter(entry -> matchesType(readAttributes(entry)));
+        }
+        return stream;
+    }
+
+    /**
+     * @return A lazy iterator over the matching entries. The directory handle is released once the iterator is
+     * exhausted, callers that stop early should use stream() instead so they can close it.
+     * @throws IOException If the directory cannot be opened
+     */
+    public Iterator<Path> iterator() throws IOException {
+        Stream<Path> stream = stream();
+        Iterator<Path> iterator = stream.iterator();
+        return new Iterator<Path>() {
+            private boolean closed;
+
+            @Override
+            public boolean hasNext() {
+                if (closed) {
+                    return false;
+                }
+                if (iterator.hasNext()) {
+                    return true;
+                }
+                closed = true;
+                stream.close();
+                return false;
+            }
+
+            @Override
+            public Path next() {
+                return iterator.next();
+            }
+        };
+    }
+
+    /**
+     * @return The number of regular files that match the name filters, with each entry stat'ed once
+     * @throws IOException If the directory or any subdirectory cannot be read
+     */
+    public long countFiles() throws IOException {
+        return count(EntryType.FILES);
+    }
+
+    /**
+     * @return The number of directories that match the name filters (not counting the listed directory itself), with
+     * each entry stat'ed once
+     * @throws IOException If the directory or any subdirectory cannot be read
+     */
+    public long countDirectories() throws IOException {
+        return count(EntryType.DIRECTORIES);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public EntryType getType() {
+        return type;
+    }
+
+    private Stream<Path> walk() throws IOException {
+        FileVisitOption[] options = followLinks ? new FileVisitOption[]{FileVisitOption.FOLLOW_LINKS} : new FileVisitOption[0];
+        // Files.find hands over the attributes the walk already read, so the type filter costs no extra stat
+        return Files.find(directory, maxDepth, (entry, attributes) ->
+                !entry.equals(directory) && matchesType(attributes) && matchesName(directory.relativize(entry)), options);
+    }
+
+    private long count(EntryType counted) throws IOException {
+        long[] count = new long[1];
+        Set<FileVisitOption> options = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : Collections.emptySet();
+        Files.walkFileTree(directory, options, maxDepth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                if (!dir.equals(directory)) {
+                    countEntry(dir, attributes);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                // at the depth limit directories are handed to visitFile rather than preVisitDirectory
+                countEntry(file, attributes);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path entry, IOException e) throws IOException {
+                if (entry.equals(directory) || !(e instanceof NoSuchFileException)) {
+                    throw e;
+                }
+                // deleted between the listing and the stat, it is simply not counted
+                return FileVisitResult.CONTINUE;
+            }
+
+            private void countEntry(Path entry, BasicFileAttributes attributes) {
+                boolean typeMatches = counted == EntryType.FILES ? attributes.isRegularFile() : attributes.isDirectory();
+                if (typeMatches && matchesType(attributes) && matchesName(directory.relativize(entry))) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    private boolean matchesName(Path relative) {
+        if (globMatcher != null && !globMatcher.matches(relative)) {
+            return false;
+        }
+        return regex == null || regex.matcher(relative.toString()).matches();
+    }
+
+    private boolean matchesType(BasicFileAttributes attributes) {
+        switch (type) {
+            case FILES:
+                return attributes.isRegularFile();
+            case DIRECTORIES:
+                return attributes.isDirectory();
+            default:
+                return true;
+        }
+    }
+
+    private BasicFileAttributes readAttributes(Path entry) {
+        try {
+            if (followLinks) {
+                try {
+                    return Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // a broken link is reported as the link itself, the same as the tree walk does
+                    return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                }
+            }
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static class Builder {
+        private final Path directory;
+        private String glob;
+        private Pattern regex;
+        private boolean recursive;
+        private int maxDepth;
+        private EntryType type;
+        private boolean followLinks;
+
+        public Builder(Path directory) {
+            this.directory = directory;
+            this.recursive = false;
+            this.maxDepth = Integer.MAX_VALUE;
+            this.type = EntryType.ALL;
+            this.followLinks = false;
+        }
+
+        /**
+         * Default: no glob filter
+         *
+         * @param glob A glob matched against the path relative to the listed directory, i.e. "*.txt" or "**&#47;*.txt"
+         * @return The builder
+         */
+        public Builder withGlob(String glob) {
+            this.glob = glob;
+            return this;
+        }
+
+        /**
+         * Default: no regex filter. The whole relative path has to match (see Matcher.matches). Can be combined with a
+         * glob, in which case both have to match.
+         *
+         * @param regex A regular expression matched against the path relative to the listed directory
+         * @return The builder
+         */
+        public Builder withRegex(String regex) {
+            this.regex = regex == null ? null : Pattern.compile(regex);
+            return this;
+        }
+
+        /**
+         * Default: false (only the immediate entries are listed)
+         *
+         * @param recursive True to walk into subdirectories
+         * @return The builder
+         */
+        public Builder withRecursive(boolean recursive) {
+            this.recursive = recursive;
+            return this;
+        }
+
+        /**
+         * Only used for recursive listings. Default: no limit
+         *
+         * @param maxDepth How deep to walk, 1 being the immediate entries of the directory
+         * @return The builder
+         */
+        public Builder withMaxDepth(int maxDepth) {
+            if (maxDepth < 1) {
+                throw new IllegalArgumentException("Max depth must be at least 1");
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Default: EntryType.ALL
+         *
+         * @param type Which kind of entries are listed
+         * @return The builder
+         */
+        public Builder withType(EntryType type) {
+            this.type = type;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param followLinks True to report symbolic links as what they point to (and walk into linked directories)
+         * @return The builder
+         */
+        public Builder withFollowLinks(boolean followLinks) {
+            this.followLinks = followLinks;
+            return this;
+        }
+
+        public DirectoryListing build() {
+            return new DirectoryListing(this);
+        }
+    }
+
+}
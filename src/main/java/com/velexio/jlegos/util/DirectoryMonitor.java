@@ -0,0 +1,539 @@
+package com.velexio.jlegos.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * Watches a directory with a WatchService and turns what the OS reports into created, modified and deleted events, so
+ * new files can be picked up without listing the directory over and over.
+ *
+ * The monitor keeps a snapshot of the first level entries (name, size and modification time). Signals from the
+ * WatchService only say which names to look at: once the directory has been quiet for the debounce window (or the
+ * batch window has passed, for a directory that never goes quiet) each of those names is stat'ed once and compared to
+ * the snapshot. A burst of writes to one file becomes a single event, and a file that is created and removed within the
+ * window produces nothing. When the OS drops signals (overflow) the whole directory is rescanned and diffed instead.
+ *
+ * Events go onto a bounded queue. When the consumer falls behind the monitor waits for room rather than dropping
+ * events; if the OS overflows in the meantime the rescan still catches every change. Subdirectories are reported as
+ * entries but not watched themselves.
+ *
+ * Lag is measured from the first signal for a change to the moment its event is queued, so it includes the debounce.
+ *
+ * Usage Example:
+ *
+ *     try (DirectoryMonitor monitor = new DirectoryMonitor.Builder(Paths.get("/data/incoming"))
+ *             .withDebounce(200)
+ *             .build()) {
+ *         while (running) {
+ *             for (DirectoryMonitor.Event event : monitor.pollBatch(1, TimeUnit.SECONDS)) {
+ *                 if (event.getKind() == DirectoryMonitor.EventKind.CREATED) {
+ *                     process(event.getPath());
+ *                 }
+ *             }
+ *         }
+ *     }
+ * </pre>
+ */
+public class DirectoryMonitor implements Closeable {
+
+    private static final long IDLE_POLL_MILLIS = 250;
+
+    public enum EventKind {
+        CREATED, MODIFIED, DELETED
+    }
+
+    private final Path directory;
+    private final long debounceNanos;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final WatchService watchService;
+    private final BlockingQueue<Event> events;
+    private final Map<String, EntryState> snapshot = new ConcurrentHashMap<>();
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final Thread thread;
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong rescanCount = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong lagSampleCount = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile long lastLagNanos;
+    private volatile boolean rescanRequested;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    private long firstSignalNanos;
+    private long lastSignalNanos;
+
+    private DirectoryMonitor(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(builder.debounceMillis);
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(builder.batchWindowMillis, builder.debounceMillis));
+        this.maxBatchSize = builder.maxBatchSize;
+        this.events = new ArrayBlockingQueue<>(builder.queueCapacity);
+        this.watchService = directory.getFileSystem().newWatchService();
+        try {
+            // register before the first scan, anything that changes in between is signaled and diffed against it
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            snapshot.putAll(scan());
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "jlegos-directory-monitor");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Waits for the next event
+     *
+     * @param timeout How long to wait
+     * @param unit    The unit of the timeout
+     * @return The event, or null if none arrived in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return events.poll(timeout, unit);
+    }
+
+    /**
+     * Waits for the next event and returns it together with every event already queued behind it (up to the max batch
+     * size)
+     *
+     * @param timeout How long to wait for the first event
+     * @param unit    The unit of the timeout
+     * @return The events, empty if none arrived in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public List<Event> pollBatch(long timeout, TimeUnit unit) throws InterruptedException {
+        Event first = events.poll(timeout, unit);
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        List<Event> batch = new ArrayList<>();
+        batch.add(first);
+        events.drainTo(batch, maxBatchSize - 1);
+        return batch;
+    }
+
+    /**
+     * Asks the monitor to rescan and diff the whole directory, the same as it does after an overflow
+     */
+    public void requestRescan() {
+        rescanRequested = true;
+    }
+
+    /**
+     * @return A copy of the current snapshot, keyed by entry name. It already includes changes whose events are still being queued.
+     */
+    public Map<String, EntryState> getSnapshot() {
+        return new HashMap<>(snapshot);
+    }
+
+    /**
+     * @return Number of entries in the snapshot that are not directories
+     */
+    public int getFileCount() {
+        int count = 0;
+        for (EntryState state : snapshot.values()) {
+            if (!state.isDirectory()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops watching and ends the monitor thread. Events already queued can still be polled.
+     *
+     * @throws IOException If the WatchService cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public boolean isRunning() {
+        return running && thread.isAlive();
+    }
+
+    /**
+     * @return The error that stopped the monitor (i.e. the directory was removed), or null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    public int getQueuedEventCount() {
+        return events.size();
+    }
+
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    /**
+     * @return Number of times the OS reported lost signals
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * @return Number of full rescans, after overflows or on request
+     */
+    public long getRescanCount() {
+        return rescanCount.get();
+    }
+
+    public long getLastLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastLagNanos);
+    }
+
+    public long getMaxLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get());
+    }
+
+    public double getAverageLagMillis() {
+        // events counted but not queued yet have no lag, so the average has its own count
+        long count = lagSampleCount.get();
+        return count == 0 ? 0 : totalLagNanos.get() / 1_000_000.0 / count;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                boolean waiting = !pending.isEmpty() || rescanRequested;
+                WatchKey key = watchService.poll(waiting ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(debounceNanos)) : IDLE_POLL_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                long now = System.nanoTime();
+                if (key != null) {
+                    collect(key, now);
+                    if (!key.reset()) {
+                        // the directory itself is gone
+                        publish(diff(new HashSet<>(snapshot.keySet())), now);
+                        throw new NoSuchFileException(directory.toString(), null, "Watched directory is no longer accessible");
+                    }
+                }
+                if (rescanRequested) {
+                    rescanRequested = false;
+                    pending.clear();
+                    rescanCount.incrementAndGet();
+                    publish(diffRescan(), firstSignalNanos == 0 ? now : firstSignalNanos);
+                    firstSignalNanos = 0;
+                } else if (!pending.isEmpty()
+                        && (now - lastSignalNanos >= debounceNanos || now - firstSignalNanos >= batchWindowNanos)) {
+                    Set<String> names = new LinkedHashSet<>(pending);
+                    pending.clear();
+                    long signaled = firstSignalNanos;
+                    firstSignalNanos = 0;
+                    publish(diff(names), signaled);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            running = false;
+        }
+    }
+
+    private void collect(WatchKey key, long now) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflowCount.incrementAndGet();
+                rescanRequested = true;
+            } else {
+                pending.add(event.context().toString());
+            }
+        }
+        if (firstSignalNanos == 0) {
+            firstSignalNanos = now;
+        }
+        lastSignalNanos = now;
+    }
+
+    private List<Event> diff(Set<String> names) throws IOException {
+        List<Event> changes = new ArrayList<>();
+        for (String name : names) {
+            addChange(changes, name, stat(directory.resolve(name)));
+        }
+        return changes;
+    }
+
+    private List<Event> diffRescan() throws IOException {
+        Map<String, EntryState> current = scan();
+        List<Event> changes = new ArrayList<>();
+        for (String name : union(snapshot.keySet(), current.keySet())) {
+            addChange(changes, name, current.get(name));
+        }
+        return changes;
+    }
+
+    private void addChange(List<Event> changes, String name, EntryState current) {
+        Path path = directory.resolve(name);
+        EntryState previous = snapshot.get(name);
+        if (current == null) {
+            if (previous != null) {
+                snapshot.remove(name);
+                changes.add(new Event(EventKind.DELETED, path, previous));
+            }
+        } else if (previous == null) {
+            snapshot.put(name, current);
+            changes.add(new Event(EventKind.CREATED, path, current));
+        } else if (!previous.equals(current)) {
+            snapshot.put(name, current);
+            changes.add(new Event(EventKind.MODIFIED, path, current));
+        }
+    }
+
+    private void publish(List<Event> changes, long signaledNanos) throws InterruptedException {
+        for (Event change : changes) {
+            // counted before it is queued, a consumer that sees the event also sees it in the count
+            eventCount.incrementAndGet();
+            while (!events.offer(change, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    eventCount.decrementAndGet();
+                    return;
+                }
+            }
+            long lag = System.nanoTime() - signaledNanos;
+            lastLagNanos = lag;
+            totalLagNanos.addAndGet(lag);
+            lagSampleCount.incrementAndGet();
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+        }
+    }
+
+    private Map<String, EntryState> scan() throws IOException {
+        Map<String, EntryState> entries = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                EntryState state = stat(entry);
+                if (state != null) {
+                    entries.put(entry.getFileName().toString(), state);
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        return entries;
+    }
+
+    private static EntryState stat(Path path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return new EntryState(attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.isDirectory());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> all = new HashSet<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    /**
+     * The state of one entry as it was last seen
+     */
+    public static class EntryState {
+        private final long size;
+        private final long lastModified;
+        private final boolean directory;
+
+        EntryState(long size, long lastModified, boolean directory) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.directory = directory;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EntryState)) {
+                return false;
+            }
+            EntryState other = (EntryState) o;
+            return size == other.size && lastModified == other.lastModified && directory == other.directory;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(lastModified) + (directory ? 1 : 0);
+        }
+    }
+
+    /**
+     * A change to one entry. For DELETED the state is the last one seen before the entry went away.
+     */
+    public static class Event {
+        private final EventKind kind;
+        private final Path path;
+        private final EntryState state;
+        private final long queuedAtMillis;
+
+        Event(EventKind kind, Path path, EntryState state) {
+            this.kind = kind;
+            this.path = path;
+            this.state = state;
+            this.queuedAtMillis = System.currentTimeMillis();
+        }
+
+        public EventKind getKind() {
+            return kind;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public EntryState getState() {
+            return state;
+        }
+
+        public long getQueuedAtMillis() {
+            return queuedAtMillis;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + path;
+        }
+    }
+
+    public static class Builder {
+        private final Path directory;
+        private int queueCapacity;
+        private long debounceMillis;
+        private long batchWindowMillis;
+        private int maxBatchSize;
+
+        public Builder(Path directory) {
+            this.directory = directory;
+            this.queueCapacity = 1024;
+            this.debounceMillis = 100;
+            this.batchWindowMillis = 1000;
+            this.maxBatchSize = 256;
+        }
+
+        /**
+         * Default: 1024
+         *
+         * @param queueCapacity The most events queued for the consumer, the monitor waits when the queue is full
+         * @return The builder
+         */
+        public Builder withQueueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("Queue capacity must be at least 1");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Default: 100
+         *
+         * @param debounceMillis How long the directory has to be quiet before the pending changes are turned into events
+         * @return The builder
+         */
+        public Builder withDebounce(long debounceMillis) {
+            if (debounceMillis < 0) {
+                throw new IllegalArgumentException("Debounce cannot be negative");
+            }
+            this.debounceMillis = debounceMillis;
+            return this;
+        }
+
+        /**
+         * Default: 1000. Never shorter than the debounce.
+         *
+         * @param batchWindowMillis The longest a change waits for the directory to go quiet before it is reported anyway
+         * @return The builder
+         */
+        public Builder withBatchWindow(long batchWindowMillis) {
+            if (batchWindowMillis < 0) {
+                throw new IllegalArgumentException("Batch window cannot be negative");
+            }
+            this.batchWindowMillis = batchWindowMillis;
+            return this;
+        }
+
+        /**
+         * Default: 256
+         *
+         * @param maxBatchSize The most events returned by one pollBatch call
+         * @return The builder
+         */
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("Max batch size must be at least 1");
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @return The monitor, already watching the directory
+         * @throws IOException If the directory cannot be watched or scanned
+         */
+        public DirectoryMonitor build() throws IOException {
+            return new DirectoryMonitor(this);
+        }
+    }
+
+}
@@ -0,0 +1,383 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * Makes a target directory tree match a source tree, copying only what changed (rsync style). A file is considered
+ * unchanged when the target has a regular file with the same size and modification time, optionally confirmed by
+ * comparing checksums. Everything else is copied with the CopyEngine, which keeps the modification time so the next
+ * run can skip the file again.
+ *
+ * Each file is copied to a temporary file next to the target and renamed over it, so a reader never sees a half copied
+ * file and an interrupted sync leaves the old version in place. Symbolic links are recreated as links, never followed.
+ * With deleteExtraneous, entries in the target that are not in the source are removed once the copies are done.
+ *
+ * The source tree is walked on the calling thread, which decides what to do with each file; the copies and checksum
+ * comparisons run in parallel.
+ *
+ * Usage Example:
+ *
+ *     DirectorySync sync = new DirectorySync.Builder()
+ *             .withDeleteExtraneous(true)
+ *             .withChecksumVerify(false)
+ *             .withParallelism(8)
+ *             .build();
+ *     SyncSummary summary = sync.sync(Paths.get("/data/projects"), Paths.get("/mnt/mirror/projects"));
+ *     log.info(summary.toString());
+ * </pre>
+ */
+public class DirectorySync {
+
+    private static final String SYNC_FAILURE_HEADER = "Unable to sync the following files/subdirectories.  Check permissions and try again:";
+    private static final String TEMP_SUFFIX = ".jlegos-sync";
+    private static final DirectorySync DEFAULT_SYNC = new Builder().build();
+
+    private final int parallelism;
+    private final boolean checksumVerify;
+    private final String digestAlgorithm;
+    private final boolean deleteExtraneous;
+    private final long modifyWindowMillis;
+    private final CopyEngine copyEngine;
+
+    private DirectorySync(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.checksumVerify = builder.checksumVerify;
+        this.digestAlgorithm = builder.digestAlgorithm;
+        this.deleteExtraneous = builder.deleteExtraneous;
+        this.modifyWindowMillis = builder.modifyWindowMillis;
+        this.copyEngine = new CopyEngine.Builder()
+                .withReplaceExisting(true)
+                .withCopyAttributes(true)
+                .withFsyncPolicy(builder.fsyncPolicy)
+                .build();
+    }
+
+    /**
+     * @return The shared sync with default settings (no checksums, nothing deleted)
+     */
+    public static DirectorySync getDefault() {
+        return DEFAULT_SYNC;
+    }
+
+    /**
+     * Syncs the trees using a pool sized to the configured parallelism
+     *
+     * @param source The directory to copy from
+     * @param target The directory made to match the source, created if it does not exist
+     * @return What was copied, skipped and deleted
+     * @throws IOException If the source is not a directory or any entry fails to sync. The message lists every entry
+     *                     that failed.
+     */
+    public SyncSummary sync(Path source, Path target) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            return sync(source, target, executor, parallelism * 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Syncs the trees, running the copies and checksum comparisons on the provided executor
+     *
+     * @param source      The directory to copy from
+     * @param target      The directory made to match the source, created if it does not exist
+     * @param executor    The executor the copies run on
+     * @param maxInFlight The maximum number of copies queued or running at one time
+     * @return What was copied, skipped and deleted
+     * @throws IOException If the source is not a directory or any entry fails to sync. The message lists every entry
+     *                     that failed.
+     */
+    public SyncSummary sync(Path source, Path target, Executor executor, int maxInFlight) throws IOException {
+        long started = System.nanoTime();
+        if (!Files.isDirectory(source)) {
+            throw new IOException("Directory [ " + source + "] is not a directory.");
+        }
+        Counters counters = new Counters();
+        BoundedTaskRunner runner = new BoundedTaskRunner(executor, maxInFlight);
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    Path dest = target.resolve(source.relativize(dir).toString());
+                    try {
+                        BasicFileAttributes destAttrs = readAttributes(dest);
+                        if (destAttrs != null && !destAttrs.isDirectory()) {
+                            Files.delete(dest);
+                            counters.filesDeleted.incrementAndGet();
+                            destAttrs = null;
+                        }
+                        if (destAttrs == null) {
+                            Files.createDirectories(dest);
+                            counters.directoriesCreated.incrementAndGet();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    } catch (IOException ioe) {
+                        runner.recordFailure(dir.toString(), ioe);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Path dest = target.resolve(source.relativize(file).toString());
+                    runner.submit(file.toString(), () -> syncFile(file, attrs, dest, counters));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    runner.recordFailure(file.toString(), exc);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            runner.awaitCompletion();
+        }
+        // only delete once everything copied, a failed sync should not also have thrown away the old copy
+        if (deleteExtraneous && !runner.hasFailures()) {
+            deleteExtraneous(source, target, runner, counters);
+        }
+        if (runner.hasFailures()) {
+            StringBuilder message = new StringBuilder(SYNC_FAILURE_HEADER);
+            for (String failure : runner.getFailures()) {
+                message.append(System.lineSeparator()).append(failure);
+            }
+            throw new IOException(message.toString(), runner.getFirstFailure());
+        }
+        return new SyncSummary(counters.filesCopied.get(), counters.bytesCopied.get(), counters.filesSkipped.get(),
+                counters.filesDeleted.get(), counters.directoriesCreated.get(), System.nanoTime() - started);
+    }
+
+    /*
+    Runs on the executor. The source attributes come from the walk, the target is stat'ed once.
+     */
+    private void syncFile(Path file, BasicFileAttributes attrs, Path dest, Counters counters) throws IOException {
+        BasicFileAttributes destAttrs = readAttributes(dest);
+        if (destAttrs != null && destAttrs.isDirectory()) {
+            FileUtils.deleteDirectory(dest.toString());
+            counters.filesDeleted.incrementAndGet();
+            destAttrs = null;
+        }
+        if (attrs.isSymbolicLink()) {
+            Path linkTarget = Files.readSymbolicLink(file);
+            if (destAttrs != null && destAttrs.isSymbolicLink() && linkTarget.equals(Files.readSymbolicLink(dest))) {
+                counters.filesSkipped.incrementAndGet();
+                return;
+            }
+            Files.deleteIfExists(dest);
+            Files.createSymbolicLink(dest, linkTarget);
+            counters.filesCopied.incrementAndGet();
+            return;
+        }
+        if (!attrs.isRegularFile()) {
+            // sockets, devices and the like are not copied
+            return;
+        }
+        if (destAttrs != null && destAttrs.isRegularFile() && unchanged(file, attrs, dest, destAttrs)) {
+            counters.filesSkipped.incrementAndGet();
+            return;
+        }
+        Path temp = dest.resolveSibling("." + dest.getFileName() + TEMP_SUFFIX);
+        try {
+            long copied = copyEngine.copy(file, temp, 0);
+            if (destAttrs != null && !destAttrs.isRegularFile()) {
+                Files.delete(dest);
+            }
+            try {
+                Files.move(temp, dest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING);
+            }
+            counters.filesCopied.incrementAndGet();
+            counters.bytesCopied.addAndGet(copied);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private boolean unchanged(Path file, BasicFileAttributes attrs, Path dest, BasicFileAttributes destAttrs) throws IOException {
+        if (attrs.size() != destAttrs.size()
+                || Math.abs(attrs.lastModifiedTime().toMillis() - destAttrs.lastModifiedTime().toMillis()) > modifyWindowMillis) {
+            return false;
+        }
+        if (!checksumVerify) {
+            return true;
+        }
+        try {
+            ChecksumEngine engine = ChecksumEngine.getDefault();
+            return MessageDigest.isEqual(engine.digest(file, digestAlgorithm), engine.digest(dest, digestAlgorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Digest algorithm [ " + digestAlgorithm + "] is not available", e);
+        }
+    }
+
+    private static void deleteExtraneous(Path source, Path target, BoundedTaskRunner runner, Counters counters) throws IOException {
+        Files.walkFileTree(target, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(target) || existsInSource(dir)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    FileUtils.deleteDirectory(dir.toString());
+                    counters.filesDeleted.incrementAndGet();
+                } catch (IOException ioe) {
+                    runner.recordFailure(dir.toString(), ioe);
+                }
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!existsInSource(file)) {
+                    try {
+                        Files.deleteIfExists(file);
+                        counters.filesDeleted.incrementAndGet();
+                    } catch (IOException ioe) {
+                        runner.recordFailure(file.toString(), ioe);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                runner.recordFailure(file.toString(), exc);
+                return FileVisitResult.CONTINUE;
+            }
+
+            private boolean existsInSource(Path entry) {
+                return Files.exists(source.resolve(target.relativize(entry).toString()), LinkOption.NOFOLLOW_LINKS);
+            }
+        });
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static class Counters {
+        private final AtomicLong filesCopied = new AtomicLong();
+        private final AtomicLong bytesCopied = new AtomicLong();
+        private final AtomicLong filesSkipped = new AtomicLong();
+        private final AtomicLong filesDeleted = new AtomicLong();
+        private final AtomicLong directoriesCreated = new AtomicLong();
+    }
+
+    public static class Builder {
+        private int parallelism;
+        private boolean checksumVerify;
+        private String digestAlgorithm;
+        private boolean deleteExtraneous;
+        private long modifyWindowMillis;
+        private FsyncPolicy fsyncPolicy;
+
+        public Builder() {
+            this.parallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+            this.checksumVerify = false;
+            this.digestAlgorithm = ChecksumEngine.DEFAULT_ALGORITHM;
+            this.deleteExtraneous = false;
+            this.modifyWindowMillis = 0;
+            this.fsyncPolicy = FsyncPolicy.NONE;
+        }
+
+        /**
+         * Default: the number of cores, minimum 4
+         *
+         * @param parallelism Size of the pool the copies run on (when the sync creates the pool)
+         * @return The builder
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param checksumVerify True to also compare checksums before skipping a file whose size and modification time
+         *                       match. Both files are read in full, so this costs as much IO as copying.
+         * @return The builder
+         */
+        public Builder withChecksumVerify(boolean checksumVerify) {
+            this.checksumVerify = checksumVerify;
+            return this;
+        }
+
+        /**
+         * Default: ChecksumEngine.DEFAULT_ALGORITHM (the same as FileUtils.checksum)
+         *
+         * @param digestAlgorithm The digest used when checksums are verified
+         * @return The builder
+         */
+        public Builder withDigestAlgorithm(String digestAlgorithm) {
+            this.digestAlgorithm = digestAlgorithm;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param deleteExtraneous True to remove files and directories in the target that are not in the source
+         * @return The builder
+         */
+        public Builder withDeleteExtraneous(boolean deleteExtraneous) {
+            this.deleteExtraneous = deleteExtraneous;
+            return this;
+        }
+
+        /**
+         * Default: 0. File systems with coarse timestamps (FAT keeps 2 seconds) need a window to ever match.
+         *
+         * @param modifyWindowMillis How far apart two modification times can be and still count as the same
+         * @return The builder
+         */
+        public Builder withModifyWindow(long modifyWindowMillis) {
+            if (modifyWindowMillis < 0) {
+                throw new IllegalArgumentException("Modify window cannot be negative");
+            }
+            this.modifyWindowMillis = modifyWindowMillis;
+            return this;
+        }
+
+        /**
+         * Default: FsyncPolicy.NONE
+         *
+         * @param fsyncPolicy When copied files are forced to disk
+         * @return The builder
+         */
+        public Builder withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        public DirectorySync build() {
+            return new DirectorySync(this);
+        }
+    }
+
+}
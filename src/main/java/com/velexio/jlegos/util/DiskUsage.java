@@ -0,0 +1,335 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <pre>
+ * Adds up the size of a directory tree, du style, listing the directories in parallel. Each directory is one task that
+ * walks its immediate entries with Files.walkFileTree, so every entry is stat'ed once by the listing of its directory
+ * and the attributes from that walk are all that is used. The only other stats are the one walkFileTree makes of the
+ * directory it lists and, with the cache on, the modification time check before it. The result has the total, a
+ * breakdown per directory and the largest files.
+ *
+ * Sizes are the logical size of regular files (BasicFileAttributes.size), not the blocks allocated on disk. Symbolic
+ * links are not followed or counted, and a file with several hard links is counted once per link.
+ *
+ * With the cache turned on, the engine remembers what it found in each directory keyed by the directory's modification
+ * time. A later run only stats the entries of directories whose modification time moved, which is what happens when
+ * entries are added, removed or renamed. Growing or shrinking an existing file does not touch its directory, so a cached
+ * run will not see it. Use the cache for quota checks that can live with that, not for exact accounting. Each scan drops
+ * the cached directories under its root that it did not find again, so deleted and renamed directories do not pile up.
+ *
+ * Usage Example:
+ *
+ *     DiskUsage diskUsage = new DiskUsage.Builder().withParallelism(8).withTopFiles(20).withCache(true).build();
+ *     DiskUsageReport report = diskUsage.scan(Paths.get("/srv/home/alice"));
+ *     if (report.getTotalBytes() &gt; quota) {
+ *         report.getLargestFiles().forEach(System.out::println);
+ *     }
+ * </pre>
+ */
+public class DiskUsage {
+
+    private static final String SCAN_FAILURE_HEADER = "Unable to read the following directories.  Check permissions and try again:";
+    private static final long RACY_WINDOW_MILLIS = 2000;
+    private static final DiskUsage DEFAULT_DISK_USAGE = new Builder().build();
+
+    private final int parallelism;
+    private final int topFiles;
+    private final Map<Path, DirectoryScan> cache;
+
+    private DiskUsage(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.topFiles = builder.topFiles;
+        this.cache = builder.cache ? new ConcurrentHashMap<>() : null;
+    }
+
+    /**
+     * @return The shared engine with default settings and no cache
+     */
+    public static DiskUsage getDefault() {
+        return DEFAULT_DISK_USAGE;
+    }
+
+    /**
+     * Scans the tree using a pool sized to the configured parallelism
+     *
+     * @param root The directory to add up
+     * @return The report
+     * @throws IOException If the root is not a directory or any directory in the tree cannot be read. The message
+     *                     lists every directory that failed.
+     */
+    public DiskUsageReport scan(Path root) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            return scan(root, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Scans the tree, listing the directories on the provided executor
+     *
+     * @param root     The directory to add up
+     * @param executor The executor the directory listings run on
+     * @return The report
+     * @throws IOException If the root is not a directory or any directory in the tree cannot be read. The message
+     *                     lists every directory that failed.
+     */
+    public DiskUsageReport scan(Path root, Executor executor) throws IOException {
+        long started = System.nanoTime();
+        if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            prune(root, Collections.emptyMap());
+            throw new IOException("Directory [ " + root + "] is not a directory.");
+        }
+        // the calling thread hands out the subdirectories as they are found, so tasks never wait on other tasks
+        CompletionService<DirectoryScan> completion = new ExecutorCompletionService<>(executor);
+        Map<Path, DirectoryScan> scans = new HashMap<>();
+        List<String> failures = new ArrayList<>();
+        Exception firstFailure = null;
+        PriorityQueue<DiskUsageReport.FileSize> largest = new PriorityQueue<>(Comparator.comparingLong(DiskUsageReport.FileSize::getSize));
+        completion.submit(() -> scanDirectory(root));
+        int pending = 1;
+        while (pending > 0) {
+            DirectoryScan scan;
+            try {
+                scan = completion.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while scanning [ " + root + "]");
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to scan [ " + root + "]", e.getCause());
+            }
+            pending--;
+            if (scan.failure != null) {
+                failures.add(scan.directory.toString());
+                if (firstFailure == null) {
+                    firstFailure = scan.failure;
+                }
+                continue;
+            }
+            scans.put(scan.directory, scan);
+            for (DiskUsageReport.FileSize file : scan.largestFiles) {
+                offer(largest, file);
+            }
+            for (Path subdirectory : scan.subdirectories) {
+                completion.submit(() -> scanDirectory(subdirectory));
+                pending++;
+            }
+        }
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder(SCAN_FAILURE_HEADER);
+            for (String failure : failures) {
+                message.append(System.lineSeparator()).append(failure);
+            }
+            throw new IOException(message.toString(), firstFailure);
+        }
+        prune(root, scans);
+        return new DiskUsageReport(root, totals(root, scans), sortLargest(largest), System.nanoTime() - started);
+    }
+
+    /**
+     * Drops everything the cache remembers
+     */
+    public void clearCache() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /*
+    Forgets the cached directories under the root that the scan did not visit, they were deleted or renamed
+     */
+    private void prune(Path root, Map<Path, DirectoryScan> visited) {
+        if (cache != null) {
+            cache.keySet().removeIf(directory -> directory.startsWith(root) && !visited.containsKey(directory));
+        }
+    }
+
+    /*
+    The modification time is only needed as the cache key, without the cache the directory is not stat'ed for it
+     */
+    private DirectoryScan scanDirectory(Path directory) {
+        try {
+            long modified = 0;
+            if (cache != null) {
+                modified = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS).toMillis();
+                DirectoryScan cached = cache.get(directory);
+                if (cached != null && cached.modified == modified && !cached.racy) {
+                    return cached;
+                }
+            }
+            DirectoryScan scan = new DirectoryScan(directory, modified, System.currentTimeMillis() - modified < RACY_WINDOW_MILLIS);
+            PriorityQueue<DiskUsageReport.FileSize> largest = new PriorityQueue<>(Comparator.comparingLong(DiskUsageReport.FileSize::getSize));
+            Files.walkFileTree(directory, Collections.emptySet(), 1, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path entry, BasicFileAttributes attributes) {
+                    // with a depth of 1 every entry, directories included, comes through here with its attributes
+                    if (attributes.isDirectory()) {
+                        scan.subdirectories.add(entry);
+                    } else if (attributes.isRegularFile()) {
+                        scan.bytes += attributes.size();
+                        scan.files++;
+                        offer(largest, new DiskUsageReport.FileSize(entry, attributes.size()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path entry, IOException e) throws IOException {
+                    if (entry.equals(directory)) {
+                        throw e;
+                    }
+                    // gone between the listing and the stat
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            scan.largestFiles.addAll(largest);
+            if (cache != null) {
+                cache.put(directory, scan);
+            }
+            return scan;
+        } catch (IOException e) {
+            DirectoryScan failed = new DirectoryScan(directory, 0, true);
+            failed.failure = e;
+            return failed;
+        }
+    }
+
+    private void offer(PriorityQueue<DiskUsageReport.FileSize> largest, DiskUsageReport.FileSize file) {
+        if (topFiles == 0) {
+            return;
+        }
+        if (largest.size() < topFiles) {
+            largest.add(file);
+        } else if (largest.peek().getSize() < file.getSize()) {
+            largest.poll();
+            largest.add(file);
+        }
+    }
+
+    private static List<DiskUsageReport.FileSize> sortLargest(PriorityQueue<DiskUsageReport.FileSize> largest) {
+        List<DiskUsageReport.FileSize> sorted = new ArrayList<>(largest);
+        sorted.sort(Comparator.comparingLong(DiskUsageReport.FileSize::getSize).reversed());
+        return sorted;
+    }
+
+    /*
+    Rolls the per directory numbers up into subtree totals, deepest directories first
+     */
+    private static Map<Path, DiskUsageReport.Totals> totals(Path root, Map<Path, DirectoryScan> scans) {
+        List<DirectoryScan> deepestFirst = new ArrayList<>(scans.values());
+        deepestFirst.sort(Comparator.comparingInt((DirectoryScan scan) -> scan.directory.getNameCount()).reversed());
+        Map<Path, DiskUsageReport.Totals> totals = new HashMap<>();
+        for (DirectoryScan scan : deepestFirst) {
+            long bytes = scan.bytes;
+            long files = scan.files;
+            long directories = 0;
+            for (Path subdirectory : scan.subdirectories) {
+                DiskUsageReport.Totals sub = totals.get(subdirectory);
+                if (sub != null) {
+                    bytes += sub.getBytes();
+                    files += sub.getFiles();
+                    directories += sub.getDirectories() + 1;
+                }
+            }
+            totals.put(scan.directory, new DiskUsageReport.Totals(bytes, files, directories));
+        }
+        return totals;
+    }
+
+    private static class DirectoryScan {
+        private final Path directory;
+        private final long modified;
+        private final boolean racy;
+        private final List<Path> subdirectories = new ArrayList<>();
+        private final List<DiskUsageReport.FileSize> largestFiles = new ArrayList<>();
+        private long bytes;
+        private long files;
+        private IOException failure;
+
+        private DirectoryScan(Path directory, long modified, boolean racy) {
+            this.directory = directory;
+            this.modified = modified;
+            this.racy = racy;
+        }
+    }
+
+    public static class Builder {
+        private int parallelism;
+        private int topFiles;
+        private boolean cache;
+
+        public Builder() {
+            this.parallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+            this.topFiles = 10;
+            this.cache = false;
+        }
+
+        /**
+         * Default: the number of cores, minimum 4
+         *
+         * @param parallelism Size of the pool the directories are listed on (when the engine creates the pool)
+         * @return The builder
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Default: 10
+         *
+         * @param topFiles How many of the largest files the report lists, 0 for none
+         * @return The builder
+         */
+        public Builder withTopFiles(int topFiles) {
+            if (topFiles < 0) {
+                throw new IllegalArgumentException("Top files cannot be negative");
+            }
+            this.topFiles = topFiles;
+            return this;
+        }
+
+        /**
+         * Default: false
+         *
+         * @param cache True to remember each directory's entries keyed by its modification time between scans
+         * @return The builder
+         */
+        public Builder withCache(boolean cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public DiskUsage build() {
+            return new DiskUsage(this);
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.velexio.jlegos.util;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * The result of a DiskUsage scan: totals for the whole tree and for every directory in it, and the largest files found.
+ *
+ * Usage Example:
+ *
+ *     DiskUsageReport report = DiskUsage.getDefault().scan(Paths.get("/srv/data"));
+ *     for (Map.Entry&lt;Path, Long&gt; child : report.getSubdirectoryBytes().entrySet()) {
+ *         System.out.println(child.getValue() + "\t" + child.getKey());
+ *     }
+ * </pre>
+ */
+public class DiskUsageReport {
+
+    private final Path root;
+    private final Map<Path, Totals> totals;
+    private final List<FileSize> largestFiles;
+    private final long elapsedNanos;
+
+    DiskUsageReport(Path root, Map<Path, Totals> totals, List<FileSize> largestFiles, long elapsedNanos) {
+        this.root = root;
+        this.totals = totals;
+        this.largestFiles = Collections.unmodifiableList(largestFiles);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Size of every regular file in the tree, in bytes
+     */
+    public long getTotalBytes() {
+        return totals.get(root).getBytes();
+    }
+
+    /**
+     * @return Number of regular files in the tree
+     */
+    public long getFileCount() {
+        return totals.get(root).getFiles();
+    }
+
+    /**
+     * @return Number of directories in the tree, not counting the root
+     */
+    public long getDirectoryCount() {
+        return totals.get(root).getDirectories();
+    }
+
+    /**
+     * @param directory The root or any directory below it
+     * @return The totals of that directory's subtree, or null if it was not part of the scan
+     */
+    public Totals getTotals(Path directory) {
+        return totals.get(directory);
+    }
+
+    /**
+     * @return The subtree size of each immediate subdirectory of the root, largest first
+     */
+    public Map<Path, Long> getSubdirectoryBytes() {
+        List<Map.Entry<Path, Totals>> children = new ArrayList<>();
+        for (Map.Entry<Path, Totals> entry : totals.entrySet()) {
+            if (root.equals(entry.getKey().getParent())) {
+                children.add(entry);
+            }
+        }
+        children.sort(Comparator.comparingLong((Map.Entry<Path, Totals> entry) -> entry.getValue().getBytes()).reversed());
+        Map<Path, Long> breakdown = new LinkedHashMap<>();
+        for (Map.Entry<Path, Totals> child : children) {
+            breakdown.put(child.getKey(), child.getValue().getBytes());
+        }
+        return breakdown;
+    }
+
+    /**
+     * @return The largest files in the tree, largest first
+     */
+    public List<FileSize> getLargestFiles() {
+        return largestFiles;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return root + ": " + getTotalBytes() + " bytes in " + getFileCount() + " files and " + getDirectoryCount()
+                + " directories (" + getElapsedMillis() + " ms)";
+    }
+
+    /**
+     * The totals of one directory's subtree
+     */
+    public static class Totals {
+        private final long bytes;
+        private final long files;
+        private final long directories;
+
+        Totals(long bytes, long files, long directories) {
+            this.bytes = bytes;
+            this.files = files;
+            this.directories = directories;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getDirectories() {
+            return directories;
+        }
+    }
+
+    /**
+     * A file and its size
+     */
+    public static class FileSize {
+        private final Path path;
+        private final long size;
+
+        FileSize(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return size + "\t" + path;
+        }
+    }
+
+}
@@ -7,7 +7,12 @@ import java.nio.file.StandardCopyOption;
 public enum FileCopyOption {
     ATOMIC_MOVE,
     INCLUDE_ATTRIBUTES,
-    REPLACE_EXISTING;
+    REPLACE_EXISTING,
+    /**
+     * Copies the file contents with FileChannel.transferTo through the {@link CopyEngine} instead of Files.copy. Has no
+     * nio equivalent.
+     */
+    CHANNEL_TRANSFER;
 
     private CopyOption nioEquiv;
 
@@ -17,6 +22,9 @@ public enum FileCopyOption {
         REPLACE_EXISTING.nioEquiv = StandardCopyOption.REPLACE_EXISTING;
     }
 
+    /**
+     * @return The matching java.nio CopyOption, or null if the option is specific to jLegos
+     */
     public CopyOption getNioEquiv() {
         return nioEquiv;
     }
@@ -0,0 +1,109 @@
+package com.velexio.jlegos.util;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * <pre>
+ * A file name pattern that is compiled once and can then be matched any number of times. Three kinds are supported:
+ * a simple substring (what FileUtils.getDirectoryFiles(dir, pattern) has always done), a glob using PathMatcher syntax
+ * and a regular expression. Patterns are matched against the file name only, never the parent path.
+ *
+ * Instances are immutable and safe to share between threads, so keep them around rather than compiling the same
+ * pattern on every query.
+ *
+ * Usage Example:
+ *
+ *     FileMatcher reports = FileMatcher.glob("report-*.{csv,xlsx}");
+ *     FileMatcher dated = FileMatcher.regex("\\d{4}-\\d{2}-\\d{2}\\.log");
+ *     List&lt;Path&gt; matches = index.find(Paths.get("/data/incoming"), reports);
+ * </pre>
+ */
+public class FileMatcher {
+
+    public enum Kind {
+        CONTAINS, GLOB, REGEX
+    }
+
+    private final Kind kind;
+    private final String pattern;
+    private final PathMatcher globMatcher;
+    private final Pattern regex;
+
+    private FileMatcher(Kind kind, String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("Pattern cannot be null");
+        }
+        this.kind = kind;
+        this.pattern = pattern;
+        this.globMatcher = kind == Kind.GLOB ? FileSystems.getDefault().getPathMatcher("glob:" + pattern) : null;
+        this.regex = kind == Kind.REGEX ? Pattern.compile(pattern) : null;
+    }
+
+    /**
+     * @param text Text that has to appear somewhere in the file name, i.e. ".txt" also matches "file.txt.old"
+     * @return The matcher
+     */
+    public static FileMatcher contains(String text) {
+        return new FileMatcher(Kind.CONTAINS, text);
+    }
+
+    /**
+     * @param glob A glob in PathMatcher syntax, i.e. "*.txt" or "data-[0-9]*.{csv,tsv}"
+     * @return The matcher
+     * @throws java.util.regex.PatternSyntaxException If the glob is invalid
+     */
+    public static FileMatcher glob(String glob) {
+        return new FileMatcher(Kind.GLOB, glob);
+    }
+
+    /**
+     * @param regex A regular expression the whole file name has to match (see Matcher.matches)
+     * @return The matcher
+     * @throws java.util.regex.PatternSyntaxException If the expression is invalid
+     */
+    public static FileMatcher regex(String regex) {
+        return new FileMatcher(Kind.REGEX, regex);
+    }
+
+    /**
+     * @param fileName The name of the file, without any parent directories
+     * @return True if the name matches the pattern
+     */
+    public boolean matches(String fileName) {
+        switch (kind) {
+            case GLOB:
+                return globMatcher.matches(FileSystems.getDefault().getPath(fileName));
+            case REGEX:
+                return regex.matcher(fileName).matches();
+            default:
+                return fileName.contains(pattern);
+        }
+    }
+
+    /**
+     * @param path A path, only its last element (the file name) is matched
+     * @return True if the file name matches the pattern
+     */
+    public boolean matches(Path path) {
+        Path fileName = path.getFileName();
+        return fileName != null && matches(fileName.toString());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return kind.name().toLowerCase(Locale.ROOT) + ":" + pattern;
+    }
+
+}
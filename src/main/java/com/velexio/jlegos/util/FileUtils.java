@@ -4,19 +4,26 @@ import com.velexio.jlegos.exceptions.ChecksumGenerationException;
 import com.velexio.jlegos.exceptions.EnsureDirectoryException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * Contains some helpful utility methods for handling file operations.
@@ -26,12 +33,14 @@ public class FileUtils {
     private static final int MIN_COPY_BUFFER = 4;
     private static final int MAX_ZIP_BUFFER = 4194304;
     private static final int MIN_ZIP_BUFFER = 1024;
+    private static final long MAX_POOLED_BYTES = 33554432;
+    private static final int SINGLE_WRITE_BUFFER = 65536;
+    private static final int DEFAULT_IO_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final String REMOVE_FAILURE_HEADER = "Unable to remove the following files/subdirectories.  Check permissions and try again:";
+    private static final String COPY_FAILURE_HEADER = "Unable to copy the following files/subdirectories.  Check permissions and try again:";
 
-    private static int copyBufferSize = 4096;
-    private static int zipBufferSize = 16384;
-
-    private static byte[] copyBuffer = new byte[copyBufferSize];
-    private static byte[] zipBuffer = new byte[zipBufferSize];
+    private static final BufferPool copyBufferPool = new BufferPool(4096, MAX_POOLED_BYTES);
+    private static final BufferPool zipBufferPool = new BufferPool(16384, MAX_POOLED_BYTES);
 
     /**
      * <p>
@@ -42,11 +51,10 @@ public class FileUtils {
      */
     public static void changeCopyBufferSize(int newBufferSize) {
         if (newBufferSize < MAX_COPY_BUFFER) {
-            copyBufferSize = Math.max(newBufferSize, MIN_COPY_BUFFER);
+            copyBufferPool.setBufferSize(Math.max(newBufferSize, MIN_COPY_BUFFER));
         } else {
-            copyBufferSize = MAX_COPY_BUFFER;
+            copyBufferPool.setBufferSize(MAX_COPY_BUFFER);
         }
-        copyBuffer = new byte[copyBufferSize];
     }
 
     /**
@@ -55,11 +63,10 @@ public class FileUtils {
      */
     public static void setZipBufferSize(int newSize) {
         if (newSize < MAX_ZIP_BUFFER) {
-            zipBufferSize = Math.max(newSize, MIN_ZIP_BUFFER);
+            zipBufferPool.setBufferSize(Math.max(newSize, MIN_ZIP_BUFFER));
         } else {
-            zipBufferSize = MAX_ZIP_BUFFER;
+            zipBufferPool.setBufferSize(MAX_ZIP_BUFFER);
         }
-        zipBuffer = new byte[zipBufferSize];
     }
 
     /**
@@ -67,7 +74,26 @@ public class FileUtils {
      * @return int value that indicates the size of the buffer (in bytes)
      */
     public static int getCopyBufferSize() {
-        return copyBufferSize;
+        return copyBufferPool.getBufferSize();
+    }
+
+    /**
+     * Gives access to the pool that carries the copy buffer size set with changeCopyBufferSize. Copy/move operations go
+     * through CopyEngine, which moves the data with FileChannel.transferTo and never borrows from this pool, so its
+     * borrow, miss and bytes held counters stay at zero unless the caller borrows from it.
+     * @return The copy buffer pool
+     */
+    public static BufferPool getCopyBufferPool() {
+        return copyBufferPool;
+    }
+
+    /**
+     * Gives access to the pool of buffers used by zip* and unzip operations, mainly so that the borrow, miss and bytes
+     * held counters can be monitored.
+     * @return The zip buffer pool
+     */
+    public static BufferPool getZipBufferPool() {
+        return zipBufferPool;
     }
 
     public static boolean exists(String filePath) {
@@ -155,7 +181,8 @@ public class FileUtils {
      * @param source A string representing the path of the file to be copied
      * @param dest A string representing the path of the destination file
      * @param options Optional varargs that can be one or more of the {@link com.velexio.jlegos.util.FileCopyOption} enum values. If no options are
-     *                specified, a default of FileCopyOption.COPY_ATTRIBUTES will be applied.
+     *                specified, a default of FileCopyOption.COPY_ATTRIBUTES will be applied. Include FileCopyOption.CHANNEL_TRANSFER to copy
+     *                through the zero-copy {@link com.velexio.jlegos.util.CopyEngine}.
      * @throws IOException Occurs when I/O operation fails
      * @throws FileNotFoundException If the source file is not present or not a file object
      * @see com.velexio.jlegos.util.FileCopyOption
@@ -164,18 +191,13 @@ public class FileUtils {
         if (!isFile(source)) {
             throw new FileNotFoundException("The file [ " + source + "] does not exist.  Copy terminated");
         }
-        List<CopyOption> copyOptions = new ArrayList<>(List.of(StandardCopyOption.COPY_ATTRIBUTES));
-        if (options.length > 0) {
-            copyOptions = new ArrayList<>();
-            for (FileCopyOption option : options) {
-                copyOptions.add(option.getNioEquiv());
-            }
-        }
-        CopyOption[] finalCopyOptions = new CopyOption[copyOptions.size()];
-        finalCopyOptions = copyOptions.toArray(finalCopyOptions);
         Path sourcePath = Paths.get(source);
         Path destPath = Paths.get(dest);
-        Files.copy(sourcePath, destPath, finalCopyOptions);
+        if (Arrays.asList(options).contains(FileCopyOption.CHANNEL_TRANSFER)) {
+            CopyEngine.forOptions(options).copy(sourcePath, destPath);
+        } else {
+            Files.copy(sourcePath, destPath, toNioCopyOptions(options));
+        }
     }
 
     /**
@@ -185,11 +207,127 @@ public class FileUtils {
      *
      * @param currentPath String representing the path of the current file
      * @param newPath     String to represent the new name of the file
+     * @throws IOException If the file could not be renamed, i.e. it does not exist or the destination is not writable
      */
-    public static void rename(String currentPath, String newPath) {
+    public static void rename(String currentPath, String newPath) throws IOException {
         File source = new File(currentPath);
         File dest = new File(newPath);
-        source.renameTo(dest);
+        if (!source.renameTo(dest)) {
+            throw new IOException("Unable to rename [ " + source.getAbsolutePath() + "] to [ " + dest.getAbsolutePath() + "]");
+        }
+    }
+
+    /**
+     * <p>
+     * Replaces the contents of a file so that readers (and a crash) only ever see the old or the new contents, never a
+     * partial write. The content is written to a temp file next to the target, forced to disk, moved over the target
+     * with an atomic rename, and then the directory is forced so the rename itself is durable.
+     * </p>
+     * <p>
+     * An existing target keeps its POSIX permissions. The file is created if it does not exist, with the same default
+     * permissions (umask) any newly created file gets. If the target is a symbolic link the link is followed: the file
+     * it points to is replaced and the link stays in place.
+     * </p>
+     *
+     * @param filePath String representing the path of the file to write
+     * @param content  The complete new contents
+     * @throws IOException If the content cannot be written or the file system cannot rename atomically. The target is
+     *                     left untouched in that case.
+     */
+    public static void writeAtomic(String filePath, byte[] content) throws IOException {
+        writeAtomic(filePath, channel -> {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #writeAtomic(String, byte[])}, with the new contents streamed into the temporary file by the writer
+     * so they never have to be held in memory. If the writer fails the original file is left untouched.
+     *
+     * @param filePath String representing the path of the file to write
+     * @param writer   Writes the complete new contents into the channel of the temporary file
+     * @throws IOException If the content cannot be written or the file system cannot rename atomically
+     */
+    public static void writeAtomic(String filePath, AtomicContentWriter writer) throws IOException {
+        Path target = resolveLinks(Paths.get(filePath).toAbsolutePath());
+        Path dir = target.getParent();
+        Path tempFile = createSiblingFile(dir, "." + target.getFileName());
+        try {
+            if (Files.exists(target)) {
+                copyPermissions(target, tempFile);
+            }
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.write(channel);
+                channel.force(true);
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        forceDirectory(dir);
+    }
+
+    /**
+     * Same as {@link #writeAtomic(String, byte[])} for text
+     *
+     * @param filePath String representing the path of the file to write
+     * @param content  The complete new contents
+     * @param charset  The charset the content is encoded with
+     * @throws IOException If the content cannot be written or the file system cannot rename atomically
+     */
+    public static void writeAtomic(String filePath, String content, Charset charset) throws IOException {
+        writeAtomic(filePath, content.getBytes(charset));
+    }
+
+    /*
+    Follows a chain of symbolic links to the file at its end, which may not exist yet
+     */
+    private static Path resolveLinks(Path path) throws IOException {
+        Path resolved = path;
+        for (int hops = 0; Files.isSymbolicLink(resolved); hops++) {
+            if (hops == 40) {
+                throw new FileSystemException(path.toString(), null, "Too many levels of symbolic links");
+            }
+            resolved = resolved.getParent().resolve(Files.readSymbolicLink(resolved)).normalize();
+        }
+        return resolved;
+    }
+
+    /*
+    Files.createTempFile always creates 0600, a plain createFile gets the defaults (umask) a new target should have
+     */
+    private static Path createSiblingFile(Path dir, String prefix) throws IOException {
+        while (true) {
+            Path candidate = dir.resolve(prefix + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(candidate);
+            } catch (FileAlreadyExistsException e) {
+                // taken, try another name
+            }
+        }
+    }
+
+    private static void copyPermissions(Path source, Path dest) throws IOException {
+        try {
+            Files.setPosixFilePermissions(dest, Files.getPosixFilePermissions(source));
+        } catch (UnsupportedOperationException uoe) {
+            // not a POSIX file system, the temp file keeps its defaults
+        }
+    }
+
+    /*
+    Makes a rename in the directory durable. Not every platform allows opening a directory (i.e. Windows), there the
+    rename is as durable as the file system makes it.
+     */
+    static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ioe) {
+            // directory sync not supported here
+        }
     }
 
     /**
@@ -318,12 +456,31 @@ public class FileUtils {
      * @throws IOException
      */
     public static void writeLines(String filePath, List<String> lines) throws IOException {
-        File appendFile = new File(filePath);
-        FileWriter fw = new FileWriter(appendFile, true);
+        writeLines(filePath, lines, Charset.defaultCharset());
+    }
+
+    /**
+     * Same as {@link #writeLines(String, List)}, encoding the lines with the given charset. For repeated batches to the
+     * same file, or control over fsync, keep a {@link ChannelFileWriter} open instead.
+     *
+     * @param filePath A string representing the path to the file
+     * @param lines    A list of strings to be written to the file
+     * @param charset  The charset the lines are encoded with
+     * @throws IOException If the file cannot be written
+     */
+    public static void writeLines(String filePath, List<String> lines, Charset charset) throws IOException {
+        long chars = 0;
         for (String line : lines) {
-            fw.append(line);
+            chars += line.length();
+        }
+        try (ChannelFileWriter writer = new ChannelFileWriter.Builder(Paths.get(filePath))
+                .withCharset(charset)
+                .withAppend(true)
+                .withBufferSize(singleWriteBufferSize(chars))
+                .withDirectBuffer(false)
+                .build()) {
+            writer.writeLines(lines);
         }
-        fw.close();
     }
 
     /**
@@ -336,10 +493,35 @@ public class FileUtils {
      * @throws IOException
      */
     public static void write(String filePath, String content, boolean append) throws IOException {
-        File file = new File(filePath);
-        FileWriter fw = new FileWriter(file, append);
-        fw.write(content);
-        fw.close();
+        write(filePath, content, append, Charset.defaultCharset());
+    }
+
+    /**
+     * Same as {@link #write(String, String, boolean)}, encoding the content with the given charset
+     *
+     * @param filePath A string representing the path to the file
+     * @param content  The content that is to be written
+     * @param append   boolean to indicate if content should be appended or not
+     * @param charset  The charset the content is encoded with
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(String filePath, String content, boolean append, Charset charset) throws IOException {
+        try (ChannelFileWriter writer = new ChannelFileWriter.Builder(Paths.get(filePath))
+                .withCharset(charset)
+                .withAppend(append)
+                .withBufferSize(singleWriteBufferSize(content.length()))
+                .withDirectBuffer(false)
+                .build()) {
+            writer.write(content);
+        }
+    }
+
+    /*
+    The one shot writers get a heap buffer sized to the content (up to 64k), a direct buffer per call would only be
+    released by the garbage collector
+     */
+    private static int singleWriteBufferSize(long chars) {
+        return (int) Math.min(chars * 4, SINGLE_WRITE_BUFFER);
     }
 
     /**
@@ -351,7 +533,7 @@ public class FileUtils {
      * @throws ChecksumGenerationException if there is IO issues
      */
     public static String checksum(String filePath) throws ChecksumGenerationException {
-        return checksum(filePath, "SHA-512");
+        return checksum(filePath, ChecksumEngine.DEFAULT_ALGORITHM);
     }
 
     /**
@@ -363,22 +545,20 @@ public class FileUtils {
      * @throws ChecksumGenerationException If there is either IO issues or passed an invalid MessageDigest algorithm
      */
     public static String checksum(String filePath, String digestAlgorithm) throws ChecksumGenerationException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance(digestAlgorithm);
-            FileInputStream fis = new FileInputStream(filePath);
-            byte[] byteArr = new byte[4096];
-            int byteCount;
-            while ((byteCount = fis.read(byteArr)) > -1) {
-                digest.update(byteArr, 0, byteCount);
-            }
-            fis.close();
-            byte[] csBytes = digest.digest();
-            return IntStream.range(0, csBytes.length)
-                    .mapToObj(i -> Integer.toString((csBytes[i] & 0xff) + 0x100, 16).substring(1))
-                    .collect(Collectors.joining());
-        } catch (NoSuchAlgorithmException | IOException e) {
-            throw new ChecksumGenerationException();
-        }
+        return ChecksumEngine.getDefault().checksum(Paths.get(filePath), digestAlgorithm);
+    }
+
+    /**
+     * Generates the checksums of many files concurrently.  See {@link com.velexio.jlegos.util.ChecksumEngine} if you need to control
+     * the parallelism or the read buffer size.
+     *
+     * @param filePaths       The files to checksum
+     * @param digestAlgorithm The algorithm to use. Needs to be a valid algorithm that the standard java.security.MessageDigest class will accept
+     * @return A map of each file to its checksum value, in the same order as the files were provided
+     * @throws ChecksumGenerationException If any of the files could not be hashed or passed an invalid MessageDigest algorithm
+     */
+    public static Map<Path, String> checksumAll(Collection<Path> filePaths, String digestAlgorithm) throws ChecksumGenerationException {
+        return ChecksumEngine.getDefault().checksumAll(filePaths, digestAlgorithm);
     }
 
     /**
@@ -404,21 +584,17 @@ public class FileUtils {
      *
      * @param sourceDir Directory path to copy
      * @param targetDir Target parent directory will source directory will be written
+     * @param options Optional varargs of {@link com.velexio.jlegos.util.FileCopyOption} values, same as {@link #copyFile(String, String, FileCopyOption...)}
      * @throws IOException
      */
     public static void copyDirectory(String sourceDir, String targetDir, FileCopyOption... options) throws IOException {
         Path sourcePath = Paths.get(sourceDir);
         Path targetPath = Paths.get(targetDir);
 
-        List<CopyOption> copyOptions = new ArrayList<>(List.of(StandardCopyOption.COPY_ATTRIBUTES));
-        if (options.length > 0) {
-            copyOptions = new ArrayList<>();
-            for (FileCopyOption option : options) {
-                copyOptions.add(option.getNioEquiv());
-            }
-        }
-
-        final CopyOption[] finalCopyOptions = copyOptions.toArray(new CopyOption[0]);
+        final CopyOption[] finalCopyOptions = toNioCopyOptions(options);
+        final CopyEngine copyEngine = Arrays.asList(options).contains(FileCopyOption.CHANNEL_TRANSFER)
+                ? CopyEngine.forOptions(options)
+                : null;
         Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
 
             @Override
@@ -431,12 +607,140 @@ public class FileUtils {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                     throws IOException {
-                Files.copy(file, targetPath.resolve(sourcePath.relativize(file)), finalCopyOptions);
+                Path dest = targetPath.resolve(sourcePath.relativize(file));
+                if (copyEngine != null) {
+                    copyEngine.copy(file, dest);
+                } else {
+                    Files.copy(file, dest, finalCopyOptions);
+                }
                 return FileVisitResult.CONTINUE;
             }
         });
     }
 
+    /**
+     * <p>
+     * Same as {@link #copyDirectory(String, String, FileCopyOption...)}, but the files are copied in parallel. Directories are
+     * still created in walk order before any of the files inside of them are copied. A pool sized to the number of cores
+     * (minimum 4) is created for the duration of the call.
+     * </p>
+     *
+     * @param sourceDir Directory path to copy
+     * @param targetDir Target parent directory will source directory will be written
+     * @param options Optional varargs of {@link com.velexio.jlegos.util.FileCopyOption} values, same as {@link #copyFile(String, String, FileCopyOption...)}
+     * @throws IOException If any of the files/sub-dirs could not be copied. The message lists every failure.
+     */
+    public static void copyDirectoryParallel(String sourceDir, String targetDir, FileCopyOption... options) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(DEFAULT_IO_PARALLELISM);
+        try {
+            copyDirectoryParallel(sourceDir, targetDir, executor, DEFAULT_IO_PARALLELISM * 2, options);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Same as {@link #copyDirectory(String, String, FileCopyOption...)}, but the file copies are handed to the provided
+     * executor. The directory tree is walked on the calling thread, which creates each target directory before submitting
+     * the files inside of it, and blocks whenever maxInFlight copies are outstanding.
+     * </p>
+     * <p>
+     * A failed copy does not stop the others. Once everything has been attempted a single IOException listing every file
+     * or directory that could not be copied is thrown.
+     * </p>
+     *
+     * @param sourceDir Directory path to copy
+     * @param targetDir Target parent directory will source directory will be written
+     * @param executor The executor the file copies run on
+     * @param maxInFlight The maximum number of copies queued or running at one time
+     * @param options Optional varargs of {@link com.velexio.jlegos.util.FileCopyOption} values, same as {@link #copyFile(String, String, FileCopyOption...)}
+     * @throws IOException If any of the files/sub-dirs could not be copied
+     */
+    public static void copyDirectoryParallel(String sourceDir, String targetDir, Executor executor, int maxInFlight,
+                                             FileCopyOption... options) throws IOException {
+        Path sourcePath = Paths.get(sourceDir);
+        Path targetPath = Paths.get(targetDir);
+
+        final CopyOption[] finalCopyOptions = toNioCopyOptions(options);
+        final CopyEngine copyEngine = Arrays.asList(options).contains(FileCopyOption.CHANNEL_TRANSFER)
+                ? CopyEngine.forOptions(options)
+                : null;
+        BoundedTaskRunner runner = new BoundedTaskRunner(executor, maxInFlight);
+        try {
+            Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    try {
+                        Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir)));
+                        return FileVisitResult.CONTINUE;
+                    } catch (IOException ioe) {
+                        runner.recordFailure(dir.toString(), ioe);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Path dest = targetPath.resolve(sourcePath.relativize(file));
+                    runner.submit(file.toString(), () -> {
+                        if (copyEngine != null) {
+                            copyEngine.copy(file, dest);
+                        } else {
+                            Files.copy(file, dest, finalCopyOptions);
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    runner.recordFailure(file.toString(), exc);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            runner.awaitCompletion();
+        }
+        if (runner.hasFailures()) {
+            throw new IOException(getDelinquentListErrorMessage(COPY_FAILURE_HEADER, runner.getFailures()), runner.getFirstFailure());
+        }
+    }
+
+    /**
+     * <p>
+     * Will make the target directory match the source directory, only copying the files that are missing or changed
+     * (the size or modification time differ). Files are copied in parallel. Nothing is removed from the target, see
+     * {@link #syncDirectory(String, String, boolean)}, and {@link DirectorySync} for checksum verification.
+     * </p>
+     *
+     * @param sourceDir Directory path to copy
+     * @param targetDir Directory that is made to match the source, created if it does not exist
+     * @return What was copied and skipped
+     * @throws IOException If any of the files/sub-dirs could not be synced. The message lists every failure.
+     */
+    public static SyncSummary syncDirectory(String sourceDir, String targetDir) throws IOException {
+        return DirectorySync.getDefault().sync(Paths.get(sourceDir), Paths.get(targetDir));
+    }
+
+    /**
+     * <p>
+     * Same as {@link #syncDirectory(String, String)}, optionally removing the files and sub-dirs of the target that are
+     * not in the source.
+     * </p>
+     *
+     * @param sourceDir        Directory path to copy
+     * @param targetDir        Directory that is made to match the source, created if it does not exist
+     * @param deleteExtraneous True to remove target entries that are not in the source
+     * @return What was copied, skipped and deleted
+     * @throws IOException If any of the files/sub-dirs could not be synced. The message lists every failure.
+     */
+    public static SyncSummary syncDirectory(String sourceDir, String targetDir, boolean deleteExtraneous) throws IOException {
+        return new DirectorySync.Builder().withDeleteExtraneous(deleteExtraneous).build()
+                .sync(Paths.get(sourceDir), Paths.get(targetDir));
+    }
+
     /**
      * Removes a directory in a recursive fashion. Meaning it will not only remove non-empty directories (unlike file.delete), but it will also
      * follow any sub-directories and remove those as well.
@@ -445,29 +749,7 @@ public class FileUtils {
      * @throws IOException If any of the files/sub-dirs cannot be deleted.
      */
     public static void deleteDirectory(String directoryPath) throws IOException {
-        File d = new File(directoryPath);
-        List<String> delinquentList = new ArrayList<>();
-        if (d.isDirectory()) {
-            String[] fileList = d.list();
-            if (fileList != null) {
-                for (String fp : fileList) {
-                    File f = new File(directoryPath + "/" + fp);
-                    if (f.isDirectory()) {
-                        FileUtils.deleteDirectory(f.getAbsolutePath());
-                    } else {
-                        if (!f.delete()) {
-                            delinquentList.add(f.getAbsolutePath());
-                        }
-                    }
-                }
-            }
-            if (!d.delete()) {
-                delinquentList.add(d.getAbsolutePath());
-            }
-        }
-        if (delinquentList.size() > 0) {
-            throw new IOException(getDelinquentListErrorMessage(delinquentList));
-        }
+        deleteTree(Paths.get(directoryPath), true, null, 0, null);
     }
 
     /**
@@ -478,87 +760,136 @@ public class FileUtils {
      * @throws IOException If there is an issue removing a file and/or subdirectory
      */
     public static void emptyDirectory(String directoryPath) throws IOException {
-        File d = new File(directoryPath);
-        List<String> delinquentList = new ArrayList<>();
-        if (d.isDirectory()) {
-            String[] dirFileList = d.list();
-            if (dirFileList != null) {
-                for (String fp : dirFileList) {
-                    File f = new File(fp);
-                    if (f.isDirectory()) {
-                        try {
-                            FileUtils.deleteDirectory(f.getAbsolutePath());
-                        } catch (IOException ioe) {
-                            delinquentList.add(f.getAbsolutePath());
-                        }
-                    } else {
-                        if (!f.delete()) {
-                            delinquentList.add(f.getAbsolutePath());
-                        }
-                    }
-                }
-            }
+        deleteTree(Paths.get(directoryPath), false, null, 0, null);
+    }
+
+    /**
+     * Same as {@link #deleteDirectory(String)}, but the files are deleted in parallel on a pool sized to the number of cores
+     * (minimum 4) that only lives for the duration of the call.
+     *
+     * @param directoryPath A string representing the path to the directory that is to be removed
+     * @throws IOException If any of the files/sub-dirs cannot be deleted.
+     */
+    public static void deleteDirectoryParallel(String directoryPath) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(DEFAULT_IO_PARALLELISM);
+        try {
+            deleteDirectoryParallel(directoryPath, executor, DEFAULT_IO_PARALLELISM * 2, null);
+        } finally {
+            executor.shutdown();
         }
-        if (delinquentList.size() > 0) {
-            throw new IOException(getDelinquentListErrorMessage(delinquentList));
+    }
+
+    /**
+     * <p>
+     * Same as {@link #deleteDirectory(String)}, but the file deletes are handed to the provided executor. The tree is walked on the
+     * calling thread, which blocks whenever maxInFlight deletes are outstanding. Once all the files are gone the directories are
+     * removed deepest first.
+     * </p>
+     *
+     * @param directoryPath    A string representing the path to the directory that is to be removed
+     * @param executor         The executor the file deletes run on
+     * @param maxInFlight      The maximum number of deletes queued or running at one time
+     * @param progressListener Optional (nullable) listener called with the running count of removed entries. It is called from the
+     *                         executor threads, so it needs to be thread-safe.
+     * @throws IOException If any of the files/sub-dirs cannot be deleted.
+     */
+    public static void deleteDirectoryParallel(String directoryPath, Executor executor, int maxInFlight,
+                                               ProgressListener progressListener) throws IOException {
+        deleteTree(Paths.get(directoryPath), true, executor, maxInFlight, progressListener);
+    }
+
+    /**
+     * Same as {@link #emptyDirectory(String)}, but the files are deleted in parallel on a pool sized to the number of cores
+     * (minimum 4) that only lives for the duration of the call.
+     *
+     * @param directoryPath The path to the directory to empty
+     * @throws IOException If there is an issue removing a file and/or subdirectory
+     */
+    public static void emptyDirectoryParallel(String directoryPath) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(DEFAULT_IO_PARALLELISM);
+        try {
+            emptyDirectoryParallel(directoryPath, executor, DEFAULT_IO_PARALLELISM * 2, null);
+        } finally {
+            executor.shutdown();
         }
     }
 
+    /**
+     * Same as {@link #emptyDirectory(String)}, but the file deletes are handed to the provided executor.
+     *
+     * @param directoryPath    The path to the directory to empty
+     * @param executor         The executor the file deletes run on
+     * @param maxInFlight      The maximum number of deletes queued or running at one time
+     * @param progressListener Optional (nullable) listener called with the running count of removed entries. It is called from the
+     *                         executor threads, so it needs to be thread-safe.
+     * @throws IOException If there is an issue removing a file and/or subdirectory
+     */
+    public static void emptyDirectoryParallel(String directoryPath, Executor executor, int maxInFlight,
+                                              ProgressListener progressListener) throws IOException {
+        deleteTree(Paths.get(directoryPath), false, executor, maxInFlight, progressListener);
+    }
+
     /**
      * <p>
      * Will get a count of all immediate regular files (non-dirs) that are directly in
-     * the directory (This does not search subfolders)
+     * the directory (This does not search subfolders). Entries are read lazily and stat'ed once each, links are
+     * counted as what they point to.
      * </p>
      *
-     * @param directoryPath
-     * @return
+     * @param directoryPath String representation of full path to the directory
+     * @return The number of files, 0 if the path is not a directory
+     * @throws UncheckedIOException If the directory cannot be read. Entries removed while counting are skipped.
      */
     public static int getDirectoryFileCount(String directoryPath) {
-        int count = 0;
-        List<File> fileList = getDirectoryFiles(directoryPath);
-        for (File f : fileList) {
-            if (f.isFile()) {
-                count++;
-            }
-        }
-        return count;
+        return (int) countDirectoryEntries(directoryPath, true);
     }
 
     /**
      * <p>
      * Will get a count of immediate directories in specified folder path. Will NOT perform
-     * the count recursively.
+     * the count recursively. Entries are read lazily and stat'ed once each, links are counted as what they point to.
      * </p>
      *
      * @param directoryPath String representation of full path to the directory
      * @return int
+     * @throws UncheckedIOException If the directory cannot be read. Entries removed while counting are skipped.
      */
     public static int getDirectoryFolderCount(String directoryPath) {
-        int count = 0;
-        List<File> fileList = getDirectoryFiles(directoryPath);
-        for (File f : fileList) {
-            if (f.isDirectory()) {
-                count++;
-            }
-        }
-        return count;
+        return (int) countDirectoryEntries(directoryPath, false);
     }
 
     /**
-     * Gets the files of the specified directory (Including subdirectories).
+     * Gets the files of the specified directory (Including subdirectories). For large directories use
+     * {@link #streamDirectory(String)} or a {@link DirectoryListing}, which do not hold every entry in memory.
      *
      * @param directoryPath The string representation of the path to the directory
-     * @return A List of File objects representing the directories contents. Note, only first-level contents are retrieved
+     * @return A List of File objects representing the directories contents. Note, only first-level contents are retrieved.
+     * The list is empty if the path is not a directory or cannot be read.
      */
     public static List<File> getDirectoryFiles(String directoryPath) {
         List<File> fileList = new ArrayList<>();
         File d = new File(directoryPath);
         if (d.isDirectory()) {
-            fileList = Arrays.asList(d.listFiles());
+            File[] files = d.listFiles();
+            if (files != null) {
+                fileList = Arrays.asList(files);
+            }
         }
         return fileList;
     }
 
+    /**
+     * Lazily lists the first level contents of a directory. Entries are read as the stream is consumed, so this is safe
+     * to use on directories with millions of entries. Use a {@link DirectoryListing} for filters and recursion.
+     *
+     * @param directoryPath The string representation of the path to the directory
+     * @return A stream of the directory entries, which must be closed
+     * @throws IOException If the directory cannot be opened
+     */
+    public static Stream<Path> streamDirectory(String directoryPath) throws IOException {
+        return new DirectoryListing.Builder(Paths.get(directoryPath)).build().stream();
+    }
+
     /**
      * Will get all the first level files from directory that match the specified pattern. The pattern is just a simple string matching pattern.
      * This method will not recognize regex, so just include a simple string that will match the file.
@@ -571,10 +902,23 @@ public class FileUtils {
      * @return A List of File objects that represents all the files matching the pattern
      */
     public static List<File> getDirectoryFiles(String directoryPath, String matchPattern) {
+        return getDirectoryFiles(directoryPath, FileMatcher.contains(matchPattern));
+    }
+
+    /**
+     * Will get all the first level files from directory whose name matches the compiled pattern, which can be a glob,
+     * a regex or a simple string match (see {@link FileMatcher}). To query the same directory repeatedly without
+     * listing it every time, use a {@link DirectoryIndex}.
+     *
+     * @param directoryPath The path to the directory holding files
+     * @param matcher       The pattern matched against the file names
+     * @return A List of File objects that represents all the files matching the pattern
+     */
+    public static List<File> getDirectoryFiles(String directoryPath, FileMatcher matcher) {
         List<File> fileList = new ArrayList<>();
         File d = new File(directoryPath);
         if (d.isDirectory()) {
-            File[] files = d.listFiles((dir, name) -> name.contains(matchPattern));
+            File[] files = d.listFiles((dir, name) -> matcher.matches(name));
             if (files != null) {
                 fileList = Arrays.asList(files);
             }
@@ -588,29 +932,30 @@ public class FileUtils {
      * @throws IOException Thrown if there is an issue reading / writing during the operation
      */
     public static void unzip(String zipFilePath) throws IOException {
-        File zipfileParentDir = new File(zipFilePath).getParentFile();
-        ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFilePath));
-        ZipEntry zipEntry = zis.getNextEntry();
-        while (zipEntry != null) {
-            File entryFile = new File(zipfileParentDir, zipEntry.getName());
-            if (!entryFile.getCanonicalPath().startsWith(zipfileParentDir.getCanonicalPath() + FileUtils.getFileSeparator())) {
-                throw new IOException("Zip entry [ " + zipEntry.getName() + "] is outside the target directory...unable to uncompress");
-            }
-            if (zipEntry.getName().endsWith("/")) {
-                FileUtils.ensureDirectoryForce(entryFile.getAbsolutePath());
-            } else {
-                FileOutputStream fos = new FileOutputStream(entryFile);
-                int len;
-                while ((len = zis.read(zipBuffer)) > 0) {
-                    fos.write(zipBuffer, 0, len);
-                }
-                fos.close();
-            }
-            zipEntry = zis.getNextEntry();
-        }
-        zis.closeEntry();
-        zis.close();
+        File zipfileParentDir = new File(zipFilePath).getAbsoluteFile().getParentFile();
+        unzip(zipFilePath, zipfileParentDir.getAbsolutePath());
+    }
 
+    /**
+     * Will unzip a compressed file into the target directory, extracting the entries in parallel.
+     * @param zipFilePath The path to the file that is to be unzipped
+     * @param targetDirPath The directory the contents are extracted into, created if it does not exist
+     * @throws IOException Thrown if there is an issue reading / writing during the operation
+     */
+    public static void unzip(String zipFilePath, String targetDirPath) throws IOException {
+        ZipExtractor.getDefault().extract(Paths.get(zipFilePath), Paths.get(targetDirPath));
+    }
+
+    /**
+     * Will unzip only the entries whose name matches the glob into the target directory. Entries that do not match are
+     * never inflated.
+     * @param zipFilePath The path to the file that is to be unzipped
+     * @param targetDirPath The directory the contents are extracted into, created if it does not exist
+     * @param entryGlob A glob matched against the entry names, i.e. "*.txt" or "docs/**"
+     * @throws IOException Thrown if there is an issue reading / writing during the operation
+     */
+    public static void unzip(String zipFilePath, String targetDirPath, String entryGlob) throws IOException {
+        new ZipExtractor.Builder().withFilter(entryGlob).build().extract(Paths.get(zipFilePath), Paths.get(targetDirPath));
     }
 
 
@@ -628,6 +973,18 @@ public class FileUtils {
      * @throws IOException If the file does not exist, cannot be read or the containing directory does not allow writes
      */
     public static void zipFile(String filePath) throws IOException {
+        zipFile(filePath, ArchiveOptions.defaults());
+    }
+
+    /**
+     * Same as {@link #zipFile(String)}, compressing with the given options
+     *
+     * @param filePath A string representation of the path to the file
+     * @param options  The worker count, compression method, level and block size to use
+     * @return The entry count, sizes and elapsed time of the operation
+     * @throws IOException If the file does not exist, cannot be read or the containing directory does not allow writes
+     */
+    public static ArchiveStats zipFile(String filePath, ArchiveOptions options) throws IOException {
         File file = new File(filePath);
         if (!file.exists()) {
             throw new IOException("File [ " + filePath + "] does not exist");
@@ -639,21 +996,16 @@ public class FileUtils {
             zipFilename = file.getName().replaceAll(matchPattern, "$1.zip" );
         }
         String fullZipPath = parentDir + zipFilename;
-        FileInputStream fis = new FileInputStream(file);
-        FileOutputStream fos = new FileOutputStream(fullZipPath);
-        ZipOutputStream zos = new ZipOutputStream(fos);
-        ZipEntry zipEntry = new ZipEntry(file.getName());
-        zos.putNextEntry(zipEntry);
-        int len;
-        while ((len = fis.read(zipBuffer)) > -1) {
-            zos.write(zipBuffer, 0, len);
-        }
-        zos.close();
-        fis.close();
-        fos.close();
+        ArchiveStats stats;
+        try (ParallelZipWriter writer = newZipWriter(fullZipPath, options)) {
+            writer.putFile(file.toPath(), file.getName());
+            writer.finish();
+            stats = writer.getStats();
+        }
         if (new File(fullZipPath).exists()) {
             file.delete();
         }
+        return stats;
     }
 
     /**
@@ -665,26 +1017,33 @@ public class FileUtils {
      * @throws IOException If the path that represents the destination directory either does not exist or is not a directory
      */
     public static void zipFiles(List<String> zipFiles, String destDirectoryPath, String zipFilename) throws IOException {
+        zipFiles(zipFiles, destDirectoryPath, zipFilename, ArchiveOptions.defaults());
+    }
+
+    /**
+     * Same as {@link #zipFiles(List, String, String)}, compressing with the given options
+     *
+     * @param zipFiles A List of String objects that represent the path to the files that are to be included
+     * @param destDirectoryPath String that represents the full path to the directory where the zip file will be created
+     * @param zipFilename The name for the multi-part zip file. i.e. allFiles.zip, my-project.zip
+     * @param options The worker count, compression method, level and block size to use
+     * @return The entry count, sizes and elapsed time of the operation
+     * @throws IOException If the path that represents the destination directory either does not exist or is not a directory
+     */
+    public static ArchiveStats zipFiles(List<String> zipFiles, String destDirectoryPath, String zipFilename, ArchiveOptions options) throws IOException {
         File dir = new File(destDirectoryPath);
         if (!dir.isDirectory()) {
             throw new IOException("The path provided [ " + destDirectoryPath + "] either does not exist or not a directory.");
         }
         String multiZipFilename = destDirectoryPath + "/" + zipFilename;
-        FileOutputStream fos = new FileOutputStream(multiZipFilename);
-        ZipOutputStream zos = new ZipOutputStream(fos);
-        for (String srcFilePath : zipFiles) {
-            File file = new File(srcFilePath);
-            FileInputStream fis = new FileInputStream(file);
-            ZipEntry zipEntry = new ZipEntry(file.getName());
-            zos.putNextEntry(zipEntry);
-            int len;
-            while ((len = fis.read(zipBuffer)) > -1 ) {
-               zos.write(zipBuffer, 0, len);
+        try (ParallelZipWriter writer = newZipWriter(multiZipFilename, options)) {
+            for (String srcFilePath : zipFiles) {
+                File file = new File(srcFilePath);
+                writer.putFile(file.toPath(), file.getName());
             }
-            fis.close();
+            writer.finish();
+            return writer.getStats();
         }
-        zos.close();
-        fos.close();
     }
 
     /**
@@ -700,48 +1059,190 @@ public class FileUtils {
      * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
      */
     public static void zipDirectory(String directoryPath) throws IOException {
+        zipDirectory(directoryPath, ArchiveOptions.defaults());
+    }
+
+    /**
+     * Same as {@link #zipDirectory(String)}, compressing with the given options
+     *
+     * @param directoryPath A string object representing the path to the directory to be compressed
+     * @param options The worker count, compression method, level and block size to use
+     * @return The entry count, sizes and elapsed time of the operation
+     * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
+     */
+    public static ArchiveStats zipDirectory(String directoryPath, ArchiveOptions options) throws IOException {
         File dir = new File(directoryPath);
         String zipDirFilename = dir.getParentFile().getAbsolutePath() + "/" + dir.getName() + ".zip";
         if (!dir.isDirectory()) {
             throw new IOException("The directory path provided [ " + directoryPath
                     + "] either does not exist or not a directory object. Unable to proceed with compression routine.");
         }
-        FileOutputStream fos = new FileOutputStream(zipDirFilename);
-        ZipOutputStream zos = new ZipOutputStream(fos);
-        zipDirFile(dir, dir.getName(), zos);
-        zos.close();
-        fos.close();
+        try (ParallelZipWriter writer = newZipWriter(zipDirFilename, options)) {
+            zipDirFile(dir, dir.getName(), writer);
+            writer.finish();
+            return writer.getStats();
+        }
+    }
+
+    /**
+     * <p>
+     *  Compresses an entire directory straight into the stream, without writing anything to disk. Entries are flushed as
+     *  soon as they are complete so the receiving end starts getting data right away, and a slow reader simply slows the
+     *  compression down. The stream is flushed but not closed.
+     * </p>
+     * <p>
+     *  <b>Note:</b> Any hidden files will not be included in the zip file
+     * </p>
+     *
+     * @param directoryPath A string object representing the path to the directory to be compressed
+     * @param out The stream the archive is written to, i.e. a servlet response or socket stream
+     * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
+     */
+    public static void zipDirectory(String directoryPath, OutputStream out) throws IOException {
+        zipDirectory(directoryPath, out, ArchiveOptions.defaults());
+    }
+
+    /**
+     * Same as {@link #zipDirectory(String, OutputStream)}, compressing with the given options
+     *
+     * @param directoryPath A string object representing the path to the directory to be compressed
+     * @param out The stream the archive is written to, it is flushed but not closed
+     * @param options The worker count, compression method, level and block size to use
+     * @return The entry count, sizes and elapsed time of the operation
+     * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
+     */
+    public static ArchiveStats zipDirectory(String directoryPath, OutputStream out, ArchiveOptions options) throws IOException {
+        File dir = new File(directoryPath);
+        if (!dir.isDirectory()) {
+            throw new IOException("The directory path provided [ " + directoryPath
+                    + "] either does not exist or not a directory object. Unable to proceed with compression routine.");
+        }
+        try (ParallelZipWriter writer = new ParallelZipWriter(new BufferedOutputStream(new NonClosingOutputStream(out), 65536), options)) {
+            writer.setFlushAfterEachEntry(true);
+            zipDirFile(dir, dir.getName(), writer);
+            writer.finish();
+            return writer.getStats();
+        }
+    }
+
+    /**
+     * Same as {@link #zipDirectory(String, OutputStream, ArchiveOptions)}, writing to a channel. The channel is left open.
+     *
+     * @param directoryPath A string object representing the path to the directory to be compressed
+     * @param channel The channel the archive is written to
+     * @param options The worker count, compression method, level and block size to use
+     * @return The entry count, sizes and elapsed time of the operation
+     * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
+     */
+    public static ArchiveStats zipDirectory(String directoryPath, WritableByteChannel channel, ArchiveOptions options) throws IOException {
+        return zipDirectory(directoryPath, Channels.newOutputStream(channel), options);
+    }
+
+    /**
+     * <p>
+     *  Will create a gzip compressed tarball of an entire directory. The tarball will be placed in the parent directory and
+     *  will be named with the same name, with the ".tar.gz" extension. Original directory object will remain intact.
+     * </p>
+     * <p>
+     *  Permissions, modification times and symbolic links are kept. Unlike the zip methods, hidden files are included.
+     * </p>
+     *
+     * @param directoryPath A string object representing the path to the directory to be archived
+     * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
+     */
+    public static void tarDirectory(String directoryPath) throws IOException {
+        tarDirectory(directoryPath, ArchiveOptions.defaults());
+    }
+
+    /**
+     * Same as {@link #tarDirectory(String)}, compressing with the given options
+     *
+     * @param directoryPath A string object representing the path to the directory to be archived
+     * @param options The worker count, compression level and block size to use
+     * @return The entry count, sizes and elapsed time of the operation
+     * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
+     */
+    public static ArchiveStats tarDirectory(String directoryPath, ArchiveOptions options) throws IOException {
+        File dir = new File(directoryPath);
+        if (!dir.isDirectory()) {
+            throw new IOException("The directory path provided [ " + directoryPath
+                    + "] either does not exist or not a directory object. Unable to proceed with archive routine.");
+        }
+        String tarFilename = dir.getAbsoluteFile().getParentFile().getAbsolutePath() + "/" + dir.getName() + ".tar.gz";
+        try (TarGzWriter writer = new TarGzWriter(new BufferedOutputStream(new FileOutputStream(tarFilename), 65536), options)) {
+            writer.putTree(dir.toPath(), dir.getName());
+            writer.finish();
+            return writer.getStats();
+        }
+    }
+
+    /**
+     * Writes a gzip compressed tarball of the directory straight into the stream, without writing anything to disk. The
+     * stream is flushed after every entry, and flushed but not closed at the end.
+     *
+     * @param directoryPath A string object representing the path to the directory to be archived
+     * @param out The stream the tarball is written to
+     * @param options The worker count, compression level and block size to use
+     * @return The entry count, sizes and elapsed time of the operation
+     * @throws IOException Will be thrown if path does not represent a directory or any other IO error occurs
+     */
+    public static ArchiveStats tarDirectory(String directoryPath, OutputStream out, ArchiveOptions options) throws IOException {
+        File dir = new File(directoryPath);
+        if (!dir.isDirectory()) {
+            throw new IOException("The directory path provided [ " + directoryPath
+                    + "] either does not exist or not a directory object. Unable to proceed with archive routine.");
+        }
+        try (TarGzWriter writer = new TarGzWriter(new BufferedOutputStream(new NonClosingOutputStream(out), 65536), options)) {
+            writer.setFlushAfterEachEntry(true);
+            writer.putTree(dir.toPath(), dir.getName());
+            writer.finish();
+            return writer.getStats();
+        }
+    }
+
+    /**
+     * Will extract a tarball (.tar, .tar.gz or .tgz) inside it's parent folder.
+     * @param archivePath The path to the tarball
+     * @throws IOException Thrown if there is an issue reading / writing during the operation
+     */
+    public static void untar(String archivePath) throws IOException {
+        untar(archivePath, new File(archivePath).getAbsoluteFile().getParentFile().getAbsolutePath());
+    }
+
+    /**
+     * Will extract a tarball (.tar, .tar.gz or .tgz) into the target directory, restoring permissions, modification
+     * times and links.
+     * @param archivePath The path to the tarball
+     * @param targetDirPath The directory the contents are extracted into, created if it does not exist
+     * @throws IOException Thrown if there is an issue reading / writing during the operation
+     */
+    public static void untar(String archivePath, String targetDirPath) throws IOException {
+        new TarExtractor().extract(Paths.get(archivePath), Paths.get(targetDirPath));
+    }
+
+    private static ParallelZipWriter newZipWriter(String zipFilePath, ArchiveOptions options) throws IOException {
+        return new ParallelZipWriter(new BufferedOutputStream(new FileOutputStream(zipFilePath), 65536), options);
     }
 
     /*
     Recursive method for compressing all of directory contents
      */
-    private static void zipDirFile(File fileToZip, String fileName, ZipOutputStream zipOutStream) throws IOException {
+    private static void zipDirFile(File fileToZip, String fileName, ParallelZipWriter writer) throws IOException {
         if (fileToZip.isHidden()) {
             return;
         }
         if (fileToZip.isDirectory()) {
-            if (fileName.endsWith("/")) {
-                zipOutStream.putNextEntry(new ZipEntry(fileName));
-            } else {
-                zipOutStream.putNextEntry(new ZipEntry(fileName + "/"));
-            }
-            zipOutStream.closeEntry();
+            writer.putDirectory(fileName, fileToZip.lastModified());
             File[] childFiles = fileToZip.listFiles();
+            if (childFiles == null) {
+                throw new IOException("Unable to list the contents of [ " + fileToZip.getAbsolutePath() + "]");
+            }
             for (File file : childFiles) {
-                zipDirFile(file, fileName + "/" + file.getName(), zipOutStream);
+                zipDirFile(file, fileName + "/" + file.getName(), writer);
             }
             return;
         }
-
-        FileInputStream fis = new FileInputStream(fileToZip);
-        ZipEntry zipEntry = new ZipEntry(fileName);
-        zipOutStream.putNextEntry(zipEntry);
-        int length;
-        while ((length = fis.read(zipBuffer)) > -1 ) {
-            zipOutStream.write(zipBuffer, 0, length);
-        }
-        fis.close();
+        writer.putFile(fileToZip.toPath(), fileName);
     }
 
     /**
@@ -753,11 +1254,7 @@ public class FileUtils {
      * @throws IOException If the file does not exist or is not a regular file
      */
     public static double sizeGB(String filePath) throws IOException {
-        File file = new File(filePath);
-        if (!file.exists() || !file.isFile()) {
-            throw new IOException("File [ " + filePath + "] is not a regular file.");
-        }
-        return (double) file.length() / (1024 * 1024 * 1024);
+        return (double) regularFileSize(filePath) / (1024 * 1024 * 1024);
     }
 
     /**
@@ -770,11 +1267,7 @@ public class FileUtils {
      * @throws IOException If the file does not exist or is not a regular file
      */
     public static double sizeMB(String filePath) throws IOException {
-        File file = new File(filePath);
-        if (!file.exists() || !file.isFile()) {
-            throw new IOException("File [ " + filePath + "] is not a regular file.");
-        }
-        return (double) file.length() / (1024 * 1024);
+        return (double) regularFileSize(filePath) / (1024 * 1024);
     }
 
     /**
@@ -787,11 +1280,7 @@ public class FileUtils {
      * @throws IOException If the file does not exist or is not a regular file
      */
     public static double sizeKB(String filePath) throws IOException {
-        File file = new File(filePath);
-        if (!file.exists() || !file.isFile()) {
-            throw new IOException("File [ " + filePath + "] is not a regular file.");
-        }
-        return (double) file.length() / 1024;
+        return (double) regularFileSize(filePath) / 1024;
     }
 
     /**
@@ -804,11 +1293,22 @@ public class FileUtils {
      * @throws IOException If the file does not exist or is not a regular file
      */
     public static double sizeBytes(String filePath) throws IOException {
-        File file = new File(filePath);
-        if (!file.exists() || !file.isFile()) {
-            throw new IOException("File [ " + filePath + "] is not a regular file.");
-        }
-        return (double) file.length();
+        return (double) regularFileSize(filePath);
+    }
+
+    /**
+     * <p>
+     * Will return the combined size of every regular file in the directory tree, in bytes (like du, but the logical
+     * file sizes). The subdirectories are read in parallel, see {@link DiskUsage} for breakdowns per directory, the
+     * largest files and caching between scans.
+     * </p>
+     *
+     * @param directoryPath The path of the directory
+     * @return Size of the directory tree in bytes
+     * @throws IOException If the path is not a directory or part of the tree cannot be read
+     */
+    public static long directorySize(String directoryPath) throws IOException {
+        return DiskUsage.getDefault().scan(Paths.get(directoryPath)).getTotalBytes();
     }
 
     /**
@@ -820,12 +1320,133 @@ public class FileUtils {
     }
 
     /*
-    A dry method to de-duplicate code used in emptyDirectory methods
+    One stat for the exists, is-a-file and length checks the size methods need
      */
-    private static String getDelinquentListErrorMessage(List<String> delinquentList) {
+    private static long regularFileSize(String filePath) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new IOException("File [ " + filePath + "] is not a regular file.", e);
+        }
+        if (!attributes.isRegularFile()) {
+            throw new IOException("File [ " + filePath + "] is not a regular file.");
+        }
+        return attributes.size();
+    }
+
+    private static long countDirectoryEntries(String directoryPath, boolean files) {
+        Path directory = Paths.get(directoryPath);
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        DirectoryListing listing = new DirectoryListing.Builder(directory).withFollowLinks(true).build();
+        try {
+            return files ? listing.countFiles() : listing.countDirectories();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+    The delete engine behind the delete/empty directory methods. Symbolic links are removed, never followed. With no
+    executor everything is removed on the calling thread as the tree is walked. With an executor the files are fanned
+    out and the directories (collected deepest first) are removed once all the files are done.
+     */
+    private static void deleteTree(Path root, boolean removeRoot, Executor executor, int maxInFlight,
+                                   ProgressListener progressListener) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        AtomicLong removedCount = new AtomicLong();
+        BoundedTaskRunner runner = executor == null ? null : new BoundedTaskRunner(executor, maxInFlight);
+        List<String> delinquentList = Collections.synchronizedList(new ArrayList<>());
+        List<Path> directories = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (runner == null) {
+                        deleteEntry(file, delinquentList, removedCount, progressListener);
+                    } else {
+                        runner.submit(file.toString(), () -> deleteEntry(file, delinquentList, removedCount, progressListener));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    delinquentList.add(file.toAbsolutePath().toString());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    if (removeRoot || !dir.equals(root)) {
+                        if (runner == null) {
+                            deleteEntry(dir, delinquentList, removedCount, progressListener);
+                        } else {
+                            directories.add(dir);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            if (runner != null) {
+                runner.awaitCompletion();
+            }
+        }
+        if (runner != null) {
+            delinquentList.addAll(runner.getFailures());
+            for (Path dir : directories) {
+                deleteEntry(dir, delinquentList, removedCount, progressListener);
+            }
+        }
+        if (delinquentList.size() > 0) {
+            throw new IOException(getDelinquentListErrorMessage(REMOVE_FAILURE_HEADER, delinquentList));
+        }
+    }
+
+    private static void deleteEntry(Path path, List<String> delinquentList, AtomicLong removedCount,
+                                    ProgressListener progressListener) {
+        try {
+            Files.delete(path);
+        } catch (IOException ioe) {
+            delinquentList.add(path.toAbsolutePath().toString());
+            return;
+        }
+        long removed = removedCount.incrementAndGet();
+        if (progressListener != null) {
+            progressListener.onProgress(path, removed, -1);
+        }
+    }
+
+    /*
+    Converts the jLegos copy options to their nio equivalent. No options means COPY_ATTRIBUTES, options with no
+    nio equivalent (i.e. CHANNEL_TRANSFER) are dropped.
+     */
+    private static CopyOption[] toNioCopyOptions(FileCopyOption... options) {
+        if (options.length == 0) {
+            return new CopyOption[]{StandardCopyOption.COPY_ATTRIBUTES};
+        }
+        List<CopyOption> copyOptions = new ArrayList<>();
+        for (FileCopyOption option : options) {
+            if (option.getNioEquiv() != null) {
+                copyOptions.add(option.getNioEquiv());
+            }
+        }
+        return copyOptions.toArray(new CopyOption[0]);
+    }
+
+    /*
+    A dry method to de-duplicate code used in emptyDirectory and other bulk methods that report every failure at once
+     */
+    private static String getDelinquentListErrorMessage(String header, List<String> delinquentList) {
         String newLine = System.lineSeparator();
         StringBuilder errMessage = new StringBuilder();
-        errMessage.append("Unable to remove the following files/subdirectories.  Check permissions and try again:");
+        errMessage.append(header);
         errMessage.append(newLine);
         for (String fileName : delinquentList) {
             errMessage.append(fileName);
@@ -834,4 +1455,23 @@ public class FileUtils {
         return errMessage.toString();
     }
 
+    /*
+    Keeps the writers from closing a stream that belongs to the caller
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
 }
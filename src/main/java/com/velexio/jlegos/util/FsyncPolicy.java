@@ -0,0 +1,24 @@
+package com.velexio.jlegos.util;
+
+/**
+ * Controls when data written by a file operation is forced to the storage device (fsync).
+ */
+public enum FsyncPolicy {
+    /**
+     * Never force, leave it up to the operating system to flush its page cache
+     */
+    NONE,
+    /**
+     * Force after every chunk/batch of data written. Slowest, but the least amount of data is at risk on a crash.
+     */
+    PER_BATCH,
+    /**
+     * Force once when the operation completes
+     */
+    ON_CLOSE,
+    /**
+     * Force at most once per configured interval as batches are committed, and once when the operation completes
+     * (group commit). Operations without an interval setting, like CopyEngine, treat it as ON_CLOSE.
+     */
+    INTERVAL
+}
@@ -0,0 +1,455 @@
+package com.velexio.jlegos.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * <pre>
+ * Writes a standard zip archive while compressing the entries on several threads, similar to pigz. Entry data is cut
+ * into blocks that are deflated concurrently and written back in order, so both large files and large numbers of small
+ * files use all of the workers.
+ *
+ * Entries are DEFLATED with a data descriptor (the same layout java.util.zip.ZipOutputStream produces), directories are
+ * STORED, and ZIP64 records are added automatically when sizes, offsets or the entry count require them. Files the
+ * options mark as stored (see ArchiveOptions.Method) are written uncompressed with their CRC and size in the header.
+ *
+ * Usage Example:
+ *
+ *     try (ParallelZipWriter writer = new ParallelZipWriter(new BufferedOutputStream(new FileOutputStream(zipPath)),
+ *             new ArchiveOptions.Builder().withWorkers(8).build())) {
+ *         writer.putDirectory("logs/", System.currentTimeMillis());
+ *         writer.putFile(Paths.get("/var/log/app.log"), "logs/app.log");
+ *     }
+ * </pre>
+ */
+public class ParallelZipWriter implements Closeable {
+
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EXT_SIGNATURE = 0x08074b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final OutputStream out;
+    private final ArchiveOptions options;
+    private final DeflatePipeline pipeline;
+    private final long startNanos = System.nanoTime();
+    private long finishNanos;
+    private final List<EntryRecord> entries = new ArrayList<>();
+    private final Set<String> entryNames = new HashSet<>();
+    private boolean finished;
+    private boolean failed;
+    private boolean flushAfterEachEntry;
+
+    /**
+     * Creates a writer. The stream is closed when the writer is closed.
+     *
+     * @param out     Where the archive is written, ideally buffered
+     * @param options The worker count, compression level and block size to use
+     */
+    public ParallelZipWriter(OutputStream out, ArchiveOptions options) {
+        this.out = out;
+        this.options = options;
+        this.pipeline = new DeflatePipeline(out, options);
+    }
+
+    /**
+     * Adds a directory entry
+     *
+     * @param name         The entry name, a trailing "/" is added if missing
+     * @param lastModified The modification time in milliseconds since the epoch
+     * @throws IOException If an entry with the same name was already added or the write fails
+     */
+    public void putDirectory(String name, long lastModified) throws IOException {
+        String dirName = name.endsWith("/") ? name : name + "/";
+        EntryRecord entry = newEntry(dirName, METHOD_STORED, 0, lastModified);
+        run(() -> pipeline.enqueue(() -> {
+            entry.offset = pipeline.getBytesWritten();
+            pipeline.writeRaw(localHeader(entry));
+            entryWritten(entry);
+        }));
+    }
+
+    /**
+     * Adds a file, using its last modified time as the entry time
+     *
+     * @param file The file to add
+     * @param name The entry name
+     * @throws IOException If the file cannot be read, the name was already used or the write fails
+     */
+    public void putFile(Path file, String name) throws IOException {
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        if (options.isStored(name)) {
+            putStoredFile(file, name, lastModified);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            putEntry(name, in, lastModified);
+        }
+    }
+
+    /**
+     * Adds an entry with the contents of the stream. The stream is read to the end but not closed. Because a stream
+     * cannot be read twice, entries the options mark as stored are written as deflate level 0 rather than STORED.
+     *
+     * @param name         The entry name
+     * @param in           The entry contents
+     * @param lastModified The modification time in milliseconds since the epoch
+     * @throws IOException If the stream cannot be read, the name was already used or the write fails
+     */
+    public void putEntry(String name, InputStream in, long lastModified) throws IOException {
+        EntryRecord entry = newEntry(name, METHOD_DEFLATED, FLAG_DATA_DESCRIPTOR, lastModified);
+        InputStream source = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 65536);
+        run(() -> {
+            pipeline.enqueue(() -> {
+                entry.offset = pipeline.getBytesWritten();
+                pipeline.writeRaw(localHeader(entry));
+            });
+            DeflatePipeline.DeflateResult result = options.isStored(name)
+                    ? pipeline.deflate(source, Deflater.NO_COMPRESSION)
+                    : pipeline.deflate(source);
+            pipeline.enqueue(() -> {
+                entry.crc = result.getCrc();
+                entry.size = result.getUncompressedSize();
+                entry.compressedSize = result.getCompressedSize();
+                pipeline.writeRaw(dataDescriptor(entry));
+                entryWritten(entry);
+            });
+        });
+    }
+
+    /**
+     * Waits for all queued data to be written and writes the central directory. The underlying stream is flushed but
+     * left open.
+     *
+     * @throws IOException If the write fails
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        run(() -> {
+            pipeline.flush();
+            long centralStart = pipeline.getBytesWritten();
+            for (EntryRecord entry : entries) {
+                pipeline.writeRaw(centralHeader(entry));
+            }
+            long centralSize = pipeline.getBytesWritten() - centralStart;
+            pipeline.writeRaw(endRecords(centralStart, centralSize));
+            out.flush();
+        });
+        finished = true;
+        finishNanos = System.nanoTime();
+    }
+
+    /**
+     * When enabled the stream is flushed as soon as each entry is complete, so a reader on the other end (i.e. an HTTP
+     * client) starts receiving data right away instead of when the buffers fill up. Costs some throughput on slow
+     * streams with many small entries. Default: false
+     *
+     * @param flushAfterEachEntry True to flush after every entry
+     */
+    public void setFlushAfterEachEntry(boolean flushAfterEachEntry) {
+        this.flushAfterEachEntry = flushAfterEachEntry;
+    }
+
+    /**
+     * Totals for the entries written so far. Compressed bytes only count entry data, not headers or the central
+     * directory. After finish() the elapsed time stops at the moment the archive was completed.
+     *
+     * @return The statistics of this archive
+     */
+    public ArchiveStats getStats() {
+        long uncompressedBytes = 0;
+        long compressedBytes = 0;
+        for (EntryRecord entry : entries) {
+            uncompressedBytes += entry.size;
+            compressedBytes += entry.compressedSize;
+        }
+        long endNanos = finished ? finishNanos : System.nanoTime();
+        return new ArchiveStats(entries.size(), uncompressedBytes, compressedBytes, endNanos - startNanos);
+    }
+
+    /**
+     * Finishes the archive (unless a previous write failed), then closes the stream and stops the workers
+     *
+     * @throws IOException If the write fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!failed) {
+                finish();
+            }
+        } finally {
+            pipeline.close();
+            out.close();
+        }
+    }
+
+    /*
+    STORED entries need the CRC and size in the local header, so the file is read once for the CRC on the calling
+    thread and a second time when it is copied into the archive. If the file changes in between, the archive is
+    failed rather than written with a header that does not match the data.
+     */
+    private void putStoredFile(Path file, String name, long lastModified) throws IOException {
+        EntryRecord entry = newEntry(name, METHOD_STORED, 0, lastModified);
+        run(() -> {
+            CRC32 crc = new CRC32();
+            entry.size = copyFile(file, crc, null);
+            entry.crc = crc.getValue();
+            entry.compressedSize = entry.size;
+            pipeline.enqueue(() -> {
+                entry.offset = pipeline.getBytesWritten();
+                pipeline.writeRaw(localHeader(entry));
+                CRC32 copyCrc = new CRC32();
+                long copied = copyFile(file, copyCrc, pipeline);
+                if (copied != entry.size || copyCrc.getValue() != entry.crc) {
+                    throw new ZipException("File [ " + file + "] changed while it was being archived");
+                }
+                entryWritten(entry);
+            });
+        });
+    }
+
+    private static long copyFile(Path file, CRC32 crc, DeflatePipeline target) throws IOException {
+        BufferPool bufferPool = FileUtils.getZipBufferPool();
+        byte[] buffer = bufferPool.borrow();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int length;
+            while ((length = in.read(buffer)) > -1) {
+                crc.update(buffer, 0, length);
+                size += length;
+                if (target != null) {
+                    target.writeRaw(buffer, 0, length);
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return size;
+    }
+
+    private void entryWritten(EntryRecord entry) throws IOException {
+        entries.add(entry);
+        if (flushAfterEachEntry) {
+            out.flush();
+        }
+    }
+
+    private void run(DeflatePipeline.IOAction action) throws IOException {
+        if (finished) {
+            throw new IOException("The zip archive has already been finished");
+        }
+        if (failed) {
+            throw new IOException("A previous write to the zip archive failed");
+        }
+        try {
+            action.run();
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private EntryRecord newEntry(String name, int method, int flags, long lastModified) throws ZipException {
+        if (!entryNames.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+        EntryRecord entry = new EntryRecord();
+        entry.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (entry.nameBytes.length > 0xFFFF) {
+            throw new ZipException("Entry name too long: " + name);
+        }
+        entry.method = method;
+        entry.flags = flags | FLAG_UTF8;
+        entry.dosTime = toDosTime(lastModified);
+        return entry;
+    }
+
+    /*
+    Entries with a data descriptor leave CRC and sizes zero here, STORED entries carry them (in a ZIP64 extra field when
+    the file is 4GB or more)
+     */
+    private static byte[] localHeader(EntryRecord entry) {
+        boolean descriptor = (entry.flags & FLAG_DATA_DESCRIPTOR) != 0;
+        boolean zip64 = !descriptor && entry.size >= ZIP64_MAGIC;
+        int extraLength = zip64 ? 20 : 0;
+        ByteBuffer header = ByteBuffer.allocate(30 + entry.nameBytes.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOC_SIGNATURE);
+        header.putShort((short) version(entry, zip64));
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        if (descriptor) {
+            header.putInt(0);
+            header.putInt(0);
+            header.putInt(0);
+        } else {
+            header.putInt((int) entry.crc);
+            header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize));
+            header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        }
+        header.putShort((short) entry.nameBytes.length);
+        header.putShort((short) extraLength);
+        header.put(entry.nameBytes);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.compressedSize);
+        }
+        return header.array();
+    }
+
+    private static byte[] dataDescriptor(EntryRecord entry) {
+        boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        ByteBuffer descriptor = ByteBuffer.allocate(zip64 ? 24 : 16).order(ByteOrder.LITTLE_ENDIAN);
+        descriptor.putInt(EXT_SIGNATURE);
+        descriptor.putInt((int) entry.crc);
+        if (zip64) {
+            descriptor.putLong(entry.compressedSize);
+            descriptor.putLong(entry.size);
+        } else {
+            descriptor.putInt((int) entry.compressedSize);
+            descriptor.putInt((int) entry.size);
+        }
+        return descriptor.array();
+    }
+
+    private static byte[] centralHeader(EntryRecord entry) {
+        boolean sizeOverflow = entry.size >= ZIP64_MAGIC;
+        boolean compressedOverflow = entry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetOverflow = entry.offset >= ZIP64_MAGIC;
+        int zip64Fields = (sizeOverflow ? 1 : 0) + (compressedOverflow ? 1 : 0) + (offsetOverflow ? 1 : 0);
+        int extraLength = zip64Fields > 0 ? 4 + zip64Fields * 8 : 0;
+        int version = version(entry, zip64Fields > 0);
+
+        ByteBuffer header = ByteBuffer.allocate(46 + entry.nameBytes.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CEN_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) version);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (compressedOverflow ? ZIP64_MAGIC : entry.compressedSize));
+        header.putInt((int) (sizeOverflow ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) entry.nameBytes.length);
+        header.putShort((short) extraLength);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) (offsetOverflow ? ZIP64_MAGIC : entry.offset));
+        header.put(entry.nameBytes);
+        if (zip64Fields > 0) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) (zip64Fields * 8));
+            if (sizeOverflow) {
+                header.putLong(entry.size);
+            }
+            if (compressedOverflow) {
+                header.putLong(entry.compressedSize);
+            }
+            if (offsetOverflow) {
+                header.putLong(entry.offset);
+            }
+        }
+        return header.array();
+    }
+
+    private byte[] endRecords(long centralStart, long centralSize) {
+        long count = entries.size();
+        boolean zip64 = count >= ZIP64_MAGIC_COUNT || centralStart >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC;
+        ByteBuffer end = ByteBuffer.allocate(zip64 ? 98 : 22).order(ByteOrder.LITTLE_ENDIAN);
+        if (zip64) {
+            long zip64EndOffset = centralStart + centralSize;
+            end.putInt(ZIP64_END_SIGNATURE);
+            end.putLong(44);
+            end.putShort((short) 45);
+            end.putShort((short) 45);
+            end.putInt(0);
+            end.putInt(0);
+            end.putLong(count);
+            end.putLong(count);
+            end.putLong(centralSize);
+            end.putLong(centralStart);
+            end.putInt(ZIP64_LOCATOR_SIGNATURE);
+            end.putInt(0);
+            end.putLong(zip64EndOffset);
+            end.putInt(1);
+        }
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(centralSize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralStart, ZIP64_MAGIC));
+        end.putShort((short) 0);
+        return end.array();
+    }
+
+    private static int version(EntryRecord entry, boolean zip64) {
+        if (zip64) {
+            return 45;
+        }
+        return entry.method == METHOD_DEFLATED ? 20 : 10;
+    }
+
+    /*
+    Same conversion java.util.zip uses: local time, 2 second resolution, clamped to the 1980-2107 range DOS time allows
+     */
+    private static long toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        int year = time.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        if (year > 2107) {
+            year = 2107;
+        }
+        return ((long) (year - 1980) << 25 | (long) time.getMonthValue() << 21 | (long) time.getDayOfMonth() << 16
+                | (long) time.getHour() << 11 | (long) time.getMinute() << 5 | (long) time.getSecond() >> 1) & ZIP64_MAGIC;
+    }
+
+    private static final class EntryRecord {
+        private byte[] nameBytes;
+        private int method;
+        private int flags;
+        private long dosTime;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long offset;
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.velexio.jlegos.util;
+
+import java.nio.file.Path;
+
+/**
+ * Callback used by long running file operations to report how far along they are.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * Called each time the operation makes progress
+     *
+     * @param path      The file the progress applies to
+     * @param completed The amount of work completed so far (bytes for copies)
+     * @param total     The total amount of work expected, or -1 if it is not known up front
+     */
+    void onProgress(Path path, long completed, long total);
+
+}
@@ -0,0 +1,73 @@
+package com.velexio.jlegos.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * What a DirectorySync run did: how many files were copied (and how many bytes), skipped as unchanged and deleted.
+ *
+ * Usage Example:
+ *
+ *     SyncSummary summary = FileUtils.syncDirectory("/data/projects", "/mnt/mirror/projects");
+ *     log.info(summary.toString());
+ * </pre>
+ */
+public class SyncSummary {
+
+    private final long filesCopied;
+    private final long bytesCopied;
+    private final long filesSkipped;
+    private final long filesDeleted;
+    private final long directoriesCreated;
+    private final long elapsedNanos;
+
+    SyncSummary(long filesCopied, long bytesCopied, long filesSkipped, long filesDeleted, long directoriesCreated,
+                long elapsedNanos) {
+        this.filesCopied = filesCopied;
+        this.bytesCopied = bytesCopied;
+        this.filesSkipped = filesSkipped;
+        this.filesDeleted = filesDeleted;
+        this.directoriesCreated = directoriesCreated;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return Number of files (and symbolic links) written to the target
+     */
+    public long getFilesCopied() {
+        return filesCopied;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    /**
+     * @return Number of files left alone because the target already matched
+     */
+    public long getFilesSkipped() {
+        return filesSkipped;
+    }
+
+    /**
+     * @return Number of target entries removed, a removed directory counts once however much it held
+     */
+    public long getFilesDeleted() {
+        return filesDeleted;
+    }
+
+    public long getDirectoriesCreated() {
+        return directoriesCreated;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "copied " + filesCopied + " files (" + bytesCopied + " bytes), skipped " + filesSkipped + ", deleted "
+                + filesDeleted + ", created " + directoriesCreated + " directories in " + getElapsedMillis() + " ms";
+    }
+
+}
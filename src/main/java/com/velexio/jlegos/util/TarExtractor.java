@@ -0,0 +1,381 @@
+package com.velexio.jlegos.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <pre>
+ * Extracts tar archives, gzip compressed or not, from a file or any stream. Understands POSIX ustar and PAX headers
+ * (as written by TarGzWriter and GNU/BSD tar) and GNU long names. Regular files, directories, symbolic links and hard
+ * links are restored along with their permissions and modification times, other entry types are skipped.
+ *
+ * Every entry is checked to stay inside the target directory, and so is the target of every link, so an archive can
+ * neither write outside the target directly nor through a link it planted earlier.
+ *
+ * Usage Example:
+ *
+ *     int extracted = new TarExtractor().extract(Paths.get("/tmp/app.tar.gz"), Paths.get("/opt"));
+ * </pre>
+ */
+public class TarExtractor {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final String EXTRACT_FAILURE_MESSAGE = "] is outside the target directory...unable to uncompress";
+
+    /**
+     * Extracts the archive file into the target directory. Files ending in .gz or .tgz are decompressed.
+     *
+     * @param archive   The tar or tar.gz file
+     * @param targetDir The directory the entries are extracted into, created if it does not exist
+     * @return The number of entries extracted
+     * @throws IOException If the archive is corrupt, an entry points outside the target directory or a write fails
+     */
+    public int extract(Path archive, Path targetDir) throws IOException {
+        String fileName = archive.getFileName().toString().toLowerCase(Locale.ROOT);
+        try (InputStream in = Files.newInputStream(archive)) {
+            return extract(in, targetDir, fileName.endsWith(".gz") || fileName.endsWith(".tgz"));
+        }
+    }
+
+    /**
+     * Extracts an archive read from the stream. The stream is read up to the end of archive marker, it is not closed.
+     *
+     * @param in        The archive data
+     * @param targetDir The directory the entries are extracted into, created if it does not exist
+     * @param gzipped   True if the stream is gzip compressed
+     * @return The number of entries extracted
+     * @throws IOException If the archive is corrupt, an entry points outside the target directory or a write fails
+     */
+    public int extract(InputStream in, Path targetDir, boolean gzipped) throws IOException {
+        Files.createDirectories(targetDir);
+        Path root = targetDir.toRealPath();
+        InputStream tarIn = gzipped ? new GZIPInputStream(in, 65536) : new BufferedInputStream(in, 65536);
+        List<Path> directories = new ArrayList<>();
+        List<FileTime> directoryTimes = new ArrayList<>();
+        List<Integer> directoryModes = new ArrayList<>();
+        Map<String, String> pax = new HashMap<>();
+        String longName = null;
+        String longLink = null;
+        byte[] header = new byte[BLOCK_SIZE];
+        int extracted = 0;
+        while (readBlock(tarIn, header)) {
+            if (isZeroBlock(header)) {
+                break;
+            }
+            verifyChecksum(header);
+            byte type = header[156];
+            long size = pax.containsKey("size") ? paxSize(pax.get("size")) : parseNumber(header, 124, 12);
+            if (type == 'x' || type == 'g' || type == 'L' || type == 'K') {
+                byte[] data = readData(tarIn, size);
+                if (type == 'x') {
+                    parsePax(data, pax);
+                } else if (type == 'L') {
+                    longName = cString(data, 0, data.length);
+                } else if (type == 'K') {
+                    longLink = cString(data, 0, data.length);
+                }
+                continue;
+            }
+
+            String name = pax.containsKey("path") ? pax.get("path") : longName != null ? longName : ustarName(header);
+            String linkName = pax.containsKey("linkpath") ? pax.get("linkpath") : longLink != null ? longLink : cString(header, 157, 100);
+            long modifiedSeconds = parseNumber(header, 136, 12);
+            int mode = (int) parseNumber(header, 100, 8);
+            pax.clear();
+            longName = null;
+            longLink = null;
+
+            Path target = resolve(root, name);
+            if (type == '5') {
+                Files.createDirectories(target);
+                directories.add(target);
+                directoryTimes.add(FileTime.from(modifiedSeconds, TimeUnit.SECONDS));
+                directoryModes.add(mode);
+                skipEntry(tarIn, size);
+            } else if (type == '2') {
+                // normalized, so no .. can follow a link the archive planted, and checked from where the link
+                // really is rather than where its name says
+                Path linkTarget = Paths.get(linkName).normalize();
+                if (linkTarget.toString().isEmpty()) {
+                    linkTarget = Paths.get(".");
+                }
+                if (linkTarget.isAbsolute()) {
+                    throw new IOException("Link [ " + name + " -> " + linkName + EXTRACT_FAILURE_MESSAGE);
+                }
+                Files.createDirectories(target.getParent());
+                Path linked = target.getParent().toRealPath().resolve(linkTarget).normalize();
+                if (!linked.startsWith(root) || !existingRealPath(linked).startsWith(root)) {
+                    throw new IOException("Link [ " + name + " -> " + linkName + EXTRACT_FAILURE_MESSAGE);
+                }
+                Files.deleteIfExists(target);
+                Files.createSymbolicLink(target, linkTarget);
+                skipEntry(tarIn, size);
+            } else if (type == '1') {
+                Path linkTarget = resolve(root, linkName);
+                Files.createDirectories(target.getParent());
+                Files.deleteIfExists(target);
+                Files.createLink(target, linkTarget);
+                skipEntry(tarIn, size);
+            } else if (type == '0' || type == 0 || type == '7') {
+                Files.createDirectories(target.getParent());
+                if (Files.isSymbolicLink(target)) {
+                    throw new FileAlreadyExistsException(target.toString(), null, "Refusing to write through a symbolic link");
+                }
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    copyData(tarIn, out, size);
+                }
+                setPermissions(target, mode);
+                Files.setLastModifiedTime(target, FileTime.from(modifiedSeconds, TimeUnit.SECONDS));
+            } else {
+                skipEntry(tarIn, size);
+                continue;
+            }
+            extracted++;
+        }
+        // directories last, so a read only directory does not stop its own contents from being extracted
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            setPermissions(directories.get(i), directoryModes.get(i));
+            Files.setLastModifiedTime(directories.get(i), directoryTimes.get(i));
+        }
+        return extracted;
+    }
+
+    /*
+    Same zip slip check as ZipExtractor. The real path of the nearest existing parent is used so a directory that is
+    actually a link planted by the archive cannot lead outside.
+     */
+    private static Path resolve(Path root, String name) throws IOException {
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root)) {
+            throw new IOException("Tar entry [ " + name + EXTRACT_FAILURE_MESSAGE);
+        }
+        if (target.equals(root)) {
+            return target;
+        }
+        Path existing = target.getParent();
+        while (!Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+            existing = existing.getParent();
+        }
+        if (!existing.toRealPath().startsWith(root)) {
+            throw new IOException("Tar entry [ " + name + EXTRACT_FAILURE_MESSAGE);
+        }
+        return target;
+    }
+
+    /*
+    Real path of the nearest part of the path that exists, following links. A dangling link counts as missing, its own
+    target was checked when it was extracted.
+     */
+    private static Path existingRealPath(Path path) throws IOException {
+        Path existing = path;
+        while (!Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        return existing.toRealPath();
+    }
+
+    private static long paxSize(String value) throws IOException {
+        long size;
+        try {
+            size = Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Corrupt PAX header", nfe);
+        }
+        if (size < 0) {
+            throw new IOException("Corrupt PAX header");
+        }
+        return size;
+    }
+
+    private static void setPermissions(Path path, int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (PosixFilePermission permission : PosixFilePermission.values()) {
+            if ((mode & (0400 >> permission.ordinal())) != 0) {
+                permissions.add(permission);
+            }
+        }
+        try {
+            Files.setPosixFilePermissions(path, permissions);
+        } catch (IOException | UnsupportedOperationException e) {
+            // not a POSIX file system, keep the defaults
+        }
+    }
+
+    private static void verifyChecksum(byte[] header) throws IOException {
+        long expected = parseNumber(header, 148, 8);
+        long unsigned = 0;
+        long signed = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            byte b = i >= 148 && i < 156 ? (byte) ' ' : header[i];
+            unsigned += b & 0xff;
+            signed += b;
+        }
+        if (expected != unsigned && expected != signed) {
+            throw new IOException("Corrupt tar header, checksum mismatch");
+        }
+    }
+
+    /*
+    Octal, terminated by NUL or space, or GNU base-256 when the high bit of the first byte is set
+     */
+    private static long parseNumber(byte[] header, int offset, int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (header[offset + i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == ' ' && value == 0) {
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                break;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static String ustarName(byte[] header) {
+        String name = cString(header, 0, 100);
+        boolean ustar = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r';
+        String prefix = ustar ? cString(header, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static String cString(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static void parsePax(byte[] data, Map<String, String> pax) throws IOException {
+        int position = 0;
+        while (position < data.length) {
+            int space = position;
+            while (space < data.length && data[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException nfe) {
+                throw new IOException("Corrupt PAX header", nfe);
+            }
+            if (length <= 0 || position + length > data.length) {
+                throw new IOException("Corrupt PAX header");
+            }
+            String record = new String(data, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            if (equals > 0) {
+                pax.put(record.substring(0, equals), record.substring(equals + 1));
+            }
+            position += length;
+        }
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int total = 0;
+        while (total < block.length) {
+            int read = in.read(block, total, block.length - total);
+            if (read < 0) {
+                if (total == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated tar archive");
+            }
+            total += read;
+        }
+        return true;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readData(InputStream in, long size) throws IOException {
+        if (size > Integer.MAX_VALUE - BLOCK_SIZE) {
+            throw new IOException("Tar extended header too large");
+        }
+        byte[] data = new byte[(int) size];
+        int total = 0;
+        while (total < data.length) {
+            int read = in.read(data, total, data.length - total);
+            if (read < 0) {
+                throw new EOFException("Truncated tar archive");
+            }
+            total += read;
+        }
+        skip(in, (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+        return data;
+    }
+
+    private static void copyData(InputStream in, OutputStream out, long size) throws IOException {
+        BufferPool bufferPool = FileUtils.getZipBufferPool();
+        byte[] buffer = bufferPool.borrow();
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Truncated tar archive");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        skip(in, (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    }
+
+    private static void skipEntry(InputStream in, long size) throws IOException {
+        skip(in, size + (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Truncated tar archive");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+}
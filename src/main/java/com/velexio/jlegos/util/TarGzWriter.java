@@ -0,0 +1,433 @@
+package com.velexio.jlegos.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * <pre>
+ * Writes a gzip compressed tar archive (.tar.gz) as a stream. Headers are POSIX ustar, with PAX extended headers for
+ * long names, long link targets and files of 8GB or more. Permissions, owner names, modification times and symbolic
+ * links are recorded.
+ *
+ * The gzip stream is compressed on several threads the same way ParallelZipWriter compresses zip entries (pigz style),
+ * and the output is a single standard gzip member that any gunzip can read. The compression level and worker count
+ * come from ArchiveOptions, Method.STORED writes the gzip stream at level 0. A tarball is one compressed stream, so
+ * Method.AUTO cannot store individual entries and compresses everything.
+ *
+ * Usage Example:
+ *
+ *     try (TarGzWriter writer = new TarGzWriter(new BufferedOutputStream(new FileOutputStream("/tmp/app.tar.gz")),
+ *             ArchiveOptions.defaults())) {
+ *         writer.putTree(Paths.get("/opt/app"), "app");
+ *     }
+ * </pre>
+ */
+public class TarGzWriter implements Closeable {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int RECORD_SIZE = 10240;
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+    private static final long MAX_USTAR_ID = 07777777L;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_SYMLINK = '2';
+    private static final byte TYPE_DIRECTORY = '5';
+    private static final byte TYPE_PAX = 'x';
+
+    private final OutputStream out;
+    private final DeflatePipeline pipeline;
+    private final DeflatePipeline.DeflateStream tarStream;
+    private final long startNanos = System.nanoTime();
+    private long finishNanos;
+    private long entryCount;
+    private long tarBytes;
+    private DeflatePipeline.DeflateResult result;
+    private boolean flushAfterEachEntry;
+    private boolean finished;
+    private boolean failed;
+
+    /**
+     * Creates a writer. The stream is closed when the writer is closed.
+     *
+     * @param out     Where the archive is written, ideally buffered
+     * @param options The worker count, compression level and block size to use
+     * @throws IOException If the gzip header cannot be written
+     */
+    public TarGzWriter(OutputStream out, ArchiveOptions options) throws IOException {
+        this.out = out;
+        this.pipeline = new DeflatePipeline(out, options);
+        this.pipeline.writeRaw(GZIP_HEADER);
+        int level = options.getMethod() == ArchiveOptions.Method.STORED ? Deflater.NO_COMPRESSION : options.getCompressionLevel();
+        this.tarStream = pipeline.openStream(level);
+    }
+
+    /**
+     * Adds a directory and everything below it. Symbolic links are stored as links and not followed. Unlike
+     * FileUtils.zipDirectory, hidden files are included.
+     *
+     * @param directory The directory to add
+     * @param name      The name of the directory inside the archive
+     * @throws IOException If any file cannot be read or the write fails
+     */
+    public void putTree(Path directory, String name) throws IOException {
+        String rootName = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                putPath(dir, entryName(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                putPath(file, entryName(file));
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String entryName(Path path) {
+                String relative = directory.relativize(path).toString().replace('\\', '/');
+                return relative.isEmpty() ? rootName : rootName + "/" + relative;
+            }
+        });
+    }
+
+    /**
+     * Adds a single file, directory or symbolic link (the link itself, not its target). Directory contents are not
+     * added, use putTree for that. Devices, pipes and sockets are skipped.
+     *
+     * @param path The path to add
+     * @param name The name inside the archive
+     * @throws IOException If the path cannot be read or the write fails
+     */
+    public void putPath(Path path, String name) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        TarHeader header = new TarHeader();
+        header.modifiedSeconds = attrs.lastModifiedTime().to(TimeUnit.SECONDS);
+        readOwnership(path, attrs, header);
+        if (attrs.isSymbolicLink()) {
+            header.name = name;
+            header.type = TYPE_SYMLINK;
+            header.linkName = Files.readSymbolicLink(path).toString();
+            run(() -> writeHeader(header));
+        } else if (attrs.isDirectory()) {
+            header.name = name.endsWith("/") ? name : name + "/";
+            header.type = TYPE_DIRECTORY;
+            run(() -> writeHeader(header));
+        } else if (attrs.isRegularFile()) {
+            header.name = name;
+            header.type = TYPE_FILE;
+            header.size = attrs.size();
+            try (InputStream in = Files.newInputStream(path)) {
+                run(() -> writeFile(header, in));
+            }
+        }
+    }
+
+    /**
+     * Adds a regular file entry with the contents of the stream. The stream must contain at least size bytes, it is
+     * not closed.
+     *
+     * @param name         The name inside the archive
+     * @param in           The contents
+     * @param size         The number of bytes to read from the stream
+     * @param lastModified The modification time in milliseconds since the epoch
+     * @param mode         The unix permission bits, i.e. 0644
+     * @throws IOException If the stream ends early or the write fails
+     */
+    public void putEntry(String name, InputStream in, long size, long lastModified, int mode) throws IOException {
+        TarHeader header = new TarHeader();
+        header.name = name;
+        header.type = TYPE_FILE;
+        header.size = size;
+        header.mode = mode;
+        header.modifiedSeconds = TimeUnit.MILLISECONDS.toSeconds(lastModified);
+        run(() -> writeFile(header, in));
+    }
+
+    /**
+     * When enabled the compressed stream is flushed after each entry, see ParallelZipWriter#setFlushAfterEachEntry.
+     * Default: false
+     *
+     * @param flushAfterEachEntry True to flush after every entry
+     */
+    public void setFlushAfterEachEntry(boolean flushAfterEachEntry) {
+        this.flushAfterEachEntry = flushAfterEachEntry;
+    }
+
+    /**
+     * Writes the end of archive marker and the gzip trailer. The underlying stream is flushed but left open.
+     *
+     * @throws IOException If the write fails
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        run(() -> {
+            long padding = RECORD_SIZE - (tarBytes + 2 * BLOCK_SIZE) % RECORD_SIZE;
+            writeTar(new byte[(int) (2 * BLOCK_SIZE + (padding == RECORD_SIZE ? 0 : padding))]);
+            result = tarStream.finishStream();
+            pipeline.enqueue(() -> {
+                byte[] trailer = new byte[8];
+                putIntLE(trailer, 0, result.getCrc());
+                putIntLE(trailer, 4, result.getUncompressedSize());
+                pipeline.writeRaw(trailer);
+            });
+            pipeline.flush();
+        });
+        finished = true;
+        finishNanos = System.nanoTime();
+    }
+
+    /**
+     * Totals for the archive. Uncompressed bytes are the size of the tar stream (headers and padding included), and
+     * are only final once finish() has been called.
+     *
+     * @return The statistics of this archive
+     */
+    public ArchiveStats getStats() {
+        long compressedBytes = result == null ? 0 : result.getCompressedSize();
+        long endNanos = finished ? finishNanos : System.nanoTime();
+        return new ArchiveStats(entryCount, tarBytes, compressedBytes, endNanos - startNanos);
+    }
+
+    /**
+     * Finishes the archive (unless a previous write failed), then closes the stream and stops the workers
+     *
+     * @throws IOException If the write fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!failed) {
+                finish();
+            }
+        } finally {
+            pipeline.close();
+            out.close();
+        }
+    }
+
+    private void run(DeflatePipeline.IOAction action) throws IOException {
+        if (finished) {
+            throw new IOException("The tar archive has already been finished");
+        }
+        if (failed) {
+            throw new IOException("A previous write to the tar archive failed");
+        }
+        try {
+            action.run();
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private void writeFile(TarHeader header, InputStream in) throws IOException {
+        writeHeader(header);
+        BufferPool bufferPool = FileUtils.getZipBufferPool();
+        byte[] buffer = bufferPool.borrow();
+        try {
+            long remaining = header.size;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("[ " + header.name + "] ended " + remaining + " bytes short of its recorded size");
+                }
+                writeTar(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        int padding = (int) ((BLOCK_SIZE - header.size % BLOCK_SIZE) % BLOCK_SIZE);
+        if (padding > 0) {
+            writeTar(new byte[padding]);
+        }
+        if (flushAfterEachEntry) {
+            tarStream.flush();
+        }
+    }
+
+    private void writeHeader(TarHeader header) throws IOException {
+        byte[] nameBytes = header.name.getBytes(StandardCharsets.UTF_8);
+        byte[] linkBytes = header.linkName == null ? new byte[0] : header.linkName.getBytes(StandardCharsets.UTF_8);
+        boolean paxName = nameBytes.length > 100 || !isAscii(header.name);
+        boolean paxLink = linkBytes.length > 100 || (header.linkName != null && !isAscii(header.linkName));
+        boolean paxSize = header.size > MAX_USTAR_SIZE;
+        if (paxName || paxLink || paxSize) {
+            StringBuilder records = new StringBuilder();
+            if (paxName) {
+                records.append(paxRecord("path", header.name));
+            }
+            if (paxLink) {
+                records.append(paxRecord("linkpath", header.linkName));
+            }
+            if (paxSize) {
+                records.append(paxRecord("size", Long.toString(header.size)));
+            }
+            byte[] paxData = records.toString().getBytes(StandardCharsets.UTF_8);
+            TarHeader paxHeader = new TarHeader();
+            paxHeader.name = "PaxHeaders/" + asciiPrefix(header.name, 80);
+            paxHeader.type = TYPE_PAX;
+            paxHeader.size = paxData.length;
+            paxHeader.mode = 0644;
+            paxHeader.modifiedSeconds = header.modifiedSeconds;
+            writeTar(headerBlock(paxHeader, asciiPrefix(paxHeader.name, 100), ""));
+            writeTar(paxData);
+            int padding = (BLOCK_SIZE - paxData.length % BLOCK_SIZE) % BLOCK_SIZE;
+            writeTar(new byte[padding]);
+        }
+        String ustarName = paxName ? asciiPrefix(header.name, 100) : header.name;
+        String ustarLink = header.linkName == null ? "" : (paxLink ? asciiPrefix(header.linkName, 100) : header.linkName);
+        writeTar(headerBlock(header, ustarName, ustarLink));
+        entryCount++;
+        if (flushAfterEachEntry && header.type != TYPE_FILE) {
+            tarStream.flush();
+        }
+    }
+
+    private static byte[] headerBlock(TarHeader header, String name, String linkName) {
+        byte[] block = new byte[BLOCK_SIZE];
+        putString(block, 0, 100, name);
+        putOctal(block, 100, 8, header.mode);
+        putOctal(block, 108, 8, header.uid);
+        putOctal(block, 116, 8, header.gid);
+        putOctal(block, 124, 12, Math.min(header.size, MAX_USTAR_SIZE));
+        putOctal(block, 136, 12, Math.max(0, Math.min(header.modifiedSeconds, MAX_USTAR_SIZE)));
+        Arrays.fill(block, 148, 156, (byte) ' ');
+        block[156] = header.type;
+        putString(block, 157, 100, linkName);
+        putString(block, 257, 6, "ustar");
+        block[263] = '0';
+        block[264] = '0';
+        putString(block, 265, 32, header.userName == null ? "" : asciiPrefix(header.userName, 32));
+        putString(block, 297, 32, header.groupName == null ? "" : asciiPrefix(header.groupName, 32));
+        long checksum = 0;
+        for (byte b : block) {
+            checksum += b & 0xff;
+        }
+        putOctal(block, 148, 7, checksum);
+        block[155] = ' ';
+        return block;
+    }
+
+    private void writeTar(byte[] bytes) throws IOException {
+        writeTar(bytes, 0, bytes.length);
+    }
+
+    private void writeTar(byte[] bytes, int offset, int length) throws IOException {
+        tarStream.write(bytes, offset, length);
+        tarBytes += length;
+    }
+
+    /*
+    Ownership and permissions are best effort, file systems without POSIX attributes get 0755 / 0644 and no owner
+     */
+    private static void readOwnership(Path path, BasicFileAttributes attrs, TarHeader header) {
+        header.mode = attrs.isDirectory() ? 0755 : attrs.isSymbolicLink() ? 0777 : 0644;
+        try {
+            PosixFileAttributes posix = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            header.mode = toMode(posix.permissions());
+            header.userName = posix.owner().getName();
+            header.groupName = posix.group().getName();
+            header.uid = ((Number) Files.getAttribute(path, "unix:uid", LinkOption.NOFOLLOW_LINKS)).longValue();
+            header.gid = ((Number) Files.getAttribute(path, "unix:gid", LinkOption.NOFOLLOW_LINKS)).longValue();
+            if (header.uid > MAX_USTAR_ID || header.gid > MAX_USTAR_ID) {
+                header.uid = 0;
+                header.gid = 0;
+            }
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            // keep the defaults
+        }
+    }
+
+    static int toMode(Set<PosixFilePermission> permissions) {
+        int mode = 0;
+        for (PosixFilePermission permission : permissions) {
+            mode |= 0400 >> permission.ordinal();
+        }
+        return mode;
+    }
+
+    /*
+    A PAX record is "<length> <key>=<value>\n" where the length counts itself, so it has to be solved for
+     */
+    private static String paxRecord(String key, String value) {
+        int contentLength = key.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int length = contentLength + Integer.toString(contentLength).length();
+        if (Integer.toString(length).length() > Integer.toString(contentLength).length()) {
+            length++;
+        }
+        return length + " " + key + "=" + value + "\n";
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String asciiPrefix(String value, int maxLength) {
+        StringBuilder ascii = new StringBuilder();
+        for (int i = 0; i < value.length() && ascii.length() < maxLength; i++) {
+            char c = value.charAt(i);
+            ascii.append(c > 0x7f ? '_' : c);
+        }
+        return ascii.toString();
+    }
+
+    private static void putString(byte[] block, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, block, offset, Math.min(bytes.length, length));
+    }
+
+    private static void putOctal(byte[] block, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = octal.length() - digits + i;
+            block[offset + i] = index < 0 ? (byte) '0' : (byte) octal.charAt(index);
+        }
+        block[offset + digits] = 0;
+    }
+
+    private static void putIntLE(byte[] bytes, int offset, long value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static final class TarHeader {
+        private String name;
+        private String linkName;
+        private byte type;
+        private long size;
+        private int mode;
+        private long uid;
+        private long gid;
+        private long modifiedSeconds;
+        private String userName;
+        private String groupName;
+    }
+
+}
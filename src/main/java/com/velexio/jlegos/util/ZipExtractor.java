@@ -0,0 +1,242 @@
+package com.velexio.jlegos.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <pre>
+ * Extracts zip archives using the central directory, so entries can be inflated in parallel and only the entries that
+ * are wanted have to be read at all. This is what backs FileUtils.unzip.
+ *
+ * All entry names are checked before anything is written, an archive with an entry that would land outside the target
+ * directory (zip slip) is rejected as a whole. Directories are created first, then the files are extracted across a
+ * bounded pool. When several entries land on the same file the last one in the archive wins.
+ *
+ * Usage Example:
+ *
+ *     ZipExtractor extractor = new ZipExtractor.Builder()
+ *             .withParallelism(8)
+ *             .withFilter("**.properties")
+ *             .build();
+ *     int extracted = extractor.extract(Paths.get("/tmp/app.zip"), Paths.get("/opt/app/config"));
+ * </pre>
+ */
+public class ZipExtractor {
+
+    private static final String EXTRACT_FAILURE_HEADER = "Unable to extract the following zip entries.  Check permissions and try again:";
+    private static final ZipExtractor DEFAULT_EXTRACTOR = new Builder().build();
+
+    private final int parallelism;
+    private final String filter;
+    private final PathMatcher filterMatcher;
+
+    private ZipExtractor(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.filter = builder.filter;
+        this.filterMatcher = builder.filter == null ? null : FileSystems.getDefault().getPathMatcher("glob:" + builder.filter);
+    }
+
+    /**
+     * @return The shared extractor with default settings and no filter
+     */
+    public static ZipExtractor getDefault() {
+        return DEFAULT_EXTRACTOR;
+    }
+
+    /**
+     * Extracts the archive into the target directory using a pool sized to the configured parallelism
+     *
+     * @param zipFile   The archive to extract
+     * @param targetDir The directory the entries are extracted into, created if it does not exist
+     * @return The number of files extracted (directories are not counted)
+     * @throws IOException If the archive cannot be read, contains an entry outside the target directory, or any entry
+     *                     fails to extract. The message lists every entry that failed.
+     */
+    public int extract(Path zipFile, Path targetDir) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            return extract(zipFile, targetDir, executor, parallelism * 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Extracts the archive into the target directory on the provided executor
+     *
+     * @param zipFile     The archive to extract
+     * @param targetDir   The directory the entries are extracted into, created if it does not exist
+     * @param executor    The executor the entries are inflated on
+     * @param maxInFlight The maximum number of entries queued or being extracted at one time
+     * @return The number of files extracted (directories are not counted)
+     * @throws IOException If the archive cannot be read, contains an entry outside the target directory, or any entry
+     *                     fails to extract. The message lists every entry that failed.
+     */
+    public int extract(Path zipFile, Path targetDir, Executor executor, int maxInFlight) throws IOException {
+        Path root = realRoot(targetDir);
+        try (ZipFile archive = new ZipFile(zipFile.toFile())) {
+            // keyed by where the entry lands, so of several entries for one path only the last is written
+            Map<Path, ZipEntry> files = new LinkedHashMap<>();
+            List<Path> directories = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = archive.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path entryPath = resolveEntry(root, entry.getName());
+                if (!matches(entry.getName())) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    directories.add(entryPath);
+                } else {
+                    files.put(entryPath, entry);
+                }
+            }
+
+            Files.createDirectories(root);
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            BoundedTaskRunner runner = new BoundedTaskRunner(executor, maxInFlight);
+            for (Map.Entry<Path, ZipEntry> file : files.entrySet()) {
+                runner.submit(file.getValue().getName(), () -> extractEntry(archive, file.getValue(), file.getKey()));
+            }
+            runner.awaitCompletion();
+            if (runner.hasFailures()) {
+                StringBuilder message = new StringBuilder(EXTRACT_FAILURE_HEADER);
+                for (String failure : runner.getFailures()) {
+                    message.append(System.lineSeparator()).append(failure);
+                }
+                throw new IOException(message.toString(), runner.getFirstFailure());
+            }
+            return files.size();
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    private boolean matches(String entryName) {
+        if (filterMatcher == null) {
+            return true;
+        }
+        String name = entryName.endsWith("/") ? entryName.substring(0, entryName.length() - 1) : entryName;
+        return filterMatcher.matches(Paths.get(name));
+    }
+
+    /*
+    The zip slip check, applied to every entry (filtered out or not) before anything is written. Like the canonical
+    path check it replaces, links are resolved: the real path of the nearest existing parent must stay inside the root,
+    so a symbolic link already in the target tree cannot lead outside.
+     */
+    private static Path resolveEntry(Path root, String entryName) throws IOException {
+        Path entryPath = root.resolve(entryName).normalize();
+        if (!entryPath.startsWith(root) || entryPath.equals(root)) {
+            throw new IOException("Zip entry [ " + entryName + "] is outside the target directory...unable to uncompress");
+        }
+        Path existing = entryPath.getParent();
+        while (!existing.equals(root) && !Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+            existing = existing.getParent();
+        }
+        if (Files.exists(existing, LinkOption.NOFOLLOW_LINKS) && !existing.toRealPath().startsWith(root)) {
+            throw new IOException("Zip entry [ " + entryName + "] is outside the target directory...unable to uncompress");
+        }
+        return entryPath;
+    }
+
+    /*
+    The real path of the target directory, or of its nearest existing parent with the missing part appended, so the
+    root compares against real paths even before it is created
+     */
+    private static Path realRoot(Path targetDir) throws IOException {
+        Path absolute = targetDir.toAbsolutePath().normalize();
+        Path existing = absolute;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        return existing == null ? absolute : existing.toRealPath().resolve(existing.relativize(absolute));
+    }
+
+    private static void extractEntry(ZipFile archive, ZipEntry entry, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (Files.isSymbolicLink(target)) {
+            throw new FileAlreadyExistsException(target.toString(), null, "Refusing to write through a symbolic link");
+        }
+        BufferPool bufferPool = FileUtils.getZipBufferPool();
+        byte[] buffer = bufferPool.borrow();
+        try (InputStream in = archive.getInputStream(entry);
+             OutputStream out = Files.newOutputStream(target)) {
+            int length;
+            while ((length = in.read(buffer)) > -1) {
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        if (entry.getLastModifiedTime() != null) {
+            Files.setLastModifiedTime(target, entry.getLastModifiedTime());
+        }
+    }
+
+    public static class Builder {
+        private int parallelism;
+        private String filter;
+
+        public Builder() {
+            this.parallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Default: the number of available processors, at least 4
+         *
+         * @param parallelism The number of entries extracted concurrently by extract(Path, Path)
+         * @return The builder
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Parallelism must be greater than zero");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Only entries whose name matches the glob are extracted, i.e. "config/*.xml" or "**.class". Parent
+         * directories of matching files are created as needed. Default: no filter, every entry is extracted.
+         *
+         * @param glob A glob in java.nio.file.FileSystem#getPathMatcher syntax, matched against the entry name
+         * @return The builder
+         */
+        public Builder withFilter(String glob) {
+            this.filter = glob;
+            return this;
+        }
+
+        public ZipExtractor build() {
+            return new ZipExtractor(this);
+        }
+    }
+
+}
@@ -7,14 +7,29 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.AEADBadTagException;
+import javax.crypto.ShortBufferException;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class CryptorTest {
 
@@ -59,6 +74,89 @@ class CryptorTest {
         assertEquals(CryptorTest.staticText1, decyrptedText);
     }
 
+    @Test
+    @SneakyThrows
+    void concurrentCallsDoNotShareCipherState() {
+        Cryptor cryptor = new Cryptor();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (KeyHandle key = new KeyHandle.Builder(testPass1).build()) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String text = testText2 + i;
+                results.add(executor.submit(() -> cryptor.decrypt(cryptor.encrypt(text, key), key)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(testText2 + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void binaryRoundTripMatchesStringFormat() {
+        Cryptor cryptor = new Cryptor();
+        byte[] message = testText1.getBytes(StandardCharsets.UTF_8);
+        try (KeyHandle key = new KeyHandle.Builder(testPass1).build()) {
+            byte[] encrypted = cryptor.encrypt(message, key);
+            assertEquals(message.length + Cryptor.OVERHEAD, encrypted.length);
+            assertEquals(encrypted.length, Cryptor.getEncryptedLength(message.length));
+            assertArrayEquals(message, cryptor.decrypt(encrypted, key));
+            assertEquals(testText1, cryptor.decrypt(Base64.getEncoder().encodeToString(encrypted), key));
+
+            byte[] legacy = Base64.getDecoder().decode(cryptor.encrypt(testText1, testPass1));
+            assertArrayEquals(message, cryptor.decrypt(legacy, key));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void directBuffersAndInPlace() {
+        Cryptor cryptor = new Cryptor();
+        byte[] message = testText2.getBytes(StandardCharsets.UTF_8);
+        try (KeyHandle key = new KeyHandle.Builder(testPass1).build()) {
+            ByteBuffer plain = ByteBuffer.allocateDirect(message.length);
+            plain.put(message).flip();
+            ByteBuffer encrypted = ByteBuffer.allocateDirect(Cryptor.getEncryptedLength(message.length));
+            assertEquals(encrypted.capacity(), cryptor.encrypt(plain, encrypted, key));
+            assertEquals(0, plain.remaining());
+            encrypted.flip();
+            ByteBuffer decrypted = ByteBuffer.allocateDirect(message.length);
+            assertEquals(message.length, cryptor.decrypt(encrypted, decrypted, key));
+            decrypted.flip();
+            assertEquals(ByteBuffer.wrap(message), decrypted);
+
+            byte[] buffer = new byte[Cryptor.getEncryptedLength(message.length)];
+            System.arraycopy(message, 0, buffer, Cryptor.HEADER_LENGTH, message.length);
+            ByteBuffer in = ByteBuffer.wrap(buffer, Cryptor.HEADER_LENGTH, message.length);
+            cryptor.encrypt(in, ByteBuffer.wrap(buffer), key);
+            int length = cryptor.decrypt(ByteBuffer.wrap(buffer), ByteBuffer.wrap(buffer), key);
+            assertArrayEquals(message, Arrays.copyOf(buffer, length));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void binaryFailuresLeaveBuffersInPlace() {
+        Cryptor cryptor = new Cryptor();
+        byte[] message = testText1.getBytes(StandardCharsets.UTF_8);
+        try (KeyHandle key = new KeyHandle.Builder(testPass1).build()) {
+            ByteBuffer tooSmall = ByteBuffer.allocate(message.length);
+            assertThrows(ShortBufferException.class, () -> cryptor.encrypt(ByteBuffer.wrap(message), tooSmall, key));
+            assertEquals(0, tooSmall.position());
+
+            byte[] encrypted = cryptor.encrypt(message, key);
+            encrypted[encrypted.length - 1] ^= 1;
+            ByteBuffer in = ByteBuffer.wrap(encrypted);
+            ByteBuffer out = ByteBuffer.allocate(encrypted.length);
+            assertThrows(AEADBadTagException.class, () -> cryptor.decrypt(in, out, key));
+            assertEquals(0, in.position());
+            assertEquals(0, out.position());
+            assertTrue(in.hasRemaining());
+        }
+    }
+
     @SneakyThrows
     @Test
     void enryptFileWorks() throws IOException, URISyntaxException {
@@ -69,12 +167,35 @@ class CryptorTest {
         File file = new File(filePath);
         String origContents = Files.readString(Paths.get(file.getAbsolutePath()));
         cryptor.encryptFile(file.getAbsolutePath(), testPass1);
-        String encryptedContents = Files.readString(Paths.get(file.getAbsolutePath()));
-        assertNotEquals(origContents, encryptedContents, "The file encryption did not seem to work");
+        byte[] encryptedContents = Files.readAllBytes(Paths.get(file.getAbsolutePath()));
+        assertFalse(Arrays.equals(origContents.getBytes(StandardCharsets.UTF_8), encryptedContents), "The file encryption did not seem to work");
         cryptor.decryptFile(file.getAbsolutePath(), testPass1);
         String newContents = Files.readString(Paths.get(file.getAbsolutePath()));
         assertEquals(origContents, newContents, "The file contents changed during encrypt/decrypt");
     }
 
+    @SneakyThrows
+    @Test
+    void decryptFileReadsLegacyBase64Files() {
+        Cryptor cryptor = new Cryptor();
+        File file = new File("src/test/resources/FileEncryption/simple.txt");
+        String origContents = Files.readString(file.toPath());
+        Files.writeString(file.toPath(), cryptor.encrypt(origContents, testPass1));
+        cryptor.decryptFile(file.getAbsolutePath(), testPass1);
+        assertEquals(origContents, Files.readString(file.toPath()));
+    }
+
+    @SneakyThrows
+    @Test
+    void decryptFileWithWrongPasswordLeavesFile() {
+        Cryptor cryptor = new Cryptor();
+        File file = new File("src/test/resources/FileEncryption/simple.txt");
+        cryptor.encryptFile(file.getAbsolutePath(), testPass1);
+        byte[] encrypted = Files.readAllBytes(file.toPath());
+        assertThrows(IOException.class, () -> cryptor.decryptFile(file.getAbsolutePath(), "wrong"));
+        assertArrayEquals(encrypted, Files.readAllBytes(file.toPath()));
+        cryptor.decryptFile(file.getAbsolutePath(), testPass1);
+    }
+
 
 }
@@ -0,0 +1,152 @@
+package com.velexio.jlegos.crypto;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyHandleTest {
+
+    private final String password = "handle#pass";
+    private final String text = "Simplicity is prerequisite for reliability.";
+
+    @Test
+    @SneakyThrows
+    void derivesTheKeyOnceForManyValues() {
+        Cryptor cryptor = new Cryptor();
+        try (KeyHandle key = new KeyHandle.Builder(password).build()) {
+            String first = cryptor.encrypt(text, key);
+            String second = cryptor.encrypt(text, key);
+            assertNotEquals(first, second);
+            assertEquals(text, cryptor.decrypt(first, key));
+            assertEquals(text, cryptor.decrypt(second, key));
+            assertEquals(1, key.getDerivationCount());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void valuesAreReadableAcrossHandlesAndPasswordMethods() {
+        Cryptor cryptor = new Cryptor();
+        String legacy = cryptor.encrypt(text, password);
+        try (KeyHandle writer = new KeyHandle.Builder(password).build();
+             KeyHandle reader = new KeyHandle.Builder(password).build()) {
+            String encrypted = cryptor.encrypt(text, writer);
+            assertEquals(text, cryptor.decrypt(encrypted, reader));
+            assertEquals(text, cryptor.decrypt(encrypted, password));
+            assertEquals(text, cryptor.decrypt(legacy, reader));
+            assertEquals(2, reader.getCachedKeyCount());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void wrongPasswordOrTamperingFails() {
+        Cryptor cryptor = new Cryptor();
+        try (KeyHandle key = new KeyHandle.Builder(password).build();
+             KeyHandle wrong = new KeyHandle.Builder("wrong").build()) {
+            String encrypted = cryptor.encrypt(text, key);
+            assertThrows(AEADBadTagException.class, () -> cryptor.decrypt(encrypted, wrong));
+
+            byte[] tampered = Base64.getDecoder().decode(encrypted);
+            tampered[25] ^= 1;
+            String tamperedValue = Base64.getEncoder().encodeToString(tampered);
+            assertThrows(AEADBadTagException.class, () -> cryptor.decrypt(tamperedValue, key));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void failedValuesDoNotEvictCachedKeys() {
+        Cryptor cryptor = new Cryptor();
+        try (KeyHandle key = new KeyHandle.Builder(password).withMaxKeys(1).build()) {
+            String encrypted = cryptor.encrypt(text, key);
+            byte[] tampered = Base64.getDecoder().decode(encrypted);
+            tampered[tampered.length - 1] ^= 1;
+            String tamperedValue = Base64.getEncoder().encodeToString(tampered);
+            assertThrows(AEADBadTagException.class, () -> cryptor.decrypt(tamperedValue, key));
+            long derivations = key.getDerivationCount();
+
+            assertEquals(1, key.getCachedKeyCount());
+            assertEquals(text, cryptor.decrypt(encrypted, key));
+            assertEquals(derivations, key.getDerivationCount());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void cacheIsBoundedAndExpires() {
+        Cryptor cryptor = new Cryptor();
+        String first = cryptor.encrypt(text, password);
+        String second = cryptor.encrypt(text, password);
+        try (KeyHandle key = new KeyHandle.Builder(password).withMaxKeys(1).withKeyTtl(50).build()) {
+            cryptor.decrypt(first, key);
+            cryptor.decrypt(second, key);
+            assertEquals(1, key.getCachedKeyCount());
+            assertEquals(2, key.getDerivationCount());
+
+            cryptor.decrypt(second, key);
+            assertEquals(2, key.getDerivationCount());
+            Thread.sleep(100);
+            cryptor.decrypt(second, key);
+            assertEquals(3, key.getDerivationCount());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void batchRoundTripKeepsOrder() {
+        Cryptor cryptor = new Cryptor();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            values.add(text + i);
+        }
+        values.add("");
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (KeyHandle key = new KeyHandle.Builder(password).build()) {
+            List<String> encrypted = cryptor.encryptAll(values, key, executor);
+            assertEquals(values.size(), encrypted.size());
+            assertEquals(values.get(42), cryptor.decrypt(encrypted.get(42), key));
+            assertEquals(values, cryptor.decryptAll(encrypted, key));
+            assertEquals(values, cryptor.decryptAll(encrypted, key, executor));
+            assertEquals(1, key.getDerivationCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void batchFailsOnAnyBadValue() {
+        Cryptor cryptor = new Cryptor();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(text + i);
+        }
+        try (KeyHandle key = new KeyHandle.Builder(password).build();
+             KeyHandle wrong = new KeyHandle.Builder("wrong").build()) {
+            List<String> encrypted = new ArrayList<>(cryptor.encryptAll(values, key));
+            encrypted.set(700, cryptor.encrypt(text, wrong));
+            assertThrows(AEADBadTagException.class, () -> cryptor.decryptAll(encrypted, key));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void closedHandleCannotBeUsed() {
+        Cryptor cryptor = new Cryptor();
+        KeyHandle key = new KeyHandle.Builder(password).build();
+        key.close();
+        assertTrue(key.isClosed());
+        assertEquals(0, key.getCachedKeyCount());
+        assertThrows(IllegalStateException.class, () -> cryptor.encrypt(text, key));
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.velexio.jlegos.crypto;
+
+import com.velexio.jlegos.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingCryptorTest {
+
+    private static final String PASSWORD = "stream#pass";
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/streaming-cryptor-test-stage");
+    private final StreamingCryptor cryptor = new StreamingCryptor.Builder().withSegmentSize(4096).build();
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void filesRoundTripAcrossSegments() throws IOException {
+        Path stage = testStageDir.toPath();
+        for (int size : new int[]{0, 4096, 4096 * 3 + 17}) {
+            byte[] content = new byte[size];
+            new Random(size).nextBytes(content);
+            Path plain = stage.resolve("plain-" + size);
+            Path encrypted = stage.resolve("encrypted-" + size);
+            Path decrypted = stage.resolve("decrypted-" + size);
+            Files.write(plain, content);
+            cryptor.encryptFile(plain, encrypted, PASSWORD);
+            int segments = Math.max(1, (size + 4095) / 4096);
+            assertEquals(StreamingCryptor.HEADER_LENGTH + size + segments * 16L, Files.size(encrypted));
+            assertTrue(StreamingCryptor.isStreamingFormat(Files.readAllBytes(encrypted)));
+            // the segment size comes from the header, any cryptor can decrypt
+            StreamingCryptor.getDefault().decryptFile(encrypted, decrypted, PASSWORD);
+            assertArrayEquals(content, Files.readAllBytes(decrypted));
+        }
+    }
+
+    @Test
+    void streamsRoundTrip() throws IOException {
+        byte[] content = new byte[50000];
+        new Random(11).nextBytes(content);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = cryptor.newEncryptingStream(encrypted, PASSWORD)) {
+            for (int i = 0; i < content.length; i += 777) {
+                out.write(content, i, Math.min(777, content.length - i));
+            }
+        }
+        try (InputStream in = cryptor.newDecryptingStream(new ByteArrayInputStream(encrypted.toByteArray()), PASSWORD)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void tamperingTruncationAndWrongPasswordFail() throws IOException {
+        byte[] content = new byte[4096 * 2 + 100];
+        new Random(5).nextBytes(content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream encrypting = cryptor.newEncryptingStream(out, PASSWORD)) {
+            encrypting.write(content);
+        }
+        byte[] encrypted = out.toByteArray();
+
+        assertThrows(IOException.class, () -> decrypt(encrypted, "wrong"));
+        byte[] flipped = encrypted.clone();
+        flipped[StreamingCryptor.HEADER_LENGTH + 5000] ^= 1;
+        assertThrows(IOException.class, () -> decrypt(flipped, PASSWORD));
+        // cut right after the second segment, every remaining segment still verifies on its own
+        byte[] truncated = Arrays.copyOf(encrypted, StreamingCryptor.HEADER_LENGTH + 2 * (4096 + 16));
+        assertThrows(IOException.class, () -> decrypt(truncated, PASSWORD));
+        byte[] header = encrypted.clone();
+        header[6] ^= 1;
+        assertThrows(IOException.class, () -> decrypt(header, PASSWORD));
+        assertArrayEquals(content, decrypt(encrypted, PASSWORD));
+    }
+
+    private byte[] decrypt(byte[] encrypted, String password) throws IOException {
+        try (InputStream in = cryptor.newDecryptingStream(new ByteArrayInputStream(encrypted), password)) {
+            return in.readAllBytes();
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @Test
+    void releasedBufferIsReused() {
+        BufferPool pool = new BufferPool(1024, 4096);
+        byte[] first = pool.borrow();
+        pool.release(first);
+        assertEquals(1024, pool.getBytesHeld());
+        byte[] second = pool.borrow();
+        assertSame(first, second);
+        assertEquals(2, pool.getBorrowCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getBytesHeld());
+    }
+
+    @Test
+    void retainedBytesAreBounded() {
+        BufferPool pool = new BufferPool(1024, 2048);
+        byte[] a = pool.borrow();
+        byte[] b = pool.borrow();
+        byte[] c = pool.borrow();
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(2048, pool.getBytesHeld());
+    }
+
+    @Test
+    void resizeDropsStaleBuffers() {
+        BufferPool pool = new BufferPool(1024, 8192);
+        byte[] borrowed = pool.borrow();
+        pool.release(pool.borrow());
+        pool.setBufferSize(2048);
+        assertEquals(0, pool.getBytesHeld());
+        pool.release(borrowed);
+        assertEquals(0, pool.getBytesHeld(), "A buffer of the old size should not be retained");
+        assertEquals(2048, pool.borrow().length);
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelFileWriterTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/channel-file-writer-test-stage");
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void writesWithCharsetAcrossBufferBoundaries() throws IOException {
+        Path file = testStageDir.toPath().resolve("utf16.txt");
+        StringBuilder expected = new StringBuilder();
+        try (ChannelFileWriter writer = new ChannelFileWriter.Builder(file)
+                .withCharset(StandardCharsets.UTF_16LE)
+                .withBufferSize(64)
+                .build()) {
+            for (int i = 0; i < 500; i++) {
+                String text = "line " + i + " \u00e9\u4e2d" + System.lineSeparator();
+                writer.write(text);
+                expected.append(text);
+            }
+            // a surrogate pair split over two writes
+            writer.write("\ud83d");
+            writer.write("\ude00");
+            expected.append("\ud83d\ude00");
+        }
+        assertEquals(expected.toString(), Files.readString(file, StandardCharsets.UTF_16LE));
+    }
+
+    @Test
+    void fsyncPolicyControlsForces() throws IOException {
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add("entry " + i + "\n");
+        }
+        Path file = testStageDir.toPath().resolve("batches.log");
+        ChannelFileWriter perBatch = new ChannelFileWriter.Builder(file).withFsyncPolicy(FsyncPolicy.PER_BATCH).build();
+        perBatch.writeLines(batch);
+        perBatch.writeLines(batch);
+        assertEquals(2, perBatch.getForceCount());
+        perBatch.close();
+        assertEquals(3, perBatch.getForceCount());
+
+        ChannelFileWriter interval = new ChannelFileWriter.Builder(file)
+                .withFsyncPolicy(FsyncPolicy.INTERVAL)
+                .withFsyncInterval(60000)
+                .build();
+        interval.writeLines(batch);
+        interval.writeLines(batch);
+        assertEquals(0, interval.getForceCount());
+        assertTrue(interval.getBytesWritten() > 0);
+        assertTrue(interval.getBytesPerSecond() > 0);
+        interval.close();
+        assertEquals(1, interval.getForceCount());
+
+        ChannelFileWriter none = new ChannelFileWriter.Builder(file).build();
+        none.writeLines(batch);
+        none.close();
+        assertEquals(0, none.getForceCount());
+        assertEquals(50, Files.readAllLines(file).size());
+    }
+
+    @Test
+    void truncatesWhenNotAppending() throws IOException {
+        Path file = testStageDir.toPath().resolve("truncate.txt");
+        FileUtils.write(file.toString(), "a much longer first value", false);
+        FileUtils.write(file.toString(), "short", false, StandardCharsets.UTF_8);
+        assertEquals("short", Files.readString(file));
+        FileUtils.writeLines(file.toString(), List.of("+1", "+2"), StandardCharsets.UTF_8);
+        assertEquals("short+1+2", Files.readString(file));
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.velexio.jlegos.util;
+
+import com.velexio.jlegos.exceptions.ChecksumGenerationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChecksumCacheTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/checksum-cache-test-stage");
+    private final Path indexFile = testStageDir.toPath().resolve("index/checksums.idx");
+    private Path fileA;
+    private Path fileB;
+
+    @BeforeEach
+    void setupEach() throws IOException {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+        fileA = writeAged("a.txt", "file a");
+        fileB = writeAged("b.txt", "file b");
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void unchangedFileIsServedFromCache() throws IOException, ChecksumGenerationException {
+        ChecksumCache cache = new ChecksumCache.Builder().build();
+        String first = cache.checksum(fileA.toString(), "SHA-256");
+        String second = cache.checksum(fileA.toString(), "SHA-256");
+        assertEquals(first, second);
+        assertEquals(FileUtils.checksum(fileA.toString(), "SHA-256"), second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void changedFileIsRehashed() throws IOException, ChecksumGenerationException {
+        ChecksumCache cache = new ChecksumCache.Builder().build();
+        String before = cache.checksum(fileA.toString());
+        writeAged("a.txt", "file a changed");
+        String after = cache.checksum(fileA.toString());
+        assertNotEquals(before, after);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws IOException, ChecksumGenerationException {
+        ChecksumCache cache = new ChecksumCache.Builder().withMaxEntries(1).build();
+        cache.checksum(fileA.toString());
+        cache.checksum(fileB.toString());
+        assertEquals(1, cache.size());
+        cache.checksum(fileA.toString());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    void indexFileSurvivesRestart() throws IOException, ChecksumGenerationException {
+        ChecksumCache cache = new ChecksumCache.Builder().withIndexFile(indexFile).build();
+        String checksum = cache.checksum(fileA.toString(), "SHA-256");
+        cache.save();
+        ChecksumCache reloaded = new ChecksumCache.Builder().withIndexFile(indexFile).build();
+        assertEquals(1, reloaded.size());
+        assertEquals(checksum, reloaded.checksum(fileA.toString(), "SHA-256"));
+        assertEquals(1, reloaded.getHitCount());
+        assertEquals(0, reloaded.getMissCount());
+    }
+
+    private Path writeAged(String name, String content) throws IOException {
+        Path file = testStageDir.toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60000 + content.length()));
+        return file;
+    }
+
+}
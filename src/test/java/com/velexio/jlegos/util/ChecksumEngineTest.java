@@ -0,0 +1,105 @@
+package com.velexio.jlegos.util;
+
+import com.velexio.jlegos.exceptions.ChecksumGenerationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChecksumEngineTest {
+
+    private static final String ABC_SHA_256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/checksum-engine-test-stage");
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void checksumMatchesKnownValue() throws IOException, ChecksumGenerationException {
+        Path file = testStageDir.toPath().resolve("abc.txt");
+        Files.write(file, "abc".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(ABC_SHA_256, ChecksumEngine.getDefault().checksum(file, "SHA-256"));
+        assertEquals(ABC_SHA_256, FileUtils.checksum(file.toString(), "SHA-256"));
+    }
+
+    @Test
+    void checksumSpanningManyBuffersMatchesMessageDigest() throws Exception {
+        Path file = testStageDir.toPath().resolve("random.bin");
+        byte[] content = new byte[100000];
+        new Random(7).nextBytes(content);
+        Files.write(file, content);
+        ChecksumEngine engine = new ChecksumEngine.Builder().withBufferSize(4096).build();
+        String expected = ChecksumEngine.toHex(MessageDigest.getInstance("SHA-512").digest(content));
+        assertEquals(expected, engine.checksum(file, "SHA-512"));
+    }
+
+    @Test
+    void memoryMappedChecksumMatchesBufferedRead() throws Exception {
+        Path file = testStageDir.toPath().resolve("mapped.bin");
+        byte[] content = new byte[250000];
+        new Random(11).nextBytes(content);
+        Files.write(file, content);
+        ChecksumEngine mapped = new ChecksumEngine.Builder()
+                .withMemoryMapThreshold(0)
+                .withMemoryMapWindowSize(65536)
+                .build();
+        ChecksumEngine buffered = new ChecksumEngine.Builder().withMemoryMapThreshold(Long.MAX_VALUE).build();
+        assertEquals(buffered.checksum(file, "SHA-256"), mapped.checksum(file, "SHA-256"));
+        Path empty = testStageDir.toPath().resolve("empty.bin");
+        Files.write(empty, new byte[0]);
+        assertEquals(buffered.checksum(empty, "SHA-256"), mapped.checksum(empty, "SHA-256"));
+    }
+
+    @Test
+    void checksumAllKeepsOrder() throws IOException, ChecksumGenerationException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path file = testStageDir.toPath().resolve("file" + i + ".txt");
+            Files.write(file, ("content " + i).getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        Map<Path, String> checksums = new ChecksumEngine.Builder().withParallelism(4).build().checksumAll(files, "SHA-256");
+        assertEquals(files, new ArrayList<>(checksums.keySet()));
+        for (Path file : files) {
+            assertEquals(FileUtils.checksum(file.toString(), "SHA-256"), checksums.get(file));
+        }
+    }
+
+    @Test
+    void checksumAllReportsFailures() {
+        List<Path> files = List.of(testStageDir.toPath().resolve("missing1"), testStageDir.toPath().resolve("missing2"));
+        ChecksumGenerationException cge = assertThrows(ChecksumGenerationException.class,
+                () -> ChecksumEngine.getDefault().checksumAll(files, "SHA-256"));
+        assertTrue(cge.getMessage().contains("missing1") && cge.getMessage().contains("missing2"));
+    }
+
+    @Test
+    void invalidAlgorithmThrows() throws IOException {
+        Path file = testStageDir.toPath().resolve("abc.txt");
+        Files.write(file, "abc".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(ChecksumGenerationException.class, () -> FileUtils.checksum(file.toString(), "NOT-AN-ALGO"));
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CopyEngineTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/copy-engine-test-stage");
+    private final Path sourceFile = testStageDir.toPath().resolve("source.bin");
+    private final Path destFile = testStageDir.toPath().resolve("dest.bin");
+    private byte[] sourceBytes;
+
+    @BeforeEach
+    void setupEach() throws IOException {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+        sourceBytes = new byte[300000];
+        new Random(42).nextBytes(sourceBytes);
+        Files.write(sourceFile, sourceBytes);
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void copyReportsProgressPerChunk() throws IOException {
+        List<Long> progress = new ArrayList<>();
+        CopyEngine engine = new CopyEngine.Builder()
+                .withChunkSize(100000)
+                .withFsyncPolicy(FsyncPolicy.PER_BATCH)
+                .withProgressListener((path, completed, total) -> progress.add(completed))
+                .build();
+        long copied = engine.copy(sourceFile, destFile);
+        assertEquals(sourceBytes.length, copied);
+        assertArrayEquals(sourceBytes, Files.readAllBytes(destFile));
+        assertEquals(List.of(100000L, 200000L, 300000L), progress);
+    }
+
+    @Test
+    void copyResumesFromPartialDestination() throws IOException {
+        byte[] partial = new byte[120000];
+        System.arraycopy(sourceBytes, 0, partial, 0, partial.length);
+        Files.write(destFile, partial);
+        CopyEngine engine = new CopyEngine.Builder().withResume(true).build();
+        long copied = engine.copy(sourceFile, destFile);
+        assertEquals(sourceBytes.length - partial.length, copied);
+        assertArrayEquals(sourceBytes, Files.readAllBytes(destFile));
+    }
+
+    @Test
+    void copyFileOntoItselfKeepsData() throws IOException {
+        String path = sourceFile.toString();
+        FileUtils.copyFile(path, path, FileCopyOption.REPLACE_EXISTING, FileCopyOption.CHANNEL_TRANSFER);
+        assertArrayEquals(sourceBytes, Files.readAllBytes(sourceFile));
+        assertEquals(0, new CopyEngine.Builder().withReplaceExisting(true).build().copy(sourceFile, sourceFile));
+        assertArrayEquals(sourceBytes, Files.readAllBytes(sourceFile));
+    }
+
+    @Test
+    void copyReplacesSymlinkedDestinationNotItsTarget() throws IOException {
+        Path other = testStageDir.toPath().resolve("other.bin");
+        Files.write(other, new byte[]{7});
+        Files.createSymbolicLink(destFile, other);
+        new CopyEngine.Builder().withReplaceExisting(true).build().copy(sourceFile, destFile);
+        assertFalse(Files.isSymbolicLink(destFile));
+        assertArrayEquals(sourceBytes, Files.readAllBytes(destFile));
+        assertArrayEquals(new byte[]{7}, Files.readAllBytes(other));
+    }
+
+    @Test
+    void copyRefusesExistingDestinationWithoutReplace() throws IOException {
+        Files.write(destFile, new byte[]{1});
+        CopyEngine engine = new CopyEngine.Builder().build();
+        assertThrows(FileAlreadyExistsException.class, () -> engine.copy(sourceFile, destFile));
+        new CopyEngine.Builder().withReplaceExisting(true).build().copy(sourceFile, destFile);
+        assertArrayEquals(sourceBytes, Files.readAllBytes(destFile));
+    }
+
+    @Test
+    void copyFileWithChannelTransferKeepsAttributes() throws IOException {
+        FileTime modified = FileTime.fromMillis(1500000000000L);
+        Files.setLastModifiedTime(sourceFile, modified);
+        FileUtils.copyFile(sourceFile.toString(), destFile.toString(), FileCopyOption.CHANNEL_TRANSFER);
+        assertArrayEquals(sourceBytes, Files.readAllBytes(destFile));
+        assertEquals(modified, Files.getLastModifiedTime(destFile));
+    }
+
+}
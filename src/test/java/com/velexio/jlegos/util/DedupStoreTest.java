@@ -0,0 +1,121 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DedupStoreTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/dedup-store-test-stage");
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void nearIdenticalFilesShareChunks() throws IOException {
+        Path stage = testStageDir.toPath();
+        byte[] original = new byte[2000000];
+        new Random(7).nextBytes(original);
+        // the same content with a few bytes inserted in the middle, which shifts every offset after the insert
+        byte[] edited = new byte[original.length + 5];
+        System.arraycopy(original, 0, edited, 0, 1000000);
+        System.arraycopy(new byte[]{1, 2, 3, 4, 5}, 0, edited, 1000000, 5);
+        System.arraycopy(original, 1000000, edited, 1000005, original.length - 1000000);
+        Files.write(stage.resolve("v1.bin"), original);
+        Files.write(stage.resolve("v2.bin"), edited);
+
+        DedupStore store = new DedupStore.Builder(stage.resolve("store")).build();
+        DedupStore.PutResult first = store.put("v1", stage.resolve("v1.bin"));
+        assertEquals(original.length, first.getBytes());
+        assertEquals(first.getChunkCount(), first.getNewChunkCount());
+        assertTrue(first.getChunkCount() > 10);
+
+        DedupStore.PutResult second = store.put("v2", stage.resolve("v2.bin"));
+        assertTrue(second.getNewChunkCount() <= 3, second.toString());
+        assertTrue(second.getNewBytes() < edited.length / 10, second.toString());
+        assertEquals(0, store.put("v1-again", stage.resolve("v1.bin")).getNewChunkCount());
+
+        store.get("v2", stage.resolve("v2.out"));
+        assertArrayEquals(edited, Files.readAllBytes(stage.resolve("v2.out")));
+        assertEquals(List.of("v1", "v1-again", "v2"), store.list());
+    }
+
+    @Test
+    void gcRemovesUnreferencedChunks() throws IOException {
+        Path stage = testStageDir.toPath();
+        DedupStore store = new DedupStore.Builder(stage.resolve("store"))
+                .withDigestAlgorithm("SHA-512")
+                .withChunkSizes(256, 1024, 4096)
+                .build();
+        byte[] content = new byte[50000];
+        new Random(3).nextBytes(content);
+        store.put("a", new ByteArrayInputStream(content));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(content.length, store.get("a", Channels.newChannel(out)));
+        assertArrayEquals(content, out.toByteArray());
+
+        assertEquals(0, store.gc());
+        assertTrue(store.delete("a"));
+        assertFalse(store.contains("a"));
+        assertTrue(store.gc() > 0);
+        assertThrows(FileNotFoundException.class, () -> store.get("a", stage.resolve("a.out")));
+        assertThrows(IllegalArgumentException.class, () -> store.put("../escape", new ByteArrayInputStream(content)));
+    }
+
+    @Test
+    void damagedChunksAndManifestsAreDetected() throws IOException {
+        Path stage = testStageDir.toPath();
+        Path root = stage.resolve("store");
+        DedupStore store = new DedupStore.Builder(root).withChunkSizes(256, 1024, 4096).build();
+        byte[] content = new byte[20000];
+        new Random(5).nextBytes(content);
+        store.put("a", new ByteArrayInputStream(content));
+
+        Path chunk;
+        try (Stream<Path> chunks = Files.walk(root.resolve("chunks"))) {
+            chunk = chunks.filter(Files::isRegularFile).max(Comparator.comparing(Path::toString)).orElseThrow();
+        }
+        // a chunk emptied by a crash is written again by the next put of the same content
+        Files.write(chunk, new byte[0]);
+        assertTrue(store.put("b", new ByteArrayInputStream(content)).getNewChunkCount() > 0);
+        store.get("a", stage.resolve("a.out"));
+        assertArrayEquals(content, Files.readAllBytes(stage.resolve("a.out")));
+
+        // same size, different content
+        byte[] flipped = Files.readAllBytes(chunk);
+        flipped[0] ^= 1;
+        Files.write(chunk, flipped);
+        assertThrows(IOException.class, () -> store.get("a", stage.resolve("a.out")));
+
+        Files.writeString(root.resolve("manifests").resolve("evil"), "jlegos-dedup 1 SHA-256 4\n../../escape 4\n");
+        assertThrows(IOException.class, () -> store.get("evil", stage.resolve("evil.out")));
+        Files.writeString(root.resolve("manifests").resolve("bad"), "jlegos-dedup 1 SHA-256 4\n"
+                + "00".repeat(32) + " four\n");
+        assertThrows(IOException.class, () -> store.get("bad", stage.resolve("bad.out")));
+    }
+
+}
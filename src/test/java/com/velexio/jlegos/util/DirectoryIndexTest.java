@@ -0,0 +1,87 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryIndexTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/directory-index-test-stage");
+
+    @BeforeEach
+    void setupEach() throws IOException {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+        for (String name : List.of("report-1.csv", "report-2.xlsx", "notes.txt", "2024-01-31.log", "notes.txt.old")) {
+            Files.write(testStageDir.toPath().resolve(name), name.getBytes());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void matchersSupportContainsGlobAndRegex() {
+        assertTrue(FileMatcher.contains(".txt").matches("notes.txt.old"));
+        assertTrue(FileMatcher.glob("report-*.{csv,xlsx}").matches("report-2.xlsx"));
+        assertFalse(FileMatcher.glob("*.txt").matches("notes.txt.old"));
+        assertTrue(FileMatcher.regex("\\d{4}-\\d{2}-\\d{2}\\.log").matches("2024-01-31.log"));
+        assertFalse(FileMatcher.regex("\\d+\\.log").matches("2024-01-31.log"));
+        assertTrue(FileMatcher.glob("*.csv").matches(testStageDir.toPath().resolve("report-1.csv")));
+
+        assertEquals(2, FileUtils.getDirectoryFiles(testStageDir.getAbsolutePath(), ".txt").size());
+        assertEquals(1, FileUtils.getDirectoryFiles(testStageDir.getAbsolutePath(), FileMatcher.glob("*.txt")).size());
+    }
+
+    @Test
+    void indexRefreshesOnlyWhenDirectoryChanges() throws IOException {
+        Path dir = testStageDir.toPath();
+        // move the directory mtime out of the racy window so the first listing is trusted
+        Files.setLastModifiedTime(dir, FileTime.from(System.currentTimeMillis() - 60000, TimeUnit.MILLISECONDS));
+        DirectoryIndex index = new DirectoryIndex.Builder().build();
+        FileMatcher reports = FileMatcher.glob("report-*");
+
+        assertEquals(List.of("report-1.csv", "report-2.xlsx"), names(index.find(dir, reports)));
+        assertEquals(1, names(index.find(dir, FileMatcher.regex(".*\\.log"))).size());
+        assertEquals(5, index.list(dir).size());
+        assertEquals(1, index.getRefreshCount());
+        assertEquals(2, index.getHitCount());
+
+        Files.write(dir.resolve("report-3.csv"), new byte[0]);
+        Files.setLastModifiedTime(dir, FileTime.from(System.currentTimeMillis() - 30000, TimeUnit.MILLISECONDS));
+        assertEquals(List.of("report-1.csv", "report-2.xlsx", "report-3.csv"), names(index.find(dir, reports)));
+        assertEquals(2, index.getRefreshCount());
+
+        assertTrue(index.find(dir.resolve("missing"), reports).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void racyListingIsNotTrusted() throws IOException {
+        Path dir = testStageDir.toPath();
+        DirectoryIndex index = new DirectoryIndex.Builder().withRacyWindow(60000).build();
+        index.list(dir);
+        index.list(dir);
+        assertEquals(2, index.getRefreshCount());
+        assertEquals(0, index.getHitCount());
+    }
+
+    private static List<String> names(List<Path> paths) {
+        return paths.stream().map(path -> path.getFileName().toString()).collect(Collectors.toList());
+    }
+
+}
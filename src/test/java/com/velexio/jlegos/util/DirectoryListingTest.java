@@ -0,0 +1,133 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryListingTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/directory-listing-test-stage");
+
+    @BeforeEach
+    void setupEach() throws IOException {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+        Path root = testStageDir.toPath();
+        Files.createDirectories(root.resolve("a/b/c"));
+        Files.createDirectories(root.resolve("empty"));
+        for (String name : List.of("one.txt", "two.txt", "three.csv", "a/four.txt", "a/b/five.txt", "a/b/c/six.txt")) {
+            Files.write(root.resolve(name), name.getBytes());
+        }
+        Files.createSymbolicLink(root.resolve("link.txt"), root.resolve("one.txt"));
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void flatListingFiltersByGlobAndType() throws IOException {
+        Path root = testStageDir.toPath();
+        try (Stream<Path> entries = new DirectoryListing.Builder(root).build().stream()) {
+            assertEquals(Set.of("one.txt", "two.txt", "three.csv", "a", "empty", "link.txt"), names(entries));
+        }
+        try (Stream<Path> entries = new DirectoryListing.Builder(root).withGlob("*.txt").build().stream()) {
+            assertEquals(Set.of("one.txt", "two.txt", "link.txt"), names(entries));
+        }
+        DirectoryListing files = new DirectoryListing.Builder(root).withGlob("*.txt").withType(DirectoryListing.EntryType.FILES).build();
+        try (Stream<Path> entries = files.stream()) {
+            assertEquals(Set.of("one.txt", "two.txt"), names(entries));
+        }
+        try (Stream<Path> entries = new DirectoryListing.Builder(root).withType(DirectoryListing.EntryType.DIRECTORIES).build().stream()) {
+            assertEquals(Set.of("a", "empty"), names(entries));
+        }
+    }
+
+    @Test
+    void recursiveListingHonorsDepthAndRegex() throws IOException {
+        Path root = testStageDir.toPath();
+        DirectoryListing all = new DirectoryListing.Builder(root)
+                .withRecursive(true)
+                .withGlob("**.txt")
+                .withType(DirectoryListing.EntryType.FILES)
+                .build();
+        try (Stream<Path> entries = all.stream()) {
+            assertEquals(Set.of("one.txt", "two.txt", "four.txt", "five.txt", "six.txt"), names(entries));
+        }
+        DirectoryListing shallow = new DirectoryListing.Builder(root)
+                .withRecursive(true)
+                .withMaxDepth(2)
+                .withRegex("a/.*")
+                .build();
+        try (Stream<Path> entries = shallow.stream()) {
+            assertEquals(Set.of("four.txt", "b"), names(entries));
+        }
+        Iterator<Path> iterator = new DirectoryListing.Builder(root).withRegex("t.*").build().iterator();
+        int count = 0;
+        while (iterator.hasNext()) {
+            assertTrue(iterator.next().getFileName().toString().startsWith("t"));
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    void countsUseOneWalk() throws IOException {
+        Path root = testStageDir.toPath();
+        assertEquals(3, new DirectoryListing.Builder(root).build().countFiles());
+        assertEquals(4, new DirectoryListing.Builder(root).withFollowLinks(true).build().countFiles());
+        assertEquals(2, new DirectoryListing.Builder(root).build().countDirectories());
+        DirectoryListing recursive = new DirectoryListing.Builder(root).withRecursive(true).build();
+        assertEquals(6, recursive.countFiles());
+        assertEquals(4, recursive.countDirectories());
+        assertEquals(1, new DirectoryListing.Builder(root).withGlob("*.csv").build().countFiles());
+
+        assertEquals(4, FileUtils.getDirectoryFileCount(root.toString()));
+        assertEquals(2, FileUtils.getDirectoryFolderCount(root.toString()));
+        assertEquals(0, FileUtils.getDirectoryFileCount(root.resolve("missing").toString()));
+        assertTrue(FileUtils.getDirectoryFiles(root.resolve("one.txt").toString()).isEmpty());
+        try (Stream<Path> entries = FileUtils.streamDirectory(root.resolve("a").toString())) {
+            assertEquals(Set.of("four.txt", "b"), names(entries));
+        }
+    }
+
+    @Test
+    void countsSkipEntriesDeletedDuringTheWalk() throws Exception {
+        Path busy = testStageDir.toPath().resolve("busy");
+        Files.createDirectories(busy);
+        for (int i = 0; i < 3000; i++) {
+            Files.write(busy.resolve("file-" + i), new byte[0]);
+        }
+        Thread deleter = new Thread(() -> {
+            for (int i = 0; i < 3000; i++) {
+                busy.resolve("file-" + i).toFile().delete();
+            }
+        });
+        deleter.start();
+        while (deleter.isAlive()) {
+            assertDoesNotThrow(() -> FileUtils.getDirectoryFileCount(busy.toString()));
+            assertDoesNotThrow(() -> new DirectoryListing.Builder(busy).build().countFiles());
+        }
+        deleter.join();
+        assertEquals(0, FileUtils.getDirectoryFileCount(busy.toString()));
+    }
+
+    private static Set<String> names(Stream<Path> entries) {
+        return entries.map(entry -> entry.getFileName().toString()).collect(Collectors.toSet());
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryMonitorTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/directory-monitor-test-stage");
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void reportsCreateModifyAndDelete() throws Exception {
+        Path dir = testStageDir.toPath();
+        Files.write(dir.resolve("existing.txt"), "old".getBytes(StandardCharsets.UTF_8));
+        try (DirectoryMonitor monitor = new DirectoryMonitor.Builder(dir).withDebounce(50).build()) {
+            assertEquals(1, monitor.getFileCount());
+
+            Path created = dir.resolve("created.txt");
+            for (int i = 0; i < 20; i++) {
+                Files.write(created, ("line " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            DirectoryMonitor.Event event = monitor.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals(DirectoryMonitor.EventKind.CREATED, event.getKind());
+            assertEquals(created, event.getPath());
+
+            Files.write(dir.resolve("existing.txt"), "new and longer".getBytes(StandardCharsets.UTF_8));
+            event = monitor.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals(DirectoryMonitor.EventKind.MODIFIED, event.getKind());
+            assertEquals(14, event.getState().getSize());
+
+            Files.delete(created);
+            event = monitor.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals(DirectoryMonitor.EventKind.DELETED, event.getKind());
+            assertEquals(1, monitor.getFileCount());
+            assertEquals(3, monitor.getEventCount());
+            assertTrue(monitor.getMaxLagMillis() >= monitor.getLastLagMillis());
+            assertNull(monitor.poll(200, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void rescanReportsEachChangeOnce() throws Exception {
+        Path dir = testStageDir.toPath();
+        Path file = dir.resolve("a.txt");
+        Files.write(file, new byte[1]);
+        try (DirectoryMonitor monitor = new DirectoryMonitor.Builder(dir).withDebounce(10).build()) {
+            // some platforms signal an mtime-only change and some do not, either way the rescan settles it
+            Files.setLastModifiedTime(file, FileTime.from(1000, TimeUnit.SECONDS));
+            Files.write(dir.resolve("b.txt"), new byte[2]);
+            monitor.requestRescan();
+            List<DirectoryMonitor.Event> events = new ArrayList<>();
+            List<DirectoryMonitor.Event> batch;
+            while (!(batch = monitor.pollBatch(1, TimeUnit.SECONDS)).isEmpty()) {
+                events.addAll(batch);
+            }
+            assertEquals(2, events.size());
+            assertTrue(monitor.getRescanCount() >= 1);
+            assertEquals(1000000, monitor.getSnapshot().get("a.txt").getLastModified());
+            assertEquals(2, monitor.getSnapshot().size());
+
+            monitor.requestRescan();
+            assertNull(monitor.poll(500, TimeUnit.MILLISECONDS));
+        }
+    }
+
+}
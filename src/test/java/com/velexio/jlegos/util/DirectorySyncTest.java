@@ -0,0 +1,92 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectorySyncTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/directory-sync-test-stage");
+
+    @BeforeEach
+    void setupEach() throws IOException {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+        Path source = testStageDir.toPath().resolve("source");
+        Files.createDirectories(source.resolve("docs/drafts"));
+        Files.write(source.resolve("readme.txt"), "readme".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("docs/guide.txt"), "guide".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("docs/drafts/draft.txt"), "draft".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(source.resolve("latest"), source.getFileSystem().getPath("docs/guide.txt"));
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void secondSyncSkipsUnchangedFiles() throws IOException {
+        Path source = testStageDir.toPath().resolve("source");
+        Path target = testStageDir.toPath().resolve("target");
+        SyncSummary first = FileUtils.syncDirectory(source.toString(), target.toString());
+        assertEquals(4, first.getFilesCopied());
+        assertEquals(16, first.getBytesCopied());
+        assertEquals(0, first.getFilesSkipped());
+        assertEquals("draft", Files.readString(target.resolve("docs/drafts/draft.txt")));
+        assertEquals("docs/guide.txt", Files.readSymbolicLink(target.resolve("latest")).toString());
+
+        Files.write(source.resolve("docs/guide.txt"), "guide v2".getBytes(StandardCharsets.UTF_8));
+        SyncSummary second = FileUtils.syncDirectory(source.toString(), target.toString());
+        assertEquals(1, second.getFilesCopied());
+        assertEquals(8, second.getBytesCopied());
+        assertEquals(3, second.getFilesSkipped());
+        assertEquals("guide v2", Files.readString(target.resolve("docs/guide.txt")));
+        assertFalse(second.toString().isEmpty());
+    }
+
+    @Test
+    void checksumVerifyCatchesSameSizeAndTime() throws IOException {
+        Path source = testStageDir.toPath().resolve("source");
+        Path target = testStageDir.toPath().resolve("target");
+        FileUtils.syncDirectory(source.toString(), target.toString());
+        Path copy = target.resolve("readme.txt");
+        FileTime modified = Files.getLastModifiedTime(copy);
+        Files.write(copy, "README".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(copy, modified);
+
+        assertEquals(0, FileUtils.syncDirectory(source.toString(), target.toString()).getFilesCopied());
+        SyncSummary verified = new DirectorySync.Builder().withChecksumVerify(true).build().sync(source, target);
+        assertEquals(1, verified.getFilesCopied());
+        assertEquals("readme", Files.readString(copy));
+    }
+
+    @Test
+    void deleteExtraneousRemovesTargetOnlyEntries() throws IOException {
+        Path source = testStageDir.toPath().resolve("source");
+        Path target = testStageDir.toPath().resolve("target");
+        FileUtils.syncDirectory(source.toString(), target.toString());
+        Files.createDirectories(target.resolve("old/nested"));
+        Files.write(target.resolve("old/nested/stale.txt"), new byte[10]);
+        Files.write(target.resolve("docs/stale.txt"), new byte[10]);
+
+        assertEquals(0, FileUtils.syncDirectory(source.toString(), target.toString()).getFilesDeleted());
+        assertTrue(Files.exists(target.resolve("docs/stale.txt")));
+        SyncSummary summary = FileUtils.syncDirectory(source.toString(), target.toString(), true);
+        assertEquals(2, summary.getFilesDeleted());
+        assertFalse(Files.exists(target.resolve("old")));
+        assertFalse(Files.exists(target.resolve("docs/stale.txt")));
+        assertTrue(Files.exists(target.resolve("docs/guide.txt")));
+    }
+
+}
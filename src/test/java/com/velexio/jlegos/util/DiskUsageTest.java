@@ -0,0 +1,112 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskUsageTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/disk-usage-test-stage");
+
+    @BeforeEach
+    void setupEach() throws IOException {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+        Path root = testStageDir.toPath();
+        Files.createDirectories(root.resolve("logs/archive"));
+        Files.createDirectories(root.resolve("cache"));
+        Files.write(root.resolve("top.bin"), new byte[100]);
+        Files.write(root.resolve("logs/app.log"), new byte[2000]);
+        Files.write(root.resolve("logs/archive/old.log"), new byte[5000]);
+        Files.write(root.resolve("cache/a.tmp"), new byte[300]);
+        Files.write(root.resolve("cache/b.tmp"), new byte[400]);
+        Files.createSymbolicLink(root.resolve("link"), root.resolve("logs/archive/old.log"));
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void aggregatesTreeWithBreakdownAndTopFiles() throws IOException {
+        Path root = testStageDir.toPath();
+        DiskUsageReport report = new DiskUsage.Builder().withParallelism(3).withTopFiles(2).build().scan(root);
+        assertEquals(7800, report.getTotalBytes());
+        assertEquals(5, report.getFileCount());
+        assertEquals(3, report.getDirectoryCount());
+        assertEquals(7000, report.getTotals(root.resolve("logs")).getBytes());
+        assertEquals(5000, report.getTotals(root.resolve("logs/archive")).getBytes());
+
+        Map<Path, Long> breakdown = report.getSubdirectoryBytes();
+        assertEquals(List.of(root.resolve("logs"), root.resolve("cache")), new ArrayList<>(breakdown.keySet()));
+        assertEquals(700L, breakdown.get(root.resolve("cache")));
+
+        assertEquals(2, report.getLargestFiles().size());
+        assertEquals(root.resolve("logs/archive/old.log"), report.getLargestFiles().get(0).getPath());
+        assertEquals(2000, report.getLargestFiles().get(1).getSize());
+
+        assertEquals(7800, FileUtils.directorySize(root.toString()));
+        assertThrows(IOException.class, () -> FileUtils.directorySize(root.resolve("top.bin").toString()));
+        assertThrows(IOException.class, () -> FileUtils.sizeBytes(root.resolve("logs").toString()));
+        assertThrows(IOException.class, () -> FileUtils.sizeBytes(root.resolve("missing").toString()));
+    }
+
+    @Test
+    void cacheIsRefreshedWhenDirectoryChanges() throws IOException {
+        Path root = testStageDir.toPath();
+        FileTime old = FileTime.from(System.currentTimeMillis() - 60000, TimeUnit.MILLISECONDS);
+        for (Path dir : List.of(root, root.resolve("logs"), root.resolve("logs/archive"), root.resolve("cache"))) {
+            Files.setLastModifiedTime(dir, old);
+        }
+        DiskUsage diskUsage = new DiskUsage.Builder().withCache(true).build();
+        assertEquals(7800, diskUsage.scan(root).getTotalBytes());
+
+        // growing a file does not touch its directory, the cached total stays put
+        Files.write(root.resolve("cache/a.tmp"), new byte[1300]);
+        Files.setLastModifiedTime(root.resolve("cache"), old);
+        assertEquals(7800, diskUsage.scan(root).getTotalBytes());
+
+        // adding a file does, only that directory is read again
+        Files.write(root.resolve("logs/archive/new.log"), new byte[50]);
+        assertEquals(7850, diskUsage.scan(root).getTotalBytes());
+
+        diskUsage.clearCache();
+        assertEquals(8850, diskUsage.scan(root).getTotalBytes());
+    }
+
+    @Test
+    void cacheForgetsDirectoriesThatAreGone() throws IOException {
+        Path root = testStageDir.toPath();
+        Path archive = root.resolve("logs/archive");
+        FileTime old = FileTime.from(System.currentTimeMillis() - 60000, TimeUnit.MILLISECONDS);
+        for (Path dir : List.of(root, root.resolve("logs"), archive, root.resolve("cache"))) {
+            Files.setLastModifiedTime(dir, old);
+        }
+        DiskUsage diskUsage = new DiskUsage.Builder().withCache(true).build();
+        assertEquals(7800, diskUsage.scan(root).getTotalBytes());
+
+        FileUtils.deleteDirectory(archive.toString());
+        assertEquals(2800, diskUsage.scan(root).getTotalBytes());
+
+        // a new directory under the old name and time is read, not served from what the deleted one held
+        Files.createDirectories(archive);
+        Files.write(archive.resolve("other.log"), new byte[10]);
+        Files.setLastModifiedTime(archive, old);
+        assertEquals(2810, diskUsage.scan(root).getTotalBytes());
+    }
+
+}
@@ -7,16 +7,26 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -134,6 +144,41 @@ class FileUtilsTest {
         assertEquals(sourceChecksum, destChecksum);
     }
 
+    @Test
+    void renameThrowsWhenSourceMissing() {
+        assertThrows(IOException.class,
+                () -> FileUtils.rename(testStageDir.getAbsolutePath() + "/missing.txt", testStageDir.getAbsolutePath() + "/other.txt"));
+    }
+
+    @Test
+    void writeAtomicReplacesContentAndKeepsPermissions() throws IOException {
+        Path target = testStageDir.toPath().resolve("atomic.txt");
+        FileUtils.writeAtomic(target.toString(), "first".getBytes(StandardCharsets.UTF_8));
+        assertEquals("first", Files.readString(target));
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-------"));
+        FileUtils.writeAtomic(target.toString(), "second value", StandardCharsets.UTF_8);
+        assertEquals("second value", Files.readString(target));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(target)));
+        try (Stream<Path> siblings = Files.list(testStageDir.toPath())) {
+            assertEquals(0, siblings.filter(p -> p.getFileName().toString().endsWith(".tmp")).count(), "Temp file left behind");
+        }
+    }
+
+    @Test
+    void writeAtomicCreatesWithDefaultPermissionsAndFollowsLinks() throws IOException {
+        Path created = testStageDir.toPath().resolve("new.txt");
+        Path plain = testStageDir.toPath().resolve("plain.txt");
+        Files.createFile(plain);
+        FileUtils.writeAtomic(created.toString(), "new", StandardCharsets.UTF_8);
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(created));
+
+        Path link = testStageDir.toPath().resolve("link.txt");
+        Files.createSymbolicLink(link, created);
+        FileUtils.writeAtomic(link.toString(), "through the link", StandardCharsets.UTF_8);
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals("through the link", Files.readString(created));
+    }
+
     @Test
     void ensureDirectoryForce() {
         assertDoesNotThrow(() -> FileUtils.ensureDirectoryForce(BLOCK_FILE_PATH));
@@ -170,6 +215,27 @@ class FileUtilsTest {
                 "Expected number of directories after copy directory test is not correct");
     }
 
+    @Test
+    void copyDirectoryParallelWorks() throws IOException, ChecksumGenerationException {
+        FileUtils.copyDirectoryParallel(COPY_SOURCE_DIR_1, COPY_TARGET_DIR_1);
+        assertEquals(3, FileUtils.getDirectoryFolderCount(COPY_TARGET_DIR_1));
+        for (int subDirN : List.of(1, 2, 3)) {
+            assertEquals(5, FileUtils.getDirectoryFileCount(COPY_TARGET_DIR_1 + "/subdir" + subDirN));
+        }
+        assertEquals(FileUtils.checksum(COPY_SOURCE_DIR_1 + "/subdir2/file3.txt"),
+                FileUtils.checksum(COPY_TARGET_DIR_1 + "/subdir2/file3.txt"));
+    }
+
+    @Test
+    void copyDirectoryParallelReportsAllFailures() throws IOException {
+        FileUtils.copyDirectoryParallel(COPY_SOURCE_DIR_1, COPY_TARGET_DIR_1);
+        IOException ioe = assertThrows(IOException.class,
+                () -> FileUtils.copyDirectoryParallel(COPY_SOURCE_DIR_1, COPY_TARGET_DIR_1, FileCopyOption.INCLUDE_ATTRIBUTES));
+        long reported = ioe.getMessage().lines().filter(line -> line.endsWith(".txt")).count();
+        assertEquals(15, reported, "Every file that already existed should be listed in the error");
+        FileUtils.copyDirectoryParallel(COPY_SOURCE_DIR_1, COPY_TARGET_DIR_1, FileCopyOption.REPLACE_EXISTING);
+    }
+
     @Test
     void touchWorks() throws IOException, InterruptedException {
         String testFilePath = testStageDir.getAbsolutePath() + "/testTouchFile.txt";
@@ -220,6 +286,34 @@ class FileUtilsTest {
         }
     }
 
+    @Test
+    void emptyDirectoryWorks() throws IOException {
+        FileUtils.emptyDirectory(COPY_SOURCE_DIR_1);
+        assertTrue(FileUtils.isDir(COPY_SOURCE_DIR_1), "The top level directory should remain");
+        assertEquals(0, FileUtils.getDirectoryFiles(COPY_SOURCE_DIR_1).size());
+    }
+
+    @Test
+    void deleteDirectoryParallelWorks() throws IOException {
+        AtomicLong lastCount = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FileUtils.deleteDirectoryParallel(COPY_SOURCE_DIR_1, executor, 4,
+                    (path, completed, total) -> lastCount.accumulateAndGet(completed, Math::max));
+        } finally {
+            executor.shutdown();
+        }
+        assertFalse(FileUtils.exists(COPY_SOURCE_DIR_1));
+        assertEquals(19, lastCount.get(), "15 files, 3 sub-directories and the directory itself should be reported");
+    }
+
+    @Test
+    void emptyDirectoryParallelWorks() throws IOException {
+        FileUtils.emptyDirectoryParallel(COPY_SOURCE_DIR_1);
+        assertTrue(FileUtils.isDir(COPY_SOURCE_DIR_1));
+        assertEquals(0, FileUtils.getDirectoryFiles(COPY_SOURCE_DIR_1).size());
+    }
+
     @Test
     void getAllDirectoryFilesWorks() throws IOException {
         String testDir = testStageDir.getAbsolutePath() + "/testdir";
@@ -336,6 +430,42 @@ class FileUtilsTest {
     }
 
 
+    @Test
+    void zipDirectoryToStreamWorks() throws IOException {
+        String zipDirPath = testStageDir.getAbsolutePath() + "/zipDir/";
+        String[] files = new String[]{ zipDirPath + "file1.txt", zipDirPath + "sub/file2.txt", zipDirPath + "sub/file3.txt"};
+        FileUtils.ensureDirectory(zipDirPath + "sub");
+        setupZipMethodTests(zipDirPath, files);
+        AtomicLong flushCount = new AtomicLong();
+        AtomicLong closeCount = new AtomicLong();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushCount.incrementAndGet();
+            }
+
+            @Override
+            public void close() {
+                closeCount.incrementAndGet();
+            }
+        };
+        ArchiveStats stats = FileUtils.zipDirectory(zipDirPath, out, ArchiveOptions.defaults());
+        assertEquals(5, stats.getEntryCount());
+        assertEquals(0, closeCount.get(), "Caller's stream must not be closed");
+        assertTrue(flushCount.get() >= 5, "Expected a flush per entry");
+        assertFalse(new File(testStageDir, "zipDir.zip").exists());
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        assertTrue(names.contains("zipDir/sub/file3.txt"));
+        assertEquals(5, names.size());
+    }
+
     //ToDo: Implement functionality in future release
 //    @Test
 //    void uncompressTarBallWorks() throws IOException {
@@ -0,0 +1,193 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelZipWriterTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/parallel-zip-writer-test-stage");
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void multiBlockEntriesReadBackWithZipFileAndZipInputStream() throws IOException {
+        byte[] random = new byte[300000];
+        new Random(3).nextBytes(random);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            text.append("line ").append(i % 97).append('\n');
+        }
+        byte[] repetitive = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] exactBlock = new byte[32768];
+        new Random(5).nextBytes(exactBlock);
+
+        Path zipPath = testStageDir.toPath().resolve("multi.zip");
+        ArchiveOptions options = new ArchiveOptions.Builder().withWorkers(4).withBlockSize(32768).build();
+        try (ParallelZipWriter writer = new ParallelZipWriter(new FileOutputStream(zipPath.toFile()), options)) {
+            writer.putDirectory("data", System.currentTimeMillis());
+            writer.putEntry("data/random.bin", new ByteArrayInputStream(random), System.currentTimeMillis());
+            writer.putEntry("data/text.txt", new ByteArrayInputStream(repetitive), System.currentTimeMillis());
+            writer.putEntry("data/exact.bin", new ByteArrayInputStream(exactBlock), System.currentTimeMillis());
+            writer.putEntry("data/empty.txt", new ByteArrayInputStream(new byte[0]), System.currentTimeMillis());
+        }
+
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            assertEquals(5, zipFile.size());
+            assertTrue(zipFile.getEntry("data/").isDirectory());
+            assertArrayEquals(random, readAll(zipFile.getInputStream(zipFile.getEntry("data/random.bin"))));
+            assertArrayEquals(repetitive, readAll(zipFile.getInputStream(zipFile.getEntry("data/text.txt"))));
+            assertArrayEquals(exactBlock, readAll(zipFile.getInputStream(zipFile.getEntry("data/exact.bin"))));
+            assertEquals(0, zipFile.getEntry("data/empty.txt").getSize());
+            assertTrue(zipFile.getEntry("data/text.txt").getCompressedSize() < repetitive.length / 10);
+        }
+
+        int entryCount = 0;
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(zipPath))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                readAll(zis);
+                entryCount++;
+            }
+        }
+        assertEquals(5, entryCount);
+    }
+
+    @Test
+    void singleWorkerMatchesContent() throws IOException {
+        byte[] content = "single worker content".getBytes(StandardCharsets.UTF_8);
+        Path zipPath = testStageDir.toPath().resolve("single.zip");
+        ArchiveOptions options = new ArchiveOptions.Builder().withWorkers(1).build();
+        try (ParallelZipWriter writer = new ParallelZipWriter(new FileOutputStream(zipPath.toFile()), options)) {
+            for (int i = 0; i < 50; i++) {
+                writer.putEntry("file" + i + ".txt", new ByteArrayInputStream(content), System.currentTimeMillis());
+            }
+        }
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            assertEquals(50, zipFile.size());
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                assertArrayEquals(content, readAll(zipFile.getInputStream(entries.nextElement())));
+            }
+        }
+    }
+
+    @Test
+    void autoMethodStoresCompressedFormats() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("repeated text ").append(i % 13).append('\n');
+        }
+        byte[] textBytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] imageBytes = new byte[70000];
+        new Random(9).nextBytes(imageBytes);
+        Path textFile = testStageDir.toPath().resolve("notes.txt");
+        Path imageFile = testStageDir.toPath().resolve("photo.JPG");
+        Files.write(textFile, textBytes);
+        Files.write(imageFile, imageBytes);
+
+        Path zipPath = testStageDir.toPath().resolve("auto.zip");
+        ArchiveOptions options = new ArchiveOptions.Builder().withMethod(ArchiveOptions.Method.AUTO).build();
+        ArchiveStats stats;
+        try (ParallelZipWriter writer = new ParallelZipWriter(new FileOutputStream(zipPath.toFile()), options)) {
+            writer.putFile(textFile, "notes.txt");
+            writer.putFile(imageFile, "photo.JPG");
+            writer.finish();
+            stats = writer.getStats();
+        }
+        assertEquals(2, stats.getEntryCount());
+        assertEquals(textBytes.length + imageBytes.length, stats.getUncompressedBytes());
+        assertTrue(stats.getRatio() < 1.0);
+
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("notes.txt").getMethod());
+            ZipEntry image = zipFile.getEntry("photo.JPG");
+            assertEquals(ZipEntry.STORED, image.getMethod());
+            assertEquals(imageBytes.length, image.getCompressedSize());
+            assertArrayEquals(imageBytes, readAll(zipFile.getInputStream(image)));
+        }
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(zipPath))) {
+            assertEquals("notes.txt", zis.getNextEntry().getName());
+            assertArrayEquals(textBytes, readAll(zis));
+            assertEquals("photo.JPG", zis.getNextEntry().getName());
+            assertArrayEquals(imageBytes, readAll(zis));
+        }
+    }
+
+    @Test
+    void storedMethodForStreamsUsesLevelZero() throws IOException {
+        byte[] content = new byte[200000];
+        Path zipPath = testStageDir.toPath().resolve("stored.zip");
+        ArchiveOptions options = new ArchiveOptions.Builder().withMethod(ArchiveOptions.Method.STORED).withBlockSize(65536).build();
+        try (ParallelZipWriter writer = new ParallelZipWriter(new FileOutputStream(zipPath.toFile()), options)) {
+            writer.putEntry("zeros.bin", new ByteArrayInputStream(content), System.currentTimeMillis());
+        }
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            ZipEntry entry = zipFile.getEntry("zeros.bin");
+            assertTrue(entry.getCompressedSize() >= content.length, "Level 0 should not compress");
+            assertArrayEquals(content, readAll(zipFile.getInputStream(entry)));
+        }
+    }
+
+    @Test
+    void isStoredHonoursMethodAndExtensions() {
+        ArchiveOptions auto = new ArchiveOptions.Builder().withMethod(ArchiveOptions.Method.AUTO).build();
+        assertTrue(auto.isStored("lib/app.jar"));
+        assertTrue(auto.isStored("logs/old.log.GZ"));
+        assertFalse(auto.isStored("src/Main.java"));
+        assertFalse(auto.isStored("README"));
+        ArchiveOptions custom = new ArchiveOptions.Builder()
+                .withMethod(ArchiveOptions.Method.AUTO)
+                .withStoredExtensions(List.of("DAT"))
+                .build();
+        assertTrue(custom.isStored("data/blob.dat"));
+        assertFalse(ArchiveOptions.defaults().isStored("lib/app.jar"));
+        assertTrue(new ArchiveOptions.Builder().withMethod(ArchiveOptions.Method.STORED).build().isStored("a.txt"));
+    }
+
+    @Test
+    void duplicateEntryThrows() throws IOException {
+        Path zipPath = testStageDir.toPath().resolve("duplicate.zip");
+        try (ParallelZipWriter writer = new ParallelZipWriter(new FileOutputStream(zipPath.toFile()), ArchiveOptions.defaults())) {
+            writer.putEntry("a.txt", new ByteArrayInputStream(new byte[1]), System.currentTimeMillis());
+            assertThrows(ZipException.class,
+                    () -> writer.putEntry("a.txt", new ByteArrayInputStream(new byte[1]), System.currentTimeMillis()));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarGzWriterTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/tar-gz-writer-test-stage");
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void tarDirectoryRoundTrips() throws IOException {
+        Path source = testStageDir.toPath().resolve("app");
+        Path nested = source.resolve("bin").resolve("a-directory-name-long-enough-to-need-a-pax-header-for-sure")
+                .resolve("because-ustar-only-holds-one-hundred-bytes");
+        Files.createDirectories(nested);
+        byte[] large = new byte[400000];
+        new Random(1).nextBytes(large);
+        Files.write(source.resolve("large.bin"), large);
+        Files.write(nested.resolve("deep.txt"), "deep".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve(".env"), "KEY=value".getBytes(StandardCharsets.UTF_8));
+        Path script = source.resolve("bin").resolve("run.sh");
+        Files.write(script, "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-x---"));
+        Files.setLastModifiedTime(script, FileTime.from(1600000000, TimeUnit.SECONDS));
+        Files.createSymbolicLink(source.resolve("current"), source.getFileSystem().getPath("bin/run.sh"));
+
+        ArchiveOptions options = new ArchiveOptions.Builder().withWorkers(4).withBlockSize(32768).build();
+        ArchiveStats stats = FileUtils.tarDirectory(source.toString(), options);
+        assertTrue(stats.getEntryCount() >= 8);
+        assertTrue(stats.getCompressedBytes() > 0);
+        Path tarball = testStageDir.toPath().resolve("app.tar.gz");
+        assertTrue(Files.isRegularFile(tarball));
+
+        Path target = testStageDir.toPath().resolve("extracted");
+        FileUtils.untar(tarball.toString(), target.toString());
+        Path extracted = target.resolve("app");
+        assertArrayEquals(large, Files.readAllBytes(extracted.resolve("large.bin")));
+        assertEquals("KEY=value", Files.readString(extracted.resolve(".env")));
+        assertEquals("deep", Files.readString(extracted.resolve(source.relativize(nested)).resolve("deep.txt")));
+        Path extractedScript = extracted.resolve("bin").resolve("run.sh");
+        assertEquals("rwxr-x---", PosixFilePermissions.toString(Files.getPosixFilePermissions(extractedScript)));
+        assertEquals(1600000000L, Files.getLastModifiedTime(extractedScript).to(TimeUnit.SECONDS));
+        assertTrue(Files.isSymbolicLink(extracted.resolve("current")));
+        assertEquals("bin/run.sh", Files.readSymbolicLink(extracted.resolve("current")).toString());
+    }
+
+    @Test
+    void streamedTarballExtracts() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] content = "streamed content".getBytes(StandardCharsets.UTF_8);
+        try (TarGzWriter writer = new TarGzWriter(out, new ArchiveOptions.Builder().withWorkers(1).build())) {
+            writer.setFlushAfterEachEntry(true);
+            writer.putEntry("dir/file.txt", new ByteArrayInputStream(content), content.length, System.currentTimeMillis(), 0600);
+        }
+        Path target = testStageDir.toPath().resolve("streamed");
+        int extracted = new TarExtractor().extract(new ByteArrayInputStream(out.toByteArray()), target, true);
+        assertEquals(1, extracted);
+        assertArrayEquals(content, Files.readAllBytes(target.resolve("dir/file.txt")));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(target.resolve("dir/file.txt"))));
+    }
+
+    @Test
+    void rejectsEntriesOutsideTarget() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarGzWriter writer = new TarGzWriter(out, ArchiveOptions.defaults())) {
+            writer.putEntry("../evil.txt", new ByteArrayInputStream(new byte[1]), 1, System.currentTimeMillis(), 0644);
+        }
+        Path target = testStageDir.toPath().resolve("out");
+        assertThrows(IOException.class, () -> new TarExtractor().extract(new ByteArrayInputStream(out.toByteArray()), target, true));
+        assertFalse(Files.exists(testStageDir.toPath().resolve("evil.txt")));
+    }
+
+    @Test
+    void rejectsLinksLeadingOutsideThroughEarlierLinks() throws IOException {
+        Path links = testStageDir.toPath().resolve("links");
+        Files.createDirectories(links);
+        Path self = Files.createSymbolicLink(links.resolve("self"), links.getFileSystem().getPath("."));
+        Path up = Files.createSymbolicLink(links.resolve("up"), links.getFileSystem().getPath("../.."));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarGzWriter writer = new TarGzWriter(out, ArchiveOptions.defaults())) {
+            writer.putPath(self, "a");
+            writer.putPath(up, "a/sub/x");
+        }
+        Path target = testStageDir.toPath().resolve("out");
+        assertThrows(IOException.class, () -> new TarExtractor().extract(new ByteArrayInputStream(out.toByteArray()), target, true));
+        assertFalse(Files.exists(target.resolve("sub/x"), LinkOption.NOFOLLOW_LINKS));
+        assertTrue(Files.isSymbolicLink(target.resolve("a")));
+    }
+
+}
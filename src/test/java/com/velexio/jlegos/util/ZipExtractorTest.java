@@ -0,0 +1,109 @@
+package com.velexio.jlegos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipExtractorTest {
+
+    private final File testStageDir = new File(FileUtils.getTempDir() + "/zip-extractor-test-stage");
+
+    @BeforeEach
+    void setupEach() {
+        if (!testStageDir.mkdirs()) {
+            fail("Unable to create test dir -> " + testStageDir.getAbsolutePath());
+        }
+    }
+
+    @AfterEach
+    void tearDownEach() throws IOException {
+        FileUtils.deleteDirectory(testStageDir.getAbsolutePath());
+    }
+
+    @Test
+    void extractsEveryEntry() throws IOException {
+        Path zipPath = createArchive("archive.zip", "docs/", "docs/a.txt", "docs/b.md", "src/Main.java", "readme.txt");
+        Path target = testStageDir.toPath().resolve("out");
+        int extracted = new ZipExtractor.Builder().withParallelism(3).build().extract(zipPath, target);
+        assertEquals(4, extracted);
+        assertEquals("docs/a.txt", Files.readString(target.resolve("docs/a.txt")));
+        assertEquals("src/Main.java", Files.readString(target.resolve("src/Main.java")));
+        assertEquals("readme.txt", Files.readString(target.resolve("readme.txt")));
+    }
+
+    @Test
+    void extractsOnlyMatchingEntries() throws IOException {
+        Path zipPath = createArchive("archive.zip", "docs/", "docs/a.txt", "docs/b.md", "src/Main.java", "readme.txt");
+        Path target = testStageDir.toPath().resolve("out");
+        FileUtils.unzip(zipPath.toString(), target.toString(), "**.txt");
+        assertTrue(Files.isRegularFile(target.resolve("docs/a.txt")));
+        assertFalse(Files.exists(target.resolve("docs/b.md")));
+        assertFalse(Files.exists(target.resolve("src")));
+        assertTrue(Files.isRegularFile(target.resolve("readme.txt")));
+    }
+
+    @Test
+    void rejectsEntriesOutsideTarget() throws IOException {
+        Path zipPath = createArchive("evil.zip", "ok.txt", "../evil.txt");
+        Path target = testStageDir.toPath().resolve("out");
+        IOException ioe = assertThrows(IOException.class, () -> FileUtils.unzip(zipPath.toString(), target.toString()));
+        assertTrue(ioe.getMessage().contains("../evil.txt"));
+        assertFalse(Files.exists(target.resolve("ok.txt")), "Nothing should be written when an entry is rejected");
+        assertFalse(Files.exists(testStageDir.toPath().resolve("evil.txt")));
+    }
+
+    @Test
+    void refusesToWriteThroughExistingSymlinks() throws IOException {
+        Path outside = testStageDir.toPath().resolve("outside");
+        Path target = testStageDir.toPath().resolve("out");
+        Files.createDirectories(outside);
+        Files.createDirectories(target);
+        Files.createSymbolicLink(target.resolve("linked"), outside);
+        Files.write(outside.resolve("victim.txt"), new byte[]{1});
+        Files.createSymbolicLink(target.resolve("file.txt"), outside.resolve("victim.txt"));
+
+        Path dirZip = createArchive("dir.zip", "linked/evil.txt");
+        assertThrows(IOException.class, () -> FileUtils.unzip(dirZip.toString(), target.toString()));
+        assertFalse(Files.exists(outside.resolve("evil.txt")));
+
+        Path fileZip = createArchive("file.zip", "file.txt");
+        assertThrows(IOException.class, () -> FileUtils.unzip(fileZip.toString(), target.toString()));
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(outside.resolve("victim.txt")));
+    }
+
+    @Test
+    void lastOfSeveralEntriesForOnePathWins() throws IOException {
+        Path zipPath = createArchive("dup.zip", "a.txt", "b.txt", "./a.txt");
+        Path target = testStageDir.toPath().resolve("out");
+        int extracted = new ZipExtractor.Builder().withParallelism(4).build().extract(zipPath, target);
+        assertEquals(2, extracted);
+        assertEquals("./a.txt", Files.readString(target.resolve("a.txt")));
+        assertEquals("b.txt", Files.readString(target.resolve("b.txt")));
+    }
+
+    private Path createArchive(String name, String... entryNames) throws IOException {
+        Path zipPath = testStageDir.toPath().resolve(name);
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipPath.toFile()))) {
+            for (String entryName : entryNames) {
+                zos.putNextEntry(new ZipEntry(entryName));
+                if (!entryName.endsWith("/")) {
+                    zos.write(entryName.getBytes(StandardCharsets.UTF_8));
+                }
+                zos.closeEntry();
+            }
+        }
+        return zipPath;
+    }
+
+}